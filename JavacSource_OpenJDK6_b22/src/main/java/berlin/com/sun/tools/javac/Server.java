@@ -25,9 +25,9 @@
 
 package berlin.com.sun.tools.javac;
 
-import berlin.com.sun.tools.javac.main.RecognizedOptions;
-import berlin.com.sun.tools.javac.main.JavacOption.Option;
-import berlin.com.sun.tools.javac.main.RecognizedOptions.GrumpyHelper;
+import berlin.com.sun.tools.javac.file.JavacFileManager;
+import berlin.com.sun.tools.javac.main.Main;
+import berlin.com.sun.tools.javac.util.Context;
 import berlin.javax.tools.*;
 
 import java.io.*;
@@ -47,33 +47,18 @@ class Server implements Runnable {
     private final BufferedReader in;
     private final OutputStream out;
     private final boolean isSocket;
-    private static final JavaCompiler tool = ToolProvider.getSystemJavaCompiler();
     private static Logger logger = Logger.getLogger("com.sun.tools.javac");
-    static class CwdFileManager extends ForwardingJavaFileManager<JavaFileManager> {
-        String cwd;
-        CwdFileManager(JavaFileManager fileManager) {
-            super(fileManager);
-        }
-        String getAbsoluteName(String name) {
-            if (new File(name).isAbsolute()) {
-                return name;
-            } else {
-                return new File(cwd,name).getPath();
-            }
-        }
-//      public JavaFileObject getFileForInput(String name)
-//          throws IOException
-//      {
-//          return super.getFileForInput(getAbsoluteName(name));
-//      }
-    }
-    // static CwdFileManager fm = new CwdFileManager(tool.getStandardFileManager());
-    static StandardJavaFileManager fm = tool.getStandardFileManager(null, null, null);
+
+    /**
+     * The number of compilations allowed to run at the same time, each in
+     * a Context of its own (see WarmSymbols for what they share).
+     * Override with -Djavac.server.workers=N.
+     */
+    static final int workers =
+        Math.max(1, Integer.getInteger("javac.server.workers",
+                                       Runtime.getRuntime().availableProcessors()));
+
     static {
-        // Use the same file manager for all compilations.  This will
-        // cache jar files in the standard file manager.  Use
-        // tool.getStandardFileManager().close() to release.
-        // FIXME tool.setFileManager(fm);
         logger.setLevel(java.util.logging.Level.SEVERE);
     }
     private Server(BufferedReader in, OutputStream out, boolean isSocket) {
@@ -119,16 +104,18 @@ class Server implements Runnable {
                     line = null;
                 }
             }
-            Iterable<File> path = cwd == null ? null : Arrays.<File>asList(new File(cwd));
+            if (cwd != null) {
+                // Defaults for the paths that used to be set on the shared
+                // file manager; options given by the client come later and
+                // therefore take precedence.
+                args.addAll(0, Arrays.asList("-d", cwd, "-classpath", cwd, "-sourcepath", cwd));
+            }
+            // keep platform classes resident between requests
+            args.add(0, "-XDwarmSymbols");
             // try { in.close(); } catch (IOException e) {}
             long msec = System.currentTimeMillis();
             try {
-                synchronized (tool) {
-                    for (StandardLocation location : StandardLocation.values())
-                        fm.setLocation(location, path);
-                    res = compile(out, fm, args);
-                    // FIXME res = tool.run((InputStream)null, null, out, args.toArray(new String[args.size()]));
-                }
+                res = compile(out, args);
             } catch (Throwable ex) {
                 logger.log(java.util.logging.Level.SEVERE, args.toString(), ex);
                 PrintWriter p = new PrintWriter(out, true);
@@ -167,7 +154,7 @@ class Server implements Runnable {
                 throw new UnsupportedOperationException("TODO");
             }
         } else {
-            ExecutorService pool = Executors.newCachedThreadPool();
+            ExecutorService pool = Executors.newFixedThreadPool(workers);
             try
                 {
                 ServerSocket socket = new ServerSocket(0xcafe, -1, null);
@@ -182,9 +169,20 @@ class Server implements Runnable {
         }
     }
 
-    private int compile(OutputStream out, StandardJavaFileManager fm, List<String> args) {
-        // FIXME parse args and use getTask
-        // System.err.println("Running " + args);
-        return tool.run(null, null, out, args.toArray(new String[args.size()]));
+    /**
+     * Compile in a fresh Context with its own JavaCompiler and file manager.
+     * Main registers the shared CacheFSInfo for the context (batch mode).
+     */
+    private int compile(OutputStream out, List<String> args) {
+        Context context = new Context();
+        JavacFileManager.preRegister(context);
+        Main compiler = new Main("javac", new PrintWriter(out, true));
+        try {
+            return compiler.compile(args.toArray(new String[args.size()]), context);
+        } finally {
+            JavaFileManager fm = context.get(JavaFileManager.class);
+            if (fm instanceof JavacFileManager)
+                ((JavacFileManager) fm).close();
+        }
     }
 }
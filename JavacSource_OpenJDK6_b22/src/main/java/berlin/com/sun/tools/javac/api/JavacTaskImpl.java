@@ -99,6 +99,12 @@ public class JavacTaskImpl extends JavacTask {
 
     private ListBuffer<Env<AttrContext>> genList;
 
+    /**
+     * The compilation units parsed, entered or analyzed by this task, whose
+     * indexes are dropped when the trees may have changed; see dropIndexes.
+     */
+    private Set<JCCompilationUnit> units = new HashSet<JCCompilationUnit>();
+
     private TaskListener taskListener;
 
     private AtomicBoolean used = new AtomicBoolean();
@@ -268,6 +274,7 @@ public class JavacTaskImpl extends JavacTask {
                 if (notYetEntered.containsKey(file))
                     notYetEntered.put(file, unit);
             }
+            this.units.addAll(units);
             return units;
         } finally {
             parsed = true;
@@ -340,6 +347,7 @@ public class JavacTaskImpl extends JavacTask {
             return List.nil();
 
         try {
+            this.units.addAll(roots.toList());
             List<JCCompilationUnit> units = compiler.enterTrees(roots.toList());
 
             if (notYetEntered.isEmpty())
@@ -353,6 +361,7 @@ public class JavacTaskImpl extends JavacTask {
             }
             return elements.toList();
         } finally {
+            dropIndexes();
             compiler.log.flush();
         }
     }
@@ -397,6 +406,7 @@ public class JavacTaskImpl extends JavacTask {
                 f.run(compiler.todo, classes);
             }
         } finally {
+            dropIndexes();
             compiler.log.flush();
         }
         return results;
@@ -405,6 +415,7 @@ public class JavacTaskImpl extends JavacTask {
     // where
     private void handleFlowResults(Queue<Env<AttrContext>> queue, ListBuffer<Element> elems) {
         for (Env<AttrContext> env : queue) {
+            units.add(env.toplevel);
             switch (env.tree.getTag()) {
             case JCTree.CLASSDEF:
                 JCClassDecl cdef = (JCClassDecl) env.tree;
@@ -421,6 +432,18 @@ public class JavacTaskImpl extends JavacTask {
         genList.addAll(queue);
     }
 
+    /**
+     * Drop the indexes kept in the compilation units (see ParentIndex and
+     * PositionIndex), as entering, analyzing and generating code change
+     * the trees.
+     */
+    private void dropIndexes() {
+        for (JCCompilationUnit unit : units) {
+            unit.parentIndex = null;
+            unit.positionIndex = null;
+        }
+    }
+
     /**
      * Generate code.
      * 
@@ -465,6 +488,7 @@ public class JavacTaskImpl extends JavacTask {
                 endContext();
             }
         } finally {
+            dropIndexes();
             compiler.log.flush();
         }
         return results;
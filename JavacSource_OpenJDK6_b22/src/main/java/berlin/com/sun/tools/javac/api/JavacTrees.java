@@ -33,6 +33,7 @@ import berlin.com.sun.source.tree.Scope;
 import berlin.com.sun.source.tree.Tree;
 import berlin.com.sun.source.util.SourcePositions;
 import berlin.com.sun.source.util.TreePath;
+import berlin.com.sun.source.util.TreeScanner;
 import berlin.com.sun.source.util.Trees;
 import berlin.com.sun.tools.javac.code.Symbol;
 import berlin.com.sun.tools.javac.code.Symbol.ClassSymbol;
@@ -46,6 +47,8 @@ import berlin.com.sun.tools.javac.comp.Resolve;
 import berlin.com.sun.tools.javac.model.JavacElements;
 import berlin.com.sun.tools.javac.processing.JavacProcessingEnvironment;
 import berlin.com.sun.tools.javac.tree.JCTree;
+import berlin.com.sun.tools.javac.tree.ParentIndex;
+import berlin.com.sun.tools.javac.tree.PositionIndex;
 import berlin.com.sun.tools.javac.tree.TreeCopier;
 import berlin.com.sun.tools.javac.tree.TreeInfo;
 import berlin.com.sun.tools.javac.tree.TreeMaker;
@@ -53,7 +56,9 @@ import berlin.com.sun.tools.javac.tree.JCTree.*;
 import berlin.com.sun.tools.javac.util.Context;
 import berlin.com.sun.tools.javac.util.List;
 import berlin.com.sun.tools.javac.util.Log;
+import berlin.com.sun.tools.javac.util.Options;
 import berlin.com.sun.tools.javac.util.Pair;
+import berlin.com.sun.tools.javac.util.Position;
 import berlin.javax.annotation.processing.ProcessingEnvironment;
 import berlin.javax.lang.model.element.AnnotationMirror;
 import berlin.javax.lang.model.element.AnnotationValue;
@@ -86,6 +91,11 @@ public class JavacTrees extends Trees {
     private final JavacElements elements;
     private final JavacTaskImpl javacTaskImpl;
 
+    /** Whether paths are found through the ParentIndex of the compilation
+     *  unit, rather than by scanning it for each path; see -XDindexTreePaths.
+     */
+    private final boolean indexPaths;
+
     public static JavacTrees instance(JavaCompiler.CompilationTask task) {
         if (!(task instanceof JavacTaskImpl))
             throw new IllegalArgumentException();
@@ -115,6 +125,7 @@ public class JavacTrees extends Trees {
         treeMaker = TreeMaker.instance(context);
         memberEnter = MemberEnter.instance(context);
         javacTaskImpl = context.get(JavacTaskImpl.class);
+        indexPaths = Options.instance(context).get("indexTreePaths") != null;
     }
 
     public SourcePositions getSourcePositions() {
@@ -167,9 +178,75 @@ public class JavacTrees extends Trees {
     }
 
     public TreePath getPath(CompilationUnitTree unit, Tree node) {
+        if (indexPaths && unit instanceof JCCompilationUnit) {
+            TreePath path = ParentIndex.instance((JCCompilationUnit) unit).getPath(node);
+            if (path != null)
+                return path;
+        }
         return TreePath.getPath(unit, node);
     }
 
+    /**
+     * Gets the innermost tree covering a source position in a compilation
+     * unit, using the PositionIndex of the unit if it is one of ours, else
+     * scanning the unit.
+     * @return null if no tree covers the position
+     */
+    public Tree getTree(CompilationUnitTree unit, long pos) {
+        if (pos < 0 || pos > Integer.MAX_VALUE)
+            return null;
+        if (unit instanceof JCCompilationUnit)
+            return PositionIndex.instance((JCCompilationUnit) unit).getTree((int) pos);
+        return scanForTree(unit, pos);
+    }
+
+    /**
+     * Gets the path to the innermost tree covering a source position in a
+     * compilation unit; the path to the unit itself if no tree covers it.
+     */
+    public TreePath getPath(CompilationUnitTree unit, long pos) {
+        Tree tree = getTree(unit, pos);
+        if (tree == null)
+            return new TreePath(unit);
+        TreePath path = null;
+        if (unit instanceof JCCompilationUnit)
+            path = ParentIndex.instance((JCCompilationUnit) unit).getPath(tree);
+        return (path != null) ? path : TreePath.getPath(unit, tree);
+    }
+    // where
+        /** Find the tree covering a position as PositionIndex.getTree would:
+         *  of the trees other than the unit itself, the one starting last,
+         *  then ending first, then coming last.
+         */
+        private Tree scanForTree(final CompilationUnitTree unit, final long pos) {
+            final SourcePositions positions = getSourcePositions();
+            class Finder extends TreeScanner<Void,Void> {
+                Tree found;
+                long foundStart;
+                long foundEnd;
+                @Override
+                public Void scan(Tree tree, Void v) {
+                    if (tree == null)
+                        return null;
+                    if (tree == unit)
+                        return super.scan(tree, v);
+                    long start = positions.getStartPosition(unit, tree);
+                    long end = positions.getEndPosition(unit, tree);
+                    if (start != Position.NOPOS && start <= pos && pos < end
+                            && (found == null || start > foundStart
+                                || (start == foundStart && end <= foundEnd))) {
+                        found = tree;
+                        foundStart = start;
+                        foundEnd = end;
+                    }
+                    return super.scan(tree, v);
+                }
+            }
+            Finder finder = new Finder();
+            finder.scan(unit, null);
+            return finder.found;
+        }
+
     public TreePath getPath(Element e) {
         return getPath(e, null, null);
     }
@@ -182,7 +259,7 @@ public class JavacTrees extends Trees {
         final Pair<JCTree, JCCompilationUnit> treeTopLevel = elements.getTreeAndTopLevel(e, a, v);
         if (treeTopLevel == null)
             return null;
-        return TreePath.getPath(treeTopLevel.snd, treeTopLevel.fst);
+        return getPath(treeTopLevel.snd, treeTopLevel.fst);
     }
 
     public Element getElement(TreePath path) {
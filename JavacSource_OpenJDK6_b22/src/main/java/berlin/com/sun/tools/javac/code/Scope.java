@@ -34,6 +34,12 @@ import java.util.Iterator;
  * their names. Scopes are implemented as hash tables. Scopes can be nested; the
  * next field of a scope points to its next outer scope. Nested scopes can share
  * their hash tables.
+ * <p>
+ * The hash tables use open addressing on names: a slot holds the latest
+ * entry of one name, whose shadowed field leads to the earlier entries of the
+ * same name, in this scope and then in the outer scopes sharing the table.
+ * So a lookup probes about one slot however many symbols a scope holds, and
+ * the tables grow as symbols are entered.
  */
 public class Scope {
 
@@ -53,7 +59,9 @@ public class Scope {
     public Symbol owner;
 
     /**
-     * A hash table for the scope's entries.
+     * A hash table for the scope's entries. A slot is null if it has never been
+     * used, holds the sentinel if the entries of its name have all been
+     * removed, and holds the latest entry of its name otherwise.
      */
     public Entry[] table;
 
@@ -62,6 +70,12 @@ public class Scope {
      */
     int hashMask;
 
+    /**
+     * The number of slots of the table that are not null. It is passed on to
+     * the scopes sharing the table, when they are made and when they are left.
+     */
+    private int filled;
+
     /**
      * A linear list that also contains all entries in reverse order of
      * appearance (i.e later entries are pushed on top).
@@ -74,7 +88,8 @@ public class Scope {
     public int nelems = 0;
 
     /**
-     * Every hash bucket is a list of Entry's which ends in sentinel.
+     * The end of every list of entries of a name, and the value of a slot
+     * whose entries have all been removed.
      */
     private static final Entry sentinel = new Entry(null, null, null, null);
 
@@ -101,6 +116,7 @@ public class Scope {
         this.elems = null;
         this.nelems = 0;
         this.shared = 0;
+        this.filled = (next != null) ? next.filled : 0;
     }
 
     /**
@@ -109,8 +125,6 @@ public class Scope {
      */
     public Scope(Symbol owner) {
         this(null, owner, new Entry[INITIAL_SIZE]);
-        for (int i = 0; i < INITIAL_SIZE; i++)
-            table[i] = sentinel;
     }
 
     /**
@@ -158,7 +172,7 @@ public class Scope {
         if (table != next.table)
             return next;
         while (elems != null) {
-            int hash = elems.sym.name.index & hashMask;
+            int hash = getIndex(elems.sym.name);
             Entry e = table[hash];
             assert e == elems : elems.sym;
             table[hash] = elems.shadowed;
@@ -166,6 +180,7 @@ public class Scope {
         }
         assert next.shared > 0;
         next.shared--;
+        next.filled = filled;
         // System.out.println("====> leaving scope " + this.hashCode() +
         // " owned by " + this.owner + " to " + next.hashCode());
         // new Error().printStackTrace(System.out);
@@ -173,7 +188,8 @@ public class Scope {
     }
 
     /**
-     * Double size of hash table.
+     * Double size of hash table. The entries are moved to the new table, which
+     * the outer scopes sharing the table get as well.
      */
     private void dble() {
         assert shared == 0;
@@ -186,24 +202,51 @@ public class Scope {
                 s.hashMask = newtable.length - 1;
             }
         }
-        for (int i = 0; i < newtable.length; i++)
-            newtable[i] = sentinel;
-        for (int i = 0; i < oldtable.length; i++)
-            copy(oldtable[i]);
+        int n = 0;
+        for (int i = oldtable.length; --i >= 0;) {
+            Entry e = oldtable[i];
+            if (e != null && e != sentinel) {
+                table[getIndex(e.sym.name)] = e;
+                n++;
+            }
+        }
+        filled = n;
     }
 
     /**
-     * Copy the given entry and all entries shadowed by it to table
+     * The slot of the table for a name: the slot holding its latest entry, or
+     * the one to enter it in. Slots are probed with a step derived from the
+     * hash, which is odd and so visits all slots of the table. A slot whose
+     * entries have all been removed is reused if the name is not found.
      */
-    private void copy(Entry e) {
-        if (e.sym != null) {
-            copy(e.shadowed);
-            int hash = e.sym.name.index & hashMask;
-            e.shadowed = table[hash];
-            table[hash] = e;
+    int getIndex(Name name) {
+        int h = hash(name);
+        int i = h & hashMask;
+        int x = hashMask - ((h + (h >> 16)) << 1);
+        int d = -1;
+        for (;;) {
+            Entry e = table[i];
+            if (e == null)
+                return d >= 0 ? d : i;
+            if (e == sentinel) {
+                if (d < 0)
+                    d = i;
+            } else if (e.sym.name == name)
+                return i;
+            i = (i + x) & hashMask;
         }
     }
 
+    /**
+     * The hash code of a name, spread over the low bits used as slot indices.
+     */
+    static int hash(Name name) {
+        int h = name.index;
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return h;
+    }
+
     /**
      * Enter symbol sym in this scope.
      */
@@ -223,10 +266,15 @@ public class Scope {
      */
     public void enter(Symbol sym, Scope s, Scope origin) {
         assert shared == 0;
-        // Temporarily disabled (bug 6460352):
-        // if (nelems * 3 >= hashMask * 2) dble();
-        int hash = sym.name.index & hashMask;
-        Entry e = makeEntry(sym, table[hash], elems, s, origin);
+        if (filled * 3 >= hashMask * 2)
+            dble();
+        int hash = getIndex(sym.name);
+        Entry old = table[hash];
+        if (old == null) {
+            old = sentinel;
+            filled++;
+        }
+        Entry e = makeEntry(sym, old, elems, s, origin);
         table[hash] = e;
         elems = e;
         nelems++;
@@ -249,9 +297,10 @@ public class Scope {
             return;
 
         // remove e from table and shadowed list;
-        Entry te = table[sym.name.index & hashMask];
+        int hash = getIndex(sym.name);
+        Entry te = table[hash];
         if (te == e)
-            table[sym.name.index & hashMask] = e.shadowed;
+            table[hash] = e.shadowed;
         else
             while (true) {
                 if (te.shadowed == e) {
@@ -306,7 +355,9 @@ public class Scope {
      * both fields are non-null for regular entries.
      */
     public Entry lookup(Name name) {
-        Entry e = table[name.index & hashMask];
+        Entry e = table[getIndex(name)];
+        if (e == null)
+            return sentinel;
         while (e.scope != null && e.sym.name != name)
             e = e.shadowed;
         return e;
@@ -318,18 +369,17 @@ public class Scope {
                 return new Iterator<Symbol>() {
                     private Scope currScope = Scope.this;
 
-                    private Scope.Entry currEntry = elems;
+                    private Iterator<Symbol> currElems = currScope.getLocalElements().iterator();
                     {
                         update();
                     }
 
                     public boolean hasNext() {
-                        return currEntry != null;
+                        return currElems.hasNext();
                     }
 
                     public Symbol next() {
-                        Symbol sym = (currEntry == null ? null : currEntry.sym);
-                        currEntry = currEntry.sibling;
+                        Symbol sym = currElems.next();
                         update();
                         return sym;
                     }
@@ -339,9 +389,9 @@ public class Scope {
                     }
 
                     private void update() {
-                        while (currEntry == null && currScope.next != null) {
+                        while (!currElems.hasNext() && currScope.next != null) {
                             currScope = currScope.next;
-                            currEntry = currScope.elems;
+                            currElems = currScope.getLocalElements().iterator();
                         }
                     }
                 };
@@ -350,16 +400,47 @@ public class Scope {
 
     }
 
+    /**
+     * The symbols of this scope, latest first, without those of the outer
+     * scopes. Symbols entered while iterating are not returned. Use this
+     * rather than walking elems, which is always null in a CompactScope.
+     */
+    public Iterable<Symbol> getLocalElements() {
+        return new Iterable<Symbol>() {
+            public Iterator<Symbol> iterator() {
+                return new Iterator<Symbol>() {
+                    private Entry currEntry = elems;
+
+                    public boolean hasNext() {
+                        return currEntry != null;
+                    }
+
+                    public Symbol next() {
+                        Symbol sym = currEntry.sym;
+                        currEntry = currEntry.sibling;
+                        return sym;
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
     public String toString() {
         StringBuilder result = new StringBuilder();
         result.append("Scope[");
         for (Scope s = this; s != null; s = s.next) {
             if (s != this)
                 result.append(" | ");
-            for (Entry e = s.elems; e != null; e = e.sibling) {
-                if (e != s.elems)
+            boolean first = true;
+            for (Symbol sym : s.getLocalElements()) {
+                if (!first)
                     result.append(", ");
-                result.append(e.sym);
+                result.append(sym);
+                first = false;
             }
         }
         result.append("]");
@@ -377,7 +458,7 @@ public class Scope {
         public Symbol sym;
 
         /**
-         * An entry with the same hash code, or sentinel.
+         * The previous entry with the same name, or sentinel.
          */
         private Entry shadowed;
 
@@ -434,7 +515,9 @@ public class Scope {
         }
 
         public Entry lookup(Name name) {
-            Entry e = table[name.index & hashMask];
+            Entry e = table[getIndex(name)];
+            if (e == null)
+                return sentinel;
             while (e.scope != null && (e.sym.name != name ||
             /*
              * Since an inner class will show up in package and import scopes
@@ -476,6 +559,224 @@ public class Scope {
         }
     }
 
+    /**
+     * A scope for the members of a large class read from a class file, which
+     * keeps its symbols in arrays instead of an entry for each: the symbols in
+     * the order they were entered, for each the index of the previous symbol
+     * of the same name, and a table holding the latest index of each name.
+     * Entries are only made for lookups, so elems is always null and the
+     * symbols are walked with getLocalElements. The scope cannot share its
+     * table; dup makes an unshared copy.
+     */
+    public static class CompactScope extends Scope {
+
+        /**
+         * The symbols in the order they were entered, null if removed.
+         */
+        private Symbol[] syms;
+
+        /**
+         * For each symbol, the index of the previous symbol of the same name,
+         * or -1.
+         */
+        private int[] shadowed;
+
+        /**
+         * The number of symbols entered, including the removed ones.
+         */
+        private int count;
+
+        /**
+         * A hash table for the names. A slot is 0 if it has never been used,
+         * -1 if the symbols of its name have all been removed, and the index of
+         * the latest symbol of its name plus one otherwise.
+         */
+        private int[] slots;
+
+        /**
+         * The number of slots that are not 0.
+         */
+        private int slotsFilled;
+
+        /**
+         * Construct a scope with given owner, with room for size symbols.
+         */
+        public CompactScope(Symbol owner, int size) {
+            super(null, owner, DelegatedScope.emptyTable);
+            syms = new Symbol[Math.max(size, 1)];
+            shadowed = new int[syms.length];
+            int n = INITIAL_SIZE;
+            while ((n - 1) * 2 <= size * 3)
+                n <<= 1;
+            slots = new int[n];
+        }
+
+        public Scope dup() {
+            return copy(owner);
+        }
+
+        public Scope dup(Symbol newOwner) {
+            return copy(newOwner);
+        }
+
+        public Scope dupUnshared() {
+            return copy(owner);
+        }
+
+        /**
+         * A scope within this scope, with given owner, whose table holds
+         * entries for the symbols of this scope.
+         */
+        private Scope copy(Symbol newOwner) {
+            Scope result = new Scope(this, newOwner, new Entry[slots.length]);
+            for (int i = 0; i < count; i++) {
+                if (syms[i] == null)
+                    continue;
+                int hash = result.getIndex(syms[i].name);
+                Entry old = result.table[hash];
+                if (old == null) {
+                    old = sentinel;
+                    result.filled++;
+                }
+                result.table[hash] = new Entry(syms[i], old, null, this);
+            }
+            return result;
+        }
+
+        /**
+         * The slot of the table for a name, probed as in Scope.getIndex.
+         */
+        private int getSlot(Name name) {
+            int mask = slots.length - 1;
+            int h = hash(name);
+            int i = h & mask;
+            int x = mask - ((h + (h >> 16)) << 1);
+            int d = -1;
+            for (;;) {
+                int s = slots[i];
+                if (s == 0)
+                    return d >= 0 ? d : i;
+                if (s < 0) {
+                    if (d < 0)
+                        d = i;
+                } else if (syms[s - 1].name == name)
+                    return i;
+                i = (i + x) & mask;
+            }
+        }
+
+        /**
+         * Double the size of the table.
+         */
+        private void dbleSlots() {
+            int[] oldslots = slots;
+            slots = new int[oldslots.length * 2];
+            int n = 0;
+            for (int i = oldslots.length; --i >= 0;) {
+                int s = oldslots[i];
+                if (s > 0) {
+                    slots[getSlot(syms[s - 1].name)] = s;
+                    n++;
+                }
+            }
+            slotsFilled = n;
+        }
+
+        public void enter(Symbol sym, Scope s, Scope origin) {
+            assert s == this;
+            if (slotsFilled * 3 >= (slots.length - 1) * 2)
+                dbleSlots();
+            int slot = getSlot(sym.name);
+            int old = slots[slot];
+            if (old == 0)
+                slotsFilled++;
+            if (count == syms.length) {
+                syms = ArrayUtils.copyOf(syms, count * 2);
+                shadowed = ArrayUtils.copyOf(shadowed, count * 2);
+            }
+            syms[count] = sym;
+            shadowed[count] = old > 0 ? old - 1 : -1;
+            slots[slot] = ++count;
+            nelems++;
+        }
+
+        public void remove(Symbol sym) {
+            int slot = getSlot(sym.name);
+            int prev = -1;
+            int i = slots[slot] - 1;
+            while (i >= 0 && syms[i] != sym) {
+                prev = i;
+                i = shadowed[i];
+            }
+            if (i < 0)
+                return;
+            if (prev < 0)
+                slots[slot] = shadowed[i] >= 0 ? shadowed[i] + 1 : -1;
+            else
+                shadowed[prev] = shadowed[i];
+            syms[i] = null;
+        }
+
+        public Entry lookup(Name name) {
+            return entry(slots[getSlot(name)] - 1);
+        }
+
+        /**
+         * The entry for the symbol at given index, or the sentinel if the
+         * index is negative.
+         */
+        Entry entry(int index) {
+            return index >= 0 ? new CompactEntry(this, index) : sentinel;
+        }
+
+        public Iterable<Symbol> getLocalElements() {
+            return new Iterable<Symbol>() {
+                public Iterator<Symbol> iterator() {
+                    return new Iterator<Symbol>() {
+                        private int index = count;
+                        {
+                            update();
+                        }
+
+                        public boolean hasNext() {
+                            return index >= 0;
+                        }
+
+                        public Symbol next() {
+                            Symbol sym = syms[index];
+                            update();
+                            return sym;
+                        }
+
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+
+                        private void update() {
+                            do
+                                index--;
+                            while (index >= 0 && syms[index] == null);
+                        }
+                    };
+                }
+            };
+        }
+
+        static class CompactEntry extends Entry {
+            private final int index;
+
+            CompactEntry(CompactScope scope, int index) {
+                super(scope.syms[index], null, null, scope);
+                this.index = index;
+            }
+
+            public Entry next() {
+                CompactScope s = (CompactScope) scope;
+                return s.entry(s.shadowed[index]);
+            }
+        }
+    }
+
     /**
      * An empty scope, into which you can't place anything. Used for the scope
      * for a variable initializer.
@@ -148,9 +148,11 @@ public abstract class Symbol implements Element {
      */
     public Completer completer;
 
-    /** A cache for the type erasure of this symbol.
+    /** A cache for the type erasure of this symbol. Once set, it is not
+     *  changed, even by threads racing to set it (see setErasure), since
+     *  erased class types are compared by identity.
      */
-    public Type erasure_field;
+    public volatile Type erasure_field;
 
     /** Construct a symbol with given kind, flags, name, type and owner.
      */
@@ -205,7 +207,16 @@ public abstract class Symbol implements Element {
      */
     public Type erasure(Types types) {
         if (erasure_field == null)
-            erasure_field = types.erasure(type);
+            return setErasure(types.erasure(type));
+        return erasure_field;
+    }
+
+    /** Set the erasure of this symbol unless another thread did so first.
+     *  @return the erasure that is set
+     */
+    protected synchronized Type setErasure(Type erasure) {
+        if (erasure_field == null)
+            erasure_field = erasure;
         return erasure_field;
     }
 
@@ -431,9 +442,16 @@ public abstract class Symbol implements Element {
      */
     public void complete() throws CompletionFailure {
         if (completer != null) {
-            Completer c = completer;
-            completer = null;
-            c.complete(this);
+            SymbolLock lock = SymbolLock.lockForUpdate();
+            try {
+                if (completer != null) {
+                    Completer c = completer;
+                    completer = null;
+                    c.complete(this);
+                }
+            } finally {
+                SymbolLock.unlockForUpdate(lock);
+            }
         }
     }
 
@@ -588,9 +606,9 @@ public abstract class Symbol implements Element {
 
         public java.util.List<Symbol> getEnclosedElements() {
             List<Symbol> list = List.nil();
-            for (Scope.Entry e = members().elems; e != null; e = e.sibling) {
-                if (e.sym != null && (e.sym.flags() & SYNTHETIC) == 0 && e.sym.owner == this)
-                    list = list.prepend(e.sym);
+            for (Symbol sym : members().getLocalElements()) {
+                if (sym != null && (sym.flags() & SYNTHETIC) == 0 && sym.owner == this)
+                    list = list.prepend(sym);
             }
             return list;
         }
@@ -731,6 +749,11 @@ public abstract class Symbol implements Element {
          */
         public Pool pool;
 
+        /** the completer that enters the fields and methods of the class,
+         *  if they were left unread when the class was completed
+         */
+        public Completer membersCompleter;
+
         public ClassSymbol(long flags, Name name, Type type, Symbol owner) {
             super(flags, name, type, owner);
             this.members_field = null;
@@ -763,9 +786,28 @@ public abstract class Symbol implements Element {
 
         public Scope members() {
             if (completer != null) complete();
+            if (membersCompleter != null) completeMembers();
             return members_field;
         }
 
+        /** Enter the fields and methods of this class if they were left
+         *  unread when it was completed.
+         */
+        public void completeMembers() throws CompletionFailure {
+            if (membersCompleter == null)
+                return;
+            SymbolLock lock = SymbolLock.lockForUpdate();
+            try {
+                if (membersCompleter != null) {
+                    Completer c = membersCompleter;
+                    membersCompleter = null;
+                    c.complete(this);
+                }
+            } finally {
+                SymbolLock.unlockForUpdate(lock);
+            }
+        }
+
         public List<Attribute.Compound> getAnnotationMirrors() {
             if (completer != null) complete();
             assert attributes_field != null;
@@ -774,8 +816,8 @@ public abstract class Symbol implements Element {
 
         public Type erasure(Types types) {
             if (erasure_field == null)
-                erasure_field = new ClassType(types.erasure(type.getEnclosingType()),
-                                              List.<Type>nil(), this);
+                return setErasure(new ClassType(types.erasure(type.getEnclosingType()),
+                                                List.<Type>nil(), this));
             return erasure_field;
         }
 
@@ -814,6 +856,9 @@ public abstract class Symbol implements Element {
         /** Complete the elaboration of this symbol's definition.
          */
         public void complete() throws CompletionFailure {
+            if (completer == null)
+                return;
+            SymbolLock lock = SymbolLock.lockForUpdate();
             try {
                 super.complete();
             } catch (CompletionFailure ex) {
@@ -821,6 +866,8 @@ public abstract class Symbol implements Element {
                 flags_field |= (PUBLIC|STATIC);
                 this.type = new ErrorType(this);
                 throw ex;
+            } finally {
+                SymbolLock.unlockForUpdate(lock);
             }
         }
 
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+
+package berlin.com.sun.tools.javac.code;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Guards the symbol table while several threads work on it, such as the
+ * threads generating code for different classes. Symbols are mostly read
+ * once attribution is done, but reading may still complete classes or
+ * resolve members, which updates the symbol table.
+ *
+ * <p>A thread taking part holds the lock shared between {@link #enter} and
+ * {@link #exit}. Code that updates shared symbols brackets the update with
+ * {@link #lockForUpdate} and {@link #unlockForUpdate}, which hold the lock
+ * exclusively in the meantime if the current thread takes part, and do
+ * nothing otherwise. So a compilation that runs on a single thread does
+ * not lock at all.
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+public class SymbolLock {
+
+    /** The lock the current thread takes part in, if any.
+     */
+    private static final ThreadLocal<SymbolLock> current = new ThreadLocal<SymbolLock>();
+
+    /** Fair, so that threads waiting for the lock shared get it before a
+     *  thread that gives up holding it exclusively takes it again.
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
+
+    /** Take part in this lock from the current thread, holding it shared.
+     */
+    public void enter() {
+        assert current.get() == null;
+        lock.readLock().lock();
+        current.set(this);
+    }
+
+    /** Stop taking part in this lock.
+     */
+    public void exit() {
+        assert current.get() == this;
+        current.remove();
+        lock.readLock().unlock();
+    }
+
+    /** Hold this lock exclusively from a thread that does not take part
+     *  in it, for instance to use the log to which the taking part threads
+     *  report from within updates.
+     */
+    public void lockExclusive() {
+        lock.writeLock().lock();
+    }
+
+    public void unlockExclusive() {
+        lock.writeLock().unlock();
+    }
+
+    /** Hold the lock the current thread takes part in exclusively, until
+     *  the matching call to unlockForUpdate. Other threads may update
+     *  symbols while the shared hold is given up for the exclusive one,
+     *  so any condition checked before must be checked again.
+     *  @return  the lock to pass to unlockForUpdate, or null if the
+     *           current thread does not take part in a lock
+     */
+    public static SymbolLock lockForUpdate() {
+        SymbolLock l = current.get();
+        if (l != null) {
+            if (!l.lock.isWriteLockedByCurrentThread())
+                l.lock.readLock().unlock();
+            l.lock.writeLock().lock();
+        }
+        return l;
+    }
+
+    public static void unlockForUpdate(SymbolLock l) {
+        if (l != null) {
+            if (l.lock.getWriteHoldCount() == 1)
+                l.lock.readLock().lock(); // downgrade
+            l.lock.writeLock().unlock();
+        }
+    }
+}
@@ -149,6 +149,16 @@ public class Symtab {
         return instance;
     }
 
+    /**
+     * Register this symbol table and its class reader in another context,
+     * which must share this table's names. Used to keep the symbols read from
+     * the platform class path between compilations (-XDwarmSymbols).
+     */
+    public void setContext(Context context) {
+        context.put(symtabKey, this);
+        reader.setContext(context);
+    }
+
     /**
      * Builtin types.
      */
@@ -32,6 +32,8 @@ import static berlin.com.sun.tools.javac.code.Flags.INTERFACE;
 import static berlin.com.sun.tools.javac.code.Flags.PUBLIC;
 import static berlin.com.sun.tools.javac.code.Flags.STATIC;
 import static berlin.com.sun.tools.javac.code.Flags.SYNTHETIC;
+import static berlin.com.sun.tools.javac.code.Flags.UNATTRIBUTED;
+import static berlin.com.sun.tools.javac.code.Kinds.TYP;
 import static berlin.com.sun.tools.javac.code.Type.map;
 import static berlin.com.sun.tools.javac.code.TypeTags.ARRAY;
 import static berlin.com.sun.tools.javac.code.TypeTags.BOOLEAN;
@@ -57,8 +59,10 @@ import static berlin.com.sun.tools.javac.code.TypeTags.firstPartialTag;
 import static berlin.com.sun.tools.javac.code.TypeTags.lastBaseTag;
 import static berlin.com.sun.tools.javac.util.ListBuffer.lb;
 
+import java.io.PrintWriter;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -79,7 +83,9 @@ import berlin.com.sun.tools.javac.jvm.ClassReader;
 import berlin.com.sun.tools.javac.util.Context;
 import berlin.com.sun.tools.javac.util.List;
 import berlin.com.sun.tools.javac.util.ListBuffer;
+import berlin.com.sun.tools.javac.util.Log;
 import berlin.com.sun.tools.javac.util.Name;
+import berlin.com.sun.tools.javac.util.Options;
 import berlin.com.sun.tools.javac.util.Warner;
 
 /**
@@ -121,6 +127,213 @@ public class Types {
         source = Source.instance(context);
         chk = Check.instance(context);
         capturedName = names.fromString("<captured wildcard>");
+        int cacheSize = cacheSize(Options.instance(context).get("typeCacheSize"));
+        closureCache = new TypeCache<Type, List<Type>>(cacheSize);
+        isDerivedRawCache = new TypeCache<Type, Boolean>(cacheSize);
+        asSuperCache = new TypeCache<CacheKey, Type>(cacheSize);
+        memberTypeCache = new TypeCache<CacheKey, Type[]>(cacheSize);
+        isSubtypeCache = new TypeCache<CacheKey, Boolean>(cacheSize);
+        isSameTypeCache = new TypeCache<CacheKey, Boolean>(cacheSize);
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Type caches">
+    /**
+     * The number of entries each cache of type operations keeps, unless set
+     * by -XDtypeCacheSize.
+     */
+    static final int DEFAULT_CACHE_SIZE = 4096;
+
+    private static int cacheSize(String value) {
+        if (value == null)
+            return DEFAULT_CACHE_SIZE;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return DEFAULT_CACHE_SIZE;
+        }
+    }
+
+    /**
+     * A cache of the results of a type operation, which drops its least
+     * recently used entry when it grows beyond a given size, and counts its
+     * hits and misses. It is synchronized, since code generators running on
+     * several threads may use it at once.
+     */
+    static class TypeCache<K, V> {
+        private final LinkedHashMap<K, V> map;
+        int hits;
+        int misses;
+        int evictions;
+
+        TypeCache(final int maxSize) {
+            map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+                private static final long serialVersionUID = 0;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                    if (size() <= maxSize)
+                        return false;
+                    evictions++;
+                    return true;
+                }
+            };
+        }
+
+        synchronized V get(K key) {
+            V value = map.get(key);
+            if (value == null)
+                misses++;
+            else
+                hits++;
+            return value;
+        }
+
+        synchronized void put(K key, V value) {
+            map.put(key, value);
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+    }
+
+    /**
+     * A type and a symbol or another type, compared by identity, and a flag
+     * for the variant of the operation.
+     */
+    static class CacheKey {
+        final Type t;
+        final Object other;
+        final boolean flag;
+
+        CacheKey(Type t, Object other) {
+            this(t, other, false);
+        }
+
+        CacheKey(Type t, Object other, boolean flag) {
+            this.t = t;
+            this.other = other;
+            this.flag = flag;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof CacheKey))
+                return false;
+            CacheKey that = (CacheKey) obj;
+            return t == that.t && other == that.other && flag == that.flag;
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(t) * 31 + System.identityHashCode(other)) * 2
+                + (flag ? 1 : 0);
+        }
+    }
+
+    /**
+     * Can results of operations on class type t be kept? Only if the
+     * supertypes of t and its enclosing classes are known not to change
+     * any more, which is the case once they are complete, attributed and
+     * acyclic.
+     */
+    private boolean isSettled(Type t) {
+        return t.tag == CLASS && (t.tsym.flags_field & COMPOUND) == 0 && settle(t.tsym, SETTLE_DEPTH);
+    }
+
+    /**
+     * The depth of class hierarchies beyond which classes are not settled,
+     * which also stops the search on cycles.
+     */
+    private static final int SETTLE_DEPTH = 64;
+
+    /**
+     * Mark c ACYCLIC if c, its supertypes and its enclosing classes are
+     * complete, attributed and form no cycle, as Check.checkNonCyclic does
+     * once it meets c. Classes in a cycle are never marked here, so that
+     * Check still reports the cycle.
+     */
+    private boolean settle(Symbol c, int depth) {
+        long flags = c.flags_field;
+        if ((flags & ACYCLIC) != 0)
+            return true;
+        if (depth == 0 || (flags & UNATTRIBUTED) != 0 || c.completer != null || c.type.tag != CLASS)
+            return false;
+        ClassType ct = (ClassType) c.type;
+        Type st = ct.supertype_field;
+        if (st == null || ct.interfaces_field == null)
+            return false;
+        if (st.tag != NONE && (st.tag != CLASS || !settle(st.tsym, depth - 1)))
+            return false;
+        for (List<Type> l = ct.interfaces_field; l.nonEmpty(); l = l.tail) {
+            if (l.head.tag != CLASS || !settle(l.head.tsym, depth - 1))
+                return false;
+        }
+        if (c.owner.kind == TYP && !settle(c.owner, depth - 1))
+            return false;
+        SymbolLock lock = SymbolLock.lockForUpdate();
+        try {
+            c.flags_field |= ACYCLIC;
+        } finally {
+            SymbolLock.unlockForUpdate(lock);
+        }
+        return true;
+    }
+
+    /**
+     * Can results of relations on t be kept? Only if t is built from
+     * primitive types, settled class types and type variables declared in
+     * settled classes, so that neither its supertypes nor its bounds
+     * change any more.
+     */
+    private boolean isSettledType(Type t) {
+        switch (t.tag) {
+        case CLASS:
+            if (!isSettled(t))
+                return false;
+            for (List<Type> l = t.getTypeArguments(); l.nonEmpty(); l = l.tail) {
+                if (!isSettledType(l.head))
+                    return false;
+            }
+            Type outer = t.getEnclosingType();
+            return outer.tag != CLASS || isSettledType(outer);
+        case ARRAY:
+            return isSettledType(((ArrayType) t).elemtype);
+        case WILDCARD:
+            Type bound = ((WildcardType) t).type;
+            return bound == null || isSettledType(bound);
+        case TYPEVAR:
+            if (t instanceof CapturedType)
+                return false;
+            ClassSymbol c = t.tsym.owner.enclClass();
+            return c != null && isSettled(c.type);
+        default:
+            return t.tag <= lastBaseTag || t.tag == BOT;
+        }
+    }
+
+    /**
+     * Print the hit and miss counts of the caches of type operations.
+     */
+    public void printStats(PrintWriter out) {
+        printStats(out, "closure", closureCache);
+        printStats(out, "isDerivedRaw", isDerivedRawCache);
+        printStats(out, "asSuper", asSuperCache);
+        printStats(out, "memberType", memberTypeCache);
+        printStats(out, "isSubtype", isSubtypeCache);
+        printStats(out, "isSameType", isSameTypeCache);
+    }
+
+    private void printStats(PrintWriter out, String name, TypeCache<?, ?> cache) {
+        int lookups = cache.hits + cache.misses;
+        Log.printLines(out, Log.getLocalizedString("verbose.types.cache", name,
+                                                   Integer.toString(lookups),
+                                                   Integer.toString(cache.hits),
+                                                   Long.toString(lookups == 0 ? 0 : 100L * cache.hits / lookups),
+                                                   Integer.toString(cache.evictions),
+                                                   Integer.toString(cache.size())));
     }
 
     // </editor-fold>
@@ -374,10 +587,38 @@ public class Types {
         if (s != lower)
             return isSubtype(capture ? capture(t) : t, lower, false);
 
+        if (t.tag == CLASS && s.tag == CLASS && s.isParameterized()) {
+            CacheKey key = new CacheKey(t, s, capture);
+            Boolean result = isSubtypeCache.get(key);
+            if (result == null) {
+                int cycles = cyclesBroken;
+                result = isSubtype.visit(capture ? capture(t) : t, s);
+                if (cycles == cyclesBroken && isSettledType(t) && isSettledType(s))
+                    isSubtypeCache.put(key, result);
+            }
+            return result;
+        }
+
         return isSubtype.visit(capture ? capture(t) : t, s);
     }
 
     // where
+    /**
+     * Results of isSubtype on parameterized types, with and without capture
+     * of the subtype, kept if the types are settled and no cycle through
+     * F-bounds was broken on the way, as then the result depends on the
+     * comparisons in progress around it. Keys are compared by identity,
+     * which matches the repeated comparison of the declared types of
+     * members.
+     */
+    private final TypeCache<CacheKey, Boolean> isSubtypeCache;
+
+    /**
+     * The number of times a comparison of type arguments was found to be
+     * in progress already.
+     */
+    private int cyclesBroken;
+
     private TypeRelation isSubtype = new TypeRelation() {
         public Boolean visitType(Type t, Type s) {
             switch (t.tag) {
@@ -415,6 +656,7 @@ public class Types {
                     cache.remove(pair);
                 }
             } else {
+                cyclesBroken++;
                 return containsType(t.getTypeArguments(), rewriteSupers(s).getTypeArguments());
             }
         }
@@ -583,10 +825,27 @@ public class Types {
      * Is t the same type as s?
      */
     public boolean isSameType(Type t, Type s) {
+        if (t != s && t.tag == CLASS && s.tag == CLASS && t.isParameterized()) {
+            CacheKey key = new CacheKey(t, s);
+            Boolean result = isSameTypeCache.get(key);
+            if (result == null) {
+                int cycles = cyclesBroken;
+                result = isSameType.visit(t, s);
+                if (cycles == cyclesBroken && isSettledType(t) && isSettledType(s))
+                    isSameTypeCache.put(key, result);
+            }
+            return result;
+        }
         return isSameType.visit(t, s);
     }
 
     // where
+    /**
+     * Results of isSameType on parameterized types, kept like those of
+     * isSubtype.
+     */
+    private final TypeCache<CacheKey, Boolean> isSameTypeCache;
+
     private TypeRelation isSameType = new TypeRelation() {
 
         public Boolean visitType(Type t, Type s) {
@@ -1340,9 +1599,25 @@ public class Types {
      *            a symbol
      */
     public Type asSuper(Type t, Symbol sym) {
-        return asSuper.visit(t, sym);
+        if (!isSettled(t))
+            return asSuper.visit(t, sym);
+        CacheKey key = new CacheKey(t, sym);
+        Type result = asSuperCache.get(key);
+        if (result == null) {
+            result = asSuper.visit(t, sym);
+            asSuperCache.put(key, (result == null) ? Type.noType : result);
+        } else if (result == Type.noType) {
+            result = null;
+        }
+        return result;
     }
 
+    // where
+    /**
+     * Bases of settled class types, with Type.noType for none.
+     */
+    private final TypeCache<CacheKey, Type> asSuperCache;
+
     // where
     private SimpleVisitor<Type, Symbol> asSuper = new SimpleVisitor<Type, Symbol>() {
 
@@ -1465,6 +1740,12 @@ public class Types {
     }
 
     // where
+    /**
+     * Member types seen from settled class types, each with the declared
+     * type of the member it was derived from.
+     */
+    private final TypeCache<CacheKey, Type[]> memberTypeCache;
+
     private SimpleVisitor<Type, Symbol> memberType = new SimpleVisitor<Type, Symbol>() {
 
         public Type visitType(Type t, Symbol sym) {
@@ -1481,17 +1762,31 @@ public class Types {
             Symbol owner = sym.owner;
             long flags = sym.flags();
             if (((flags & STATIC) == 0) && owner.type.isParameterized()) {
-                Type base = asOuterSuper(t, owner);
-                if (base != null) {
-                    List<Type> ownerParams = owner.type.allparams();
-                    List<Type> baseParams = base.allparams();
-                    if (ownerParams.nonEmpty()) {
-                        if (baseParams.isEmpty()) {
-                            // then base is a raw type
-                            return erasure(sym.type);
-                        } else {
-                            return subst(sym.type, ownerParams, baseParams);
-                        }
+                if (!isSettled(t))
+                    return memberTypeInternal(t, sym);
+                CacheKey key = new CacheKey(t, sym);
+                Type[] entry = memberTypeCache.get(key);
+                if (entry == null || entry[0] != sym.type) {
+                    entry = new Type[] { sym.type, memberTypeInternal(t, sym) };
+                    memberTypeCache.put(key, entry);
+                }
+                return entry[1];
+            }
+            return sym.type;
+        }
+
+        private Type memberTypeInternal(ClassType t, Symbol sym) {
+            Symbol owner = sym.owner;
+            Type base = asOuterSuper(t, owner);
+            if (base != null) {
+                List<Type> ownerParams = owner.type.allparams();
+                List<Type> baseParams = base.allparams();
+                if (ownerParams.nonEmpty()) {
+                    if (baseParams.isEmpty()) {
+                        // then base is a raw type
+                        return erasure(sym.type);
+                    } else {
+                        return subst(sym.type, ownerParams, baseParams);
                     }
                 }
             }
@@ -1787,7 +2082,7 @@ public class Types {
     // </editor-fold>
 
     // <editor-fold defaultstate="collapsed" desc="isDerivedRaw">
-    Map<Type, Boolean> isDerivedRawCache = new HashMap<Type, Boolean>();
+    private final TypeCache<Type, Boolean> isDerivedRawCache;
 
     public boolean isDerivedRaw(Type t) {
         Boolean result = isDerivedRawCache.get(t);
@@ -2310,7 +2605,7 @@ public class Types {
     /**
      * A cache for closures.     
      */
-    private Map<Type, List<Type>> closureCache = new HashMap<Type, List<Type>>();
+    private final TypeCache<Type, List<Type>> closureCache;
 
     /**
      * Returns the closure of a class or interface type.
@@ -35,6 +35,7 @@ import static berlin.com.sun.tools.javac.code.Kinds.VAR;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import berlin.com.sun.tools.javac.code.Lint;
 import berlin.com.sun.tools.javac.code.Scope;
@@ -132,6 +133,14 @@ public class Enter extends JCTree.Visitor {
         return typeEnvs.get(sym);
     }
 
+    /**
+     * The classes entered from source, and the packages whose package-info
+     * files were entered.
+     */
+    public Set<TypeSymbol> getEnteredSymbols() {
+        return typeEnvs.keySet();
+    }
+
     public Env<AttrContext> getClassEnv(TypeSymbol sym) {
         Env<AttrContext> localEnv = getEnv(sym);
         Env<AttrContext> lintEnv = localEnv;
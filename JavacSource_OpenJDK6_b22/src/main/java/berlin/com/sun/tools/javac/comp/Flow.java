@@ -299,6 +299,20 @@ public class Flow extends TreeScanner {
 
     Bits uninitsWhenFalse;
 
+    /**
+     * Sets made by copy and released as no longer referenced anywhere, for
+     * copy to reuse, so that the sets saved around branches, loops and try
+     * statements do not each allocate new storage.
+     */
+    Bits[] freeBits = new Bits[16];
+
+    int freeCount;
+
+    /**
+     * A set for tests that need a temporary copy of a set.
+     */
+    final Bits scratch = new Bits();
+
     /**
      * A mapping from addresses to variable symbols.
      */
@@ -524,12 +538,27 @@ public class Flow extends TreeScanner {
         alive = false;
     }
 
+    /**
+     * Return a copy of a set, reusing a released set if there is one.
+     */
+    Bits copy(Bits bits) {
+        return (freeCount == 0) ? bits.dup() : freeBits[--freeCount].assign(bits);
+    }
+
+    /**
+     * Release a set made by copy that is referenced nowhere any more.
+     */
+    void release(Bits bits) {
+        if (freeCount < freeBits.length)
+            freeBits[freeCount++] = bits;
+    }
+
     /**
      * Split (duplicate) inits/uninits into WhenTrue/WhenFalse sets
      */
     void split() {
-        initsWhenFalse = inits.dup();
-        uninitsWhenFalse = uninits.dup();
+        initsWhenFalse = copy(inits);
+        uninitsWhenFalse = copy(uninits);
         initsWhenTrue = inits;
         uninitsWhenTrue = uninits;
         inits = uninits = null;
@@ -609,18 +638,18 @@ public class Flow extends TreeScanner {
         if (tree.type.isFalse()) {
             if (inits == null)
                 merge();
-            initsWhenTrue = inits.dup();
+            initsWhenTrue = copy(inits);
             initsWhenTrue.inclRange(firstadr, nextadr);
-            uninitsWhenTrue = uninits.dup();
+            uninitsWhenTrue = copy(uninits);
             uninitsWhenTrue.inclRange(firstadr, nextadr);
             initsWhenFalse = inits;
             uninitsWhenFalse = uninits;
         } else if (tree.type.isTrue()) {
             if (inits == null)
                 merge();
-            initsWhenFalse = inits.dup();
+            initsWhenFalse = copy(inits);
             initsWhenFalse.inclRange(firstadr, nextadr);
-            uninitsWhenFalse = uninits.dup();
+            uninitsWhenFalse = copy(uninits);
             uninitsWhenFalse.inclRange(firstadr, nextadr);
             initsWhenTrue = inits;
             uninitsWhenTrue = uninits;
@@ -754,8 +783,8 @@ public class Flow extends TreeScanner {
 
         List<Type> caughtPrev = caught;
         List<Type> mthrown = tree.sym.type.getThrownTypes();
-        Bits initsPrev = inits.dup();
-        Bits uninitsPrev = uninits.dup();
+        Bits initsPrev = copy(inits);
+        Bits uninitsPrev = copy(uninits);
         int nextadrPrev = nextadr;
         int firstadrPrev = firstadr;
         Lint lintPrev = lint;
@@ -848,12 +877,14 @@ public class Flow extends TreeScanner {
         boolean prevLoopPassTwo = loopPassTwo;
         pendingExits = new ListBuffer<PendingExit>();
         do {
-            Bits uninitsEntry = uninits.dup();
+            Bits uninitsEntry = copy(uninits);
             scanStat(tree.body);
             alive |= resolveContinues(tree);
             scanCond(tree.cond);
-            if (log.nerrors != 0 || loopPassTwo || uninitsEntry.diffSet(uninitsWhenTrue).nextBit(firstadr) == -1)
+            if (log.nerrors != 0 || loopPassTwo || uninitsEntry.diffSet(uninitsWhenTrue).nextBit(firstadr) == -1) {
+                release(uninitsEntry);
                 break;
+            }
             inits = initsWhenTrue;
             uninits = uninitsEntry.andSet(uninitsWhenTrue);
             loopPassTwo = true;
@@ -873,7 +904,7 @@ public class Flow extends TreeScanner {
         Bits uninitsCond;
         pendingExits = new ListBuffer<PendingExit>();
         do {
-            Bits uninitsEntry = uninits.dup();
+            Bits uninitsEntry = copy(uninits);
             scanCond(tree.cond);
             initsCond = initsWhenFalse;
             uninitsCond = uninitsWhenFalse;
@@ -882,8 +913,10 @@ public class Flow extends TreeScanner {
             alive = !tree.cond.type.isFalse();
             scanStat(tree.body);
             alive |= resolveContinues(tree);
-            if (log.nerrors != 0 || loopPassTwo || uninitsEntry.diffSet(uninits).nextBit(firstadr) == -1)
+            if (log.nerrors != 0 || loopPassTwo || uninitsEntry.diffSet(uninits).nextBit(firstadr) == -1) {
+                release(uninitsEntry);
                 break;
+            }
             uninits = uninitsEntry.andSet(uninits);
             loopPassTwo = true;
             alive = true;
@@ -903,7 +936,7 @@ public class Flow extends TreeScanner {
         Bits uninitsCond;
         pendingExits = new ListBuffer<PendingExit>();
         do {
-            Bits uninitsEntry = uninits.dup();
+            Bits uninitsEntry = copy(uninits);
             if (tree.cond != null) {
                 scanCond(tree.cond);
                 initsCond = initsWhenFalse;
@@ -912,17 +945,19 @@ public class Flow extends TreeScanner {
                 uninits = uninitsWhenTrue;
                 alive = !tree.cond.type.isFalse();
             } else {
-                initsCond = inits.dup();
+                initsCond = copy(inits);
                 initsCond.inclRange(firstadr, nextadr);
-                uninitsCond = uninits.dup();
+                uninitsCond = copy(uninits);
                 uninitsCond.inclRange(firstadr, nextadr);
                 alive = true;
             }
             scanStat(tree.body);
             alive |= resolveContinues(tree);
             scan(tree.step);
-            if (log.nerrors != 0 || loopPassTwo || uninitsEntry.dup().diffSet(uninits).nextBit(firstadr) == -1)
+            if (log.nerrors != 0 || loopPassTwo || scratch.assign(uninitsEntry).diffSet(uninits).nextBit(firstadr) == -1) {
+                release(uninitsEntry);
                 break;
+            }
             uninits = uninitsEntry.andSet(uninits);
             loopPassTwo = true;
             alive = true;
@@ -941,17 +976,19 @@ public class Flow extends TreeScanner {
         boolean prevLoopPassTwo = loopPassTwo;
         int nextadrPrev = nextadr;
         scan(tree.expr);
-        Bits initsStart = inits.dup();
-        Bits uninitsStart = uninits.dup();
+        Bits initsStart = copy(inits);
+        Bits uninitsStart = copy(uninits);
 
         letInit(tree.pos(), tree.var.sym);
         pendingExits = new ListBuffer<PendingExit>();
         do {
-            Bits uninitsEntry = uninits.dup();
+            Bits uninitsEntry = copy(uninits);
             scanStat(tree.body);
             alive |= resolveContinues(tree);
-            if (log.nerrors != 0 || loopPassTwo || uninitsEntry.diffSet(uninits).nextBit(firstadr) == -1)
+            if (log.nerrors != 0 || loopPassTwo || uninitsEntry.diffSet(uninits).nextBit(firstadr) == -1) {
+                release(uninitsEntry);
                 break;
+            }
             uninits = uninitsEntry.andSet(uninits);
             loopPassTwo = true;
             alive = true;
@@ -977,11 +1014,11 @@ public class Flow extends TreeScanner {
         int nextadrPrev = nextadr;
         scanExpr(tree.selector);
         Bits initsSwitch = inits;
-        Bits uninitsSwitch = uninits.dup();
+        Bits uninitsSwitch = copy(uninits);
         boolean hasDefault = false;
         for (List<JCCase> l = tree.cases; l.nonEmpty(); l = l.tail) {
             alive = true;
-            inits = initsSwitch.dup();
+            inits = copy(initsSwitch);
             uninits = uninits.andSet(uninitsSwitch);
             JCCase c = l.head;
             if (c.pat == null)
@@ -999,6 +1036,7 @@ public class Flow extends TreeScanner {
             inits.andSet(initsSwitch);
             alive = true;
         }
+        release(uninitsSwitch);
         alive |= resolveBreaks(tree, prevPendingExits);
         nextadr = nextadrPrev;
     }
@@ -1025,8 +1063,8 @@ public class Flow extends TreeScanner {
         Bits uninitsTryPrev = uninitsTry;
         ListBuffer<PendingExit> prevPendingExits = pendingExits;
         pendingExits = new ListBuffer<PendingExit>();
-        Bits initsTry = inits.dup();
-        uninitsTry = uninits.dup();
+        Bits initsTry = copy(inits);
+        uninitsTry = copy(uninits);
         scanStat(tree.body);
         List<Type> thrownInTry = thrown;
         thrown = thrownPrev;
@@ -1049,8 +1087,8 @@ public class Flow extends TreeScanner {
                 log.error(l.head.pos(), "except.never.thrown.in.try", exc);
             }
             caughtInTry = chk.incl(exc, caughtInTry);
-            inits = initsTry.dup();
-            uninits = uninitsTry.dup();
+            inits = copy(initsTry);
+            uninits = copy(uninitsTry);
             scan(param);
             inits.incl(param.sym.adr);
             uninits.excl(param.sym.adr);
@@ -1063,8 +1101,8 @@ public class Flow extends TreeScanner {
         if (tree.finalizer != null) {
             List<Type> savedThrown = thrown;
             thrown = List.nil();
-            inits = initsTry.dup();
-            uninits = uninitsTry.dup();
+            inits = copy(initsTry);
+            uninits = copy(uninitsTry);
             ListBuffer<PendingExit> exits = pendingExits;
             pendingExits = prevPendingExits;
             alive = true;
@@ -1103,6 +1141,7 @@ public class Flow extends TreeScanner {
                 pendingExits.append(exits.next());
         }
         uninitsTry.andSet(uninitsTryPrev).andSet(uninits);
+        release(initsTry);
     }
 
     public void visitConditional(JCConditional tree) {
@@ -1117,10 +1156,10 @@ public class Flow extends TreeScanner {
             // v is (un)assigned after b when true and
             // v is (un)assigned after c when true
             scanCond(tree.truepart);
-            Bits initsAfterThenWhenTrue = initsWhenTrue.dup();
-            Bits initsAfterThenWhenFalse = initsWhenFalse.dup();
-            Bits uninitsAfterThenWhenTrue = uninitsWhenTrue.dup();
-            Bits uninitsAfterThenWhenFalse = uninitsWhenFalse.dup();
+            Bits initsAfterThenWhenTrue = copy(initsWhenTrue);
+            Bits initsAfterThenWhenFalse = copy(initsWhenFalse);
+            Bits uninitsAfterThenWhenTrue = copy(uninitsWhenTrue);
+            Bits uninitsAfterThenWhenFalse = copy(uninitsWhenFalse);
             inits = initsBeforeElse;
             uninits = uninitsBeforeElse;
             scanCond(tree.falsepart);
@@ -1128,15 +1167,21 @@ public class Flow extends TreeScanner {
             initsWhenFalse.andSet(initsAfterThenWhenFalse);
             uninitsWhenTrue.andSet(uninitsAfterThenWhenTrue);
             uninitsWhenFalse.andSet(uninitsAfterThenWhenFalse);
+            release(initsAfterThenWhenTrue);
+            release(initsAfterThenWhenFalse);
+            release(uninitsAfterThenWhenTrue);
+            release(uninitsAfterThenWhenFalse);
         } else {
             scanExpr(tree.truepart);
-            Bits initsAfterThen = inits.dup();
-            Bits uninitsAfterThen = uninits.dup();
+            Bits initsAfterThen = copy(inits);
+            Bits uninitsAfterThen = copy(uninits);
             inits = initsBeforeElse;
             uninits = uninitsBeforeElse;
             scanExpr(tree.falsepart);
             inits.andSet(initsAfterThen);
             uninits.andSet(uninitsAfterThen);
+            release(initsAfterThen);
+            release(uninitsAfterThen);
         }
     }
 
@@ -1150,13 +1195,15 @@ public class Flow extends TreeScanner {
         if (tree.elsepart != null) {
             boolean aliveAfterThen = alive;
             alive = true;
-            Bits initsAfterThen = inits.dup();
-            Bits uninitsAfterThen = uninits.dup();
+            Bits initsAfterThen = copy(inits);
+            Bits uninitsAfterThen = copy(uninits);
             inits = initsBeforeElse;
             uninits = uninitsBeforeElse;
             scanStat(tree.elsepart);
             inits.andSet(initsAfterThen);
             uninits.andSet(uninitsAfterThen);
+            release(initsAfterThen);
+            release(uninitsAfterThen);
             alive = alive | aliveAfterThen;
         } else {
             inits.andSet(initsBeforeElse);
@@ -1207,8 +1254,8 @@ public class Flow extends TreeScanner {
     }
 
     public void visitAssert(JCAssert tree) {
-        Bits initsExit = inits.dup();
-        Bits uninitsExit = uninits.dup();
+        Bits initsExit = copy(inits);
+        Bits uninitsExit = copy(uninits);
         scanCond(tree.cond);
         uninitsExit.andSet(uninitsWhenTrue);
         if (tree.detail != null) {
@@ -1332,6 +1379,8 @@ public class Flow extends TreeScanner {
             // note that recursive invocations of this method fail hard
             inits = uninits = uninitsTry = null;
             initsWhenTrue = initsWhenFalse = uninitsWhenTrue = uninitsWhenFalse = null;
+            while (freeCount > 0)
+                freeBits[--freeCount] = null;
             if (vars != null)
                 for (int i = 0; i < vars.length; i++)
                     vars[i] = null;
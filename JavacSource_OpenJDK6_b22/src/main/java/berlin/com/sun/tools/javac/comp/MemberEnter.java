@@ -194,9 +194,9 @@ public class MemberEnter extends JCTree.Visitor implements Completer {
         }
         final Scope fromScope = tsym.members();
         final Scope toScope = env.toplevel.starImportScope;
-        for (Scope.Entry e = fromScope.elems; e != null; e = e.sibling) {
-            if (e.sym.kind == TYP && !toScope.includes(e.sym))
-                toScope.enter(e.sym, fromScope);
+        for (Symbol sym : fromScope.getLocalElements()) {
+            if (sym.kind == TYP && !toScope.includes(sym))
+                toScope.enter(sym, fromScope);
         }
     }
 
@@ -227,8 +227,7 @@ public class MemberEnter extends JCTree.Visitor implements Completer {
                     importFrom(t.tsym);
 
                 final Scope fromScope = tsym.members();
-                for (Scope.Entry e = fromScope.elems; e != null; e = e.sibling) {
-                    Symbol sym = e.sym;
+                for (Symbol sym : fromScope.getLocalElements()) {
                     if (sym.kind == TYP &&
                         (sym.flags() & STATIC) != 0 &&
                         staticImportAccessible(sym, packge) &&
@@ -256,8 +255,7 @@ public class MemberEnter extends JCTree.Visitor implements Completer {
                     importFrom(t.tsym);
 
                 final Scope fromScope = tsym.members();
-                for (Scope.Entry e = fromScope.elems; e != null; e = e.sibling) {
-                    Symbol sym = e.sym;
+                for (Symbol sym : fromScope.getLocalElements()) {
                     if (sym.isStatic() && sym.kind != TYP &&
                         staticImportAccessible(sym, packge) &&
                         !toScope.includes(sym) &&
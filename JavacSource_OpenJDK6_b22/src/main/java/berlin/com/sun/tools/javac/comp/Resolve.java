@@ -35,6 +35,12 @@ import berlin.com.sun.tools.javac.util.*;
 import berlin.com.sun.tools.javac.util.JCDiagnostic.DiagnosticPosition;
 import berlin.javax.lang.model.element.ElementVisitor;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
 
 import static berlin.com.sun.tools.javac.code.Flags.*;
 import static berlin.com.sun.tools.javac.code.Kinds.*;
@@ -408,6 +414,40 @@ public class Resolve {
                      Type site,
                      Name name,
                      TypeSymbol c) {
+        fieldLookups++;
+        MemberIndex index = memberIndex(c.type);
+        if (index != null) {
+            VisitedClasses visited = index.missingFields.get(name);
+            if (visited != null && visited.isCurrent()) {
+                fieldsMissing++;
+                return varNotFound;
+            }
+        }
+        Symbol sym = lookupField(env, site, name, c);
+        if (index != null && sym == varNotFound) {
+            Set<ClassSymbol> cs = new LinkedHashSet<ClassSymbol>();
+            fieldClasses(c, cs);
+            index.missingFields.put(name, new VisitedClasses(cs));
+        }
+        return sym;
+    }
+    //where
+        /** The classes visited by lookupField when it finds no field.
+         */
+        private void fieldClasses(TypeSymbol c, Set<ClassSymbol> cs) {
+            if (!cs.add((ClassSymbol)c))
+                return;
+            Type st = types.supertype(c.type);
+            if (st != null && st.tag == CLASS)
+                fieldClasses(st.tsym, cs);
+            for (List<Type> l = types.interfaces(c.type); l.nonEmpty(); l = l.tail)
+                fieldClasses(l.head.tsym, cs);
+        }
+
+    private Symbol lookupField(Env<AttrContext> env,
+                               Type site,
+                               Name name,
+                               TypeSymbol c) {
         Symbol bestSoFar = varNotFound;
         Symbol sym;
         Scope.Entry e = c.members().lookup(name);
@@ -710,6 +750,11 @@ public class Resolve {
                       boolean allowBoxing,
                       boolean useVarargs,
                       boolean operator) {
+        MethodCandidates candidates = methodCandidates(site.tsym.type, name);
+        if (candidates != null)
+            return candidates.select(env, site, argtypes, typeargtypes,
+                                     methodNotFound, allowBoxing, useVarargs,
+                                     operator);
         return findMethod(env,
                           site,
                           name,
@@ -773,6 +818,292 @@ public class Resolve {
         return bestSoFar;
     }
 
+    /** The member indexes of the classes looked up so far.
+     */
+    private final Map<TypeSymbol, MemberIndex> memberIndexes =
+        new HashMap<TypeSymbol, MemberIndex>();
+
+    /** Counts of method resolutions, of resolutions that needed the
+     *  boxing and varargs phases, of candidate sets looked up, recorded,
+     *  and recorded again because a class changed, and of field lookups
+     *  and those answered by a member index.
+     */
+    private int methodResolutions, boxingPhases, varargsPhases;
+    private int candidatesLookups, candidatesRecorded, candidatesStale;
+    private int fieldLookups, fieldsMissing;
+
+    /** The member index of a type, or null if none is kept for it, which
+     *  is the case for intersection types: their classes are made afresh
+     *  for every intersection.
+     */
+    private MemberIndex memberIndex(Type t) {
+        if (t.tag != CLASS || (t.tsym.flags() & COMPOUND) != 0)
+            return null;
+        MemberIndex index = memberIndexes.get(t.tsym);
+        if (index == null) {
+            index = new MemberIndex((ClassSymbol)t.tsym);
+            memberIndexes.put(t.tsym, index);
+        }
+        return index;
+    }
+
+    /** The candidate set for methods of a given name in a type and its
+     *  supertypes, or null if there is no member index for the type.
+     */
+    private MethodCandidates methodCandidates(Type intype, Name name) {
+        MemberIndex index = memberIndex(intype);
+        if (index == null)
+            return null;
+        MethodCandidates candidates = index.methods.get(name);
+        if (candidates == null) {
+            candidates = new MethodCandidates(index.c.type, name);
+            index.methods.put(name, candidates);
+        }
+        return candidates;
+    }
+
+    /** The members of a given name inherited by a class, as far as
+     *  findMethod and findField look for them, built lazily name by name.
+     *  An entry lists the classes visited to build it, and is built again
+     *  when a member is entered into one of them, or when the members or
+     *  supertypes of one are replaced.
+     */
+    class MemberIndex {
+        final ClassSymbol c;
+
+        /** The candidate sets of methods, by name.
+         */
+        final Map<Name, MethodCandidates> methods =
+            new HashMap<Name, MethodCandidates>();
+
+        /** The names of which findField found no field, with the classes
+         *  it visited.
+         */
+        final Map<Name, VisitedClasses> missingFields =
+            new HashMap<Name, VisitedClasses>();
+
+        MemberIndex(ClassSymbol c) {
+            this.c = c;
+        }
+    }
+
+    /** A set of classes, with their member scopes, the sizes of those
+     *  scopes, and their supertypes and interfaces, when the set was made.
+     */
+    static class VisitedClasses {
+        final ClassSymbol[] classes;
+        final Scope[] scopes;
+        final int[] sizes;
+        final Type[] supertypes;
+        final List<Type>[] interfaces;
+
+        @SuppressWarnings("unchecked")
+        VisitedClasses(Collection<ClassSymbol> cs) {
+            int n = cs.size();
+            classes = cs.toArray(new ClassSymbol[n]);
+            scopes = new Scope[n];
+            sizes = new int[n];
+            supertypes = new Type[n];
+            interfaces = (List<Type>[])new List<?>[n];
+            for (int i = 0; i < n; i++) {
+                ClassType ct = (ClassType)classes[i].type;
+                scopes[i] = classes[i].members_field;
+                sizes[i] = scopes[i].nelems;
+                supertypes[i] = ct.supertype_field;
+                interfaces[i] = ct.interfaces_field;
+            }
+        }
+
+        /** Are the classes unchanged since the set was made?
+         */
+        boolean isCurrent() {
+            for (int i = 0; i < classes.length; i++) {
+                ClassType ct = (ClassType)classes[i].type;
+                if (classes[i].members_field != scopes[i] ||
+                    scopes[i].nelems != sizes[i] ||
+                    ct.supertype_field != supertypes[i] ||
+                    ct.interfaces_field != interfaces[i])
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /** The methods of a given name that findMethod considers in a type
+     *  and its supertypes, in the order it considers them. They only
+     *  depend on the classes visited, not on the arguments of a call or
+     *  on the phase of the resolution, so they are recorded once and
+     *  then shared by all phases and all calls; which of them apply is
+     *  still decided for each call by selectBest.
+     *
+     *  <p>The walk over the supertypes is recorded as a program: an
+     *  instruction that is an index into methods selects that method,
+     *  SAVE_CONCRETE saves the best method so far before the
+     *  superinterfaces of a class are searched, and KEEP_CONCRETE restores
+     *  it afterwards if it is concrete and implements the best method found
+     *  in them. A save immediately followed by its restore has no effect,
+     *  and is not recorded, so the program for a name no supertype has a
+     *  method of is empty.
+     */
+    class MethodCandidates {
+        final Type intype;
+        final Name name;
+
+        static final int SAVE_CONCRETE = -1;
+        static final int KEEP_CONCRETE = -2;
+
+        VisitedClasses visited;
+        Symbol[] methods;
+        int[] program;
+
+        MethodCandidates(Type intype, Name name) {
+            this.intype = intype;
+            this.name = name;
+        }
+
+        /** Find the best method of this candidate set, as findMethod
+         *  does for intype.
+         */
+        Symbol select(Env<AttrContext> env,
+                      Type site,
+                      List<Type> argtypes,
+                      List<Type> typeargtypes,
+                      Symbol bestSoFar,
+                      boolean allowBoxing,
+                      boolean useVarargs,
+                      boolean operator) {
+            candidatesLookups++;
+            if (visited == null) {
+                record();
+            } else if (!visited.isCurrent()) {
+                candidatesStale++;
+                record();
+            }
+            Symbol[] concrete = null;
+            int depth = 0;
+            for (int op : program) {
+                if (op >= 0) {
+                    bestSoFar = selectBest(env, site, argtypes, typeargtypes,
+                                           methods[op], bestSoFar,
+                                           allowBoxing,
+                                           useVarargs,
+                                           operator);
+                } else if (op == SAVE_CONCRETE) {
+                    if (concrete == null)
+                        concrete = new Symbol[program.length / 2];
+                    concrete[depth++] = ((bestSoFar.flags() & ABSTRACT) == 0)
+                        ? bestSoFar
+                        : methodNotFound;
+                } else {
+                    Symbol c = concrete[--depth];
+                    if (c != bestSoFar &&
+                        c.kind < ERR  && bestSoFar.kind < ERR &&
+                        types.isSubSignature(c.type, bestSoFar.type))
+                        bestSoFar = c;
+                }
+            }
+            return bestSoFar;
+        }
+
+        /** Visit the classes as findMethod does, recording the methods
+         *  found instead of selecting among them.
+         */
+        void record() {
+            candidatesRecorded++;
+            Set<ClassSymbol> cs = new LinkedHashSet<ClassSymbol>();
+            ListBuffer<Symbol> ms = new ListBuffer<Symbol>();
+            IntBuffer ops = new IntBuffer();
+            record(intype, true, cs, ms, ops);
+            visited = new VisitedClasses(cs);
+            methods = ms.toArray(new Symbol[ms.length()]);
+            program = ops.toArray();
+        }
+
+        private void record(Type intype, boolean abstractok, Set<ClassSymbol> cs,
+                            ListBuffer<Symbol> ms, IntBuffer ops) {
+            for (Type ct = intype; ct.tag == CLASS; ct = types.supertype(ct)) {
+                ClassSymbol c = (ClassSymbol)ct.tsym;
+                if ((c.flags() & (ABSTRACT | INTERFACE | ENUM)) == 0)
+                    abstractok = false;
+                for (Scope.Entry e = c.members().lookup(name);
+                     e.scope != null;
+                     e = e.next()) {
+                    if (e.sym.kind == MTH &&
+                        (e.sym.flags_field & SYNTHETIC) == 0) {
+                        ops.append(ms.length());
+                        ms.append(e.sym);
+                    }
+                }
+                cs.add(c);
+                if (abstractok) {
+                    ops.append(SAVE_CONCRETE);
+                    for (List<Type> l = types.interfaces(c.type);
+                         l.nonEmpty();
+                         l = l.tail) {
+                        record(l.head, abstractok, cs, ms, ops);
+                    }
+                    if (ops.last() == SAVE_CONCRETE)
+                        ops.removeLast();
+                    else
+                        ops.append(KEEP_CONCRETE);
+                }
+            }
+        }
+    }
+
+    /** A growable array of ints.
+     */
+    static class IntBuffer {
+        private int[] elems = new int[8];
+        private int length;
+
+        void append(int x) {
+            if (length == elems.length) {
+                int[] newelems = new int[length * 2];
+                System.arraycopy(elems, 0, newelems, 0, length);
+                elems = newelems;
+            }
+            elems[length++] = x;
+        }
+
+        int last() {
+            return length == 0 ? 0 : elems[length - 1];
+        }
+
+        void removeLast() {
+            length--;
+        }
+
+        int[] toArray() {
+            int[] result = new int[length];
+            System.arraycopy(elems, 0, result, 0, length);
+            return result;
+        }
+    }
+
+    /** Print the number of method resolutions and of those that needed the
+     *  boxing and varargs phases, how often candidate sets were reused, and
+     *  how many field lookups a member index answered.
+     */
+    public void printStats() {
+        int reused = candidatesLookups - candidatesRecorded;
+        Log.printLines(log.noticeWriter,
+                       Log.getLocalizedString("verbose.resolve",
+                                              Integer.toString(methodResolutions),
+                                              Integer.toString(boxingPhases),
+                                              Integer.toString(varargsPhases),
+                                              Integer.toString(candidatesLookups),
+                                              Integer.toString(reused),
+                                              Long.toString(candidatesLookups == 0 ? 0
+                                                            : 100L * reused / candidatesLookups),
+                                              Integer.toString(candidatesRecorded),
+                                              Integer.toString(candidatesStale)));
+        Log.printLines(log.noticeWriter,
+                       Log.getLocalizedString("verbose.resolve.fields",
+                                              Integer.toString(fieldLookups),
+                                              Integer.toString(fieldsMissing)));
+    }
+
     /** Find unqualified method matching given name, type and value arguments.
      *  @param env       The current environment.
      *  @param name      The method's name.
@@ -1187,11 +1518,15 @@ public class Resolve {
                          Name name,
                          List<Type> argtypes,
                          List<Type> typeargtypes) {
+        methodResolutions++;
         Symbol sym = findFun(env, name, argtypes, typeargtypes, false, env.info.varArgs=false);
         if (varargsEnabled && sym.kind >= WRONG_MTHS) {
+            boxingPhases++;
             sym = findFun(env, name, argtypes, typeargtypes, true, false);
-            if (sym.kind >= WRONG_MTHS)
+            if (sym.kind >= WRONG_MTHS) {
+                varargsPhases++;
                 sym = findFun(env, name, argtypes, typeargtypes, true, env.info.varArgs=true);
+            }
         }
         if (sym.kind >= AMBIGUOUS) {
             sym = access(
@@ -1212,14 +1547,18 @@ public class Resolve {
     Symbol resolveQualifiedMethod(DiagnosticPosition pos, Env<AttrContext> env,
                                   Type site, Name name, List<Type> argtypes,
                                   List<Type> typeargtypes) {
+        methodResolutions++;
         Symbol sym = findMethod(env, site, name, argtypes, typeargtypes, false,
                                 env.info.varArgs=false, false);
         if (varargsEnabled && sym.kind >= WRONG_MTHS) {
+            boxingPhases++;
             sym = findMethod(env, site, name, argtypes, typeargtypes, true,
                              false, false);
-            if (sym.kind >= WRONG_MTHS)
+            if (sym.kind >= WRONG_MTHS) {
+                varargsPhases++;
                 sym = findMethod(env, site, name, argtypes, typeargtypes, true,
                                  env.info.varArgs=true, false);
+            }
         }
         if (sym.kind >= AMBIGUOUS) {
             sym = access(sym, pos, site, name, true, argtypes, typeargtypes);
@@ -1241,8 +1580,15 @@ public class Resolve {
                                         Type site, Name name,
                                         List<Type> argtypes,
                                         List<Type> typeargtypes) {
-        Symbol sym = resolveQualifiedMethod(
-            pos, env, site, name, argtypes, typeargtypes);
+        // resolution updates the shared error symbols
+        SymbolLock lock = SymbolLock.lockForUpdate();
+        Symbol sym;
+        try {
+            sym = resolveQualifiedMethod(
+                pos, env, site, name, argtypes, typeargtypes);
+        } finally {
+            SymbolLock.unlockForUpdate(lock);
+        }
         if (sym.kind == MTH) return (MethodSymbol)sym;
         else throw new FatalError(
                  JCDiagnostic.fragment("fatal.err.cant.locate.meth",
@@ -1263,11 +1609,15 @@ public class Resolve {
                               Type site,
                               List<Type> argtypes,
                               List<Type> typeargtypes) {
+        methodResolutions++;
         Symbol sym = resolveConstructor(pos, env, site, argtypes, typeargtypes, false, env.info.varArgs=false);
         if (varargsEnabled && sym.kind >= WRONG_MTHS) {
+            boxingPhases++;
             sym = resolveConstructor(pos, env, site, argtypes, typeargtypes, true, false);
-            if (sym.kind >= WRONG_MTHS)
+            if (sym.kind >= WRONG_MTHS) {
+                varargsPhases++;
                 sym = resolveConstructor(pos, env, site, argtypes, typeargtypes, true, env.info.varArgs=true);
+            }
         }
         if (sym.kind >= AMBIGUOUS) {
             sym = access(sym, pos, site, names.init, true, argtypes, typeargtypes);
@@ -1328,15 +1678,57 @@ public class Resolve {
      */
     Symbol resolveOperator(DiagnosticPosition pos, int optag,
                            Env<AttrContext> env, List<Type> argtypes) {
+        int index = operatorIndex(optag, argtypes);
+        if (index >= 0 && operatorTable[index] != null)
+            return operatorTable[index];
         Name name = treeinfo.operatorName(optag);
         Symbol sym = findMethod(env, syms.predefClass.type, name, argtypes,
                                 null, false, false, true);
         if (boxingEnabled && sym.kind >= WRONG_MTHS)
             sym = findMethod(env, syms.predefClass.type, name, argtypes,
                              null, true, false, true);
+        if (index >= 0 && sym.kind == MTH)
+            operatorTable[index] = sym;
         return access(sym, pos, env.enclClass.sym.type, name,
                       false, argtypes, null);
     }
+    //where
+        /** The number of operand type tags distinguished by operatorTable:
+         *  none (for the missing right operand of a unary operator),
+         *  and BYTE through BOOLEAN.
+         */
+        private static final int OPERAND_TAGS = BOOLEAN + 1;
+
+        /** The operators resolved so far for primitive operands, indexed
+         *  by operatorIndex. Since the operators in syms.predefClass are
+         *  all public, the outcome of the search above only depends on the
+         *  operator tag and the operand type tags, so every entry is
+         *  filled once, on first use, and shared by later expressions.
+         *  Failed resolutions are not recorded, so that each one is
+         *  reported where it occurs.
+         */
+        private final Symbol[] operatorTable =
+            new Symbol[(JCTree.MOD - JCTree.POS + 1) * OPERAND_TAGS * OPERAND_TAGS];
+
+        /** The index of an operator application in operatorTable,
+         *  or -1 if an operand is not of primitive type, in which case
+         *  the operator has to be resolved by the general search.
+         */
+        private int operatorIndex(int optag, List<Type> argtypes) {
+            if (optag < JCTree.POS || optag > JCTree.MOD)
+                return -1;
+            int index = optag - JCTree.POS;
+            int n = 0;
+            for (List<Type> l = argtypes; l.nonEmpty(); l = l.tail, n++) {
+                int tag = l.head.tag;
+                if (tag < BYTE || tag > BOOLEAN || n == 2)
+                    return -1;
+                index = index * OPERAND_TAGS + tag;
+            }
+            for (; n < 2; n++)
+                index = index * OPERAND_TAGS;
+            return index;
+        }
 
     /** Resolve operator.
      *  @param pos       The position to use for error reporting.
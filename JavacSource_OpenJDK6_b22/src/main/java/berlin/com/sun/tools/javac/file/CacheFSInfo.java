@@ -50,14 +50,23 @@ public class CacheFSInfo extends FSInfo {
     public static void preRegister(final Context context) {
         context.put(FSInfo.class, new Context.Factory<FSInfo>() {
             public FSInfo make() {
-                if (singleton == null)
-                    singleton = new CacheFSInfo();
-                context.put(FSInfo.class, singleton);
-                return singleton;
+                FSInfo instance = getSingleton();
+                context.put(FSInfo.class, instance);
+                return instance;
             }
         });
     }
 
+    /**
+     * The cache is shared by every context in the VM, including contexts
+     * that are compiling concurrently (see berlin.com.sun.tools.javac.Server).
+     */
+    static synchronized CacheFSInfo getSingleton() {
+        if (singleton == null)
+            singleton = new CacheFSInfo();
+        return singleton;
+    }
+
     static CacheFSInfo singleton;
 
     public void clearCache() {
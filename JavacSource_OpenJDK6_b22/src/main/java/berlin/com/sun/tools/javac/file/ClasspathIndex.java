@@ -0,0 +1,430 @@
+/*
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package berlin.com.sun.tools.javac.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import berlin.com.sun.tools.javac.file.RelativePath.RelativeDirectory;
+import berlin.com.sun.tools.javac.file.ZipFileIndex.Entry;
+
+/** An index of all the zip files on a class path, kept in a single file so
+ *  that a later compilation can list and find their entries without reading
+ *  the central directory of each zip file.  A zip file whose length or time
+ *  stamp has changed since the index was written is indexed again from its
+ *  central directory, and the index file is then rewritten; the records of
+ *  the other zip files are copied unchanged.
+ *
+ *  The index is used if "-XDclasspathIndex=<file>" is given.  The file is
+ *  mapped into memory, and the entries of a directory are decoded only when
+ *  the directory is first used.  All numbers are big-endian:
+ *  <pre>
+ *    header:      int magic, int version, long CRC-32 of the rest of the file,
+ *                 int zip count, int directory count, int entry count,
+ *                 int string pool size
+ *    zip:         int path, int symbol file prefix, long last modified,
+ *                 long length, int first directory, int directory count
+ *    directory:   int name, int first entry, int entry count
+ *    entry:       int name, int flags, int offset, int size,
+ *                 int compressed size, int DOS time, long Java time
+ *    string pool: strings as a u2 length followed by UTF-8 bytes
+ *  </pre>
+ *  Strings are referred to by their offset in the pool, or -1 for null.
+ *  The entries of a directory are sorted, as ZipFileIndex expects.
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+public class ClasspathIndex {
+
+    private static final int MAGIC = 0x4a435049; // "JCPI"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int ZIP_SIZE = 32;
+    private static final int DIRECTORY_SIZE = 12;
+    private static final int ENTRY_SIZE = 32;
+
+    private static final int IS_DIR = 1;
+
+    /** The zip files in an index, keyed by canonical path and symbol file prefix. */
+    private final Map<String, Zip> zips = new LinkedHashMap<String, Zip>();
+
+    private final File file;
+    private ByteBuffer buffer;
+    private int directoriesStart;
+    private int entriesStart;
+    private int stringsStart;
+
+    /** A zip file recorded in the index. */
+    static class Zip {
+        final String path;
+        final String symbolFilePrefix;
+        final long lastModified;
+        final long length;
+        final int firstDirectory;
+        final int directoryCount;
+
+        Zip(String path, String symbolFilePrefix, long lastModified, long length,
+                int firstDirectory, int directoryCount) {
+            this.path = path;
+            this.symbolFilePrefix = symbolFilePrefix;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.firstDirectory = firstDirectory;
+            this.directoryCount = directoryCount;
+        }
+
+        boolean isUpToDate() {
+            File f = new File(path);
+            return f.lastModified() == lastModified && f.length() == length;
+        }
+    }
+
+    /**
+     * Reads the index in a file.  If the file does not exist, or is not
+     * a valid index, the result is an empty index that will be written
+     * to the file when it is updated.
+     */
+    public static ClasspathIndex read(File file) {
+        ClasspathIndex index = new ClasspathIndex(file);
+        if (file.exists()) {
+            try {
+                index.load();
+            } catch (IOException e) {
+                index.zips.clear();
+                index.buffer = null;
+            }
+        }
+        return index;
+    }
+
+    private ClasspathIndex(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    private void load() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        ByteBuffer buf;
+        try {
+            long length = raf.length();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE)
+                throw new IOException("bad index");
+            buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } finally {
+            raf.close();
+        }
+
+        if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION)
+            throw new IOException("bad index");
+        long checksum = buf.getLong(8);
+        int zipCount = buf.getInt(16);
+        int directoryCount = buf.getInt(20);
+        int entryCount = buf.getInt(24);
+        int stringsSize = buf.getInt(28);
+        long size = HEADER_SIZE + (long) zipCount * ZIP_SIZE
+                + (long) directoryCount * DIRECTORY_SIZE
+                + (long) entryCount * ENTRY_SIZE + stringsSize;
+        if (zipCount < 0 || directoryCount < 0 || entryCount < 0 || stringsSize < 0
+                || size != buf.limit())
+            throw new IOException("bad index");
+
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[8192];
+        ByteBuffer b = buf.duplicate();
+        b.position(HEADER_SIZE);
+        while (b.hasRemaining()) {
+            int n = Math.min(chunk.length, b.remaining());
+            b.get(chunk, 0, n);
+            crc.update(chunk, 0, n);
+        }
+        if (crc.getValue() != checksum)
+            throw new IOException("bad index");
+
+        buffer = buf;
+        directoriesStart = HEADER_SIZE + zipCount * ZIP_SIZE;
+        entriesStart = directoriesStart + directoryCount * DIRECTORY_SIZE;
+        stringsStart = entriesStart + entryCount * ENTRY_SIZE;
+
+        for (int i = 0; i < zipCount; i++) {
+            int pos = HEADER_SIZE + i * ZIP_SIZE;
+            Zip zip = new Zip(getString(buf.getInt(pos)), getString(buf.getInt(pos + 4)),
+                    buf.getLong(pos + 8), buf.getLong(pos + 16),
+                    buf.getInt(pos + 24), buf.getInt(pos + 28));
+            if (zip.path == null || zip.firstDirectory < 0 || zip.directoryCount < 0
+                    || zip.firstDirectory > directoryCount - zip.directoryCount)
+                throw new IOException("bad index");
+            zips.put(key(zip.path, zip.symbolFilePrefix), zip);
+        }
+    }
+
+    private static String key(String path, String symbolFilePrefix) {
+        return symbolFilePrefix == null ? path : path + File.pathSeparator + symbolFilePrefix;
+    }
+
+    private static String key(File zipFile, RelativeDirectory symbolFilePrefix) {
+        return key(ZipFileIndex.cacheKey(zipFile).getPath(),
+                symbolFilePrefix == null ? null : symbolFilePrefix.getPath());
+    }
+
+    /**
+     * Returns the record for a zip file, or null if the zip file is not in
+     * the index or has changed since the index was written.
+     */
+    Zip getZip(File zipFile, RelativeDirectory symbolFilePrefix) {
+        Zip zip = zips.get(key(zipFile, symbolFilePrefix));
+        return (zip != null && zip.isUpToDate()) ? zip : null;
+    }
+
+    String getDirectoryName(int dir) {
+        return getString(buffer.getInt(directoriesStart + dir * DIRECTORY_SIZE));
+    }
+
+    /**
+     * Appends the entries of a directory to a list.
+     */
+    void readEntries(int dir, RelativeDirectory dirName, List<Entry> entries) {
+        int pos = directoriesStart + dir * DIRECTORY_SIZE;
+        int first = buffer.getInt(pos + 4);
+        int count = buffer.getInt(pos + 8);
+        for (int i = first; i < first + count; i++) {
+            int epos = entriesStart + i * ENTRY_SIZE;
+            Entry e = new Entry(dirName, getString(buffer.getInt(epos)));
+            e.isDir = (buffer.getInt(epos + 4) & IS_DIR) != 0;
+            e.offset = buffer.getInt(epos + 8);
+            e.size = buffer.getInt(epos + 12);
+            e.compressedSize = buffer.getInt(epos + 16);
+            e.setNativeTime(buffer.getInt(epos + 20));
+            e.javatime = buffer.getLong(epos + 24);
+            entries.add(e);
+        }
+    }
+
+    private String getString(int offset) {
+        if (offset == -1)
+            return null;
+        int pos = stringsStart + offset;
+        int len = buffer.getShort(pos) & 0xFFFF;
+        byte[] bytes = new byte[len];
+        ByteBuffer b = buffer.duplicate();
+        b.position(pos + 2);
+        b.get(bytes);
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Rewrites the index file if any of the given zip files are not yet in
+     * it or have changed, and returns the updated index; otherwise returns
+     * this index.  Zip files in the index that are not among the given ones
+     * are kept, unless they have changed.  Failure to write the file is
+     * ignored, since the index is only a cache.
+     */
+    public ClasspathIndex update(Collection<ZipFileIndex> indexes) {
+        boolean changed = false;
+        for (ZipFileIndex zi : indexes) {
+            if (getZip(zi.getZipFile(), zi.symbolFilePrefix) == null) {
+                changed = true;
+                break;
+            }
+        }
+        if (!changed)
+            return this;
+
+        try {
+            IndexWriter w = new IndexWriter();
+            Map<String, ZipFileIndex> given = new HashMap<String, ZipFileIndex>();
+            for (ZipFileIndex zi : indexes)
+                given.put(key(zi.getZipFile(), zi.symbolFilePrefix), zi);
+            for (Map.Entry<String, Zip> e : zips.entrySet()) {
+                Zip zip = e.getValue();
+                if (!given.containsKey(e.getKey()) && zip.isUpToDate())
+                    w.addZip(zip);
+            }
+            for (Map.Entry<String, ZipFileIndex> e : given.entrySet()) {
+                ZipFileIndex zi = e.getValue();
+                Zip zip = getZip(zi.getZipFile(), zi.symbolFilePrefix);
+                if (zip != null)
+                    w.addZip(zip);
+                else
+                    w.addZip(zi);
+            }
+            w.write(file);
+        } catch (IOException e) {
+            return this;
+        }
+        return read(file);
+    }
+
+    /**
+     * Builds the contents of an index file in memory.
+     */
+    private class IndexWriter {
+        final ByteArrayOutputStream zipBytes = new ByteArrayOutputStream();
+        final ByteArrayOutputStream dirBytes = new ByteArrayOutputStream();
+        final ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+        final ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+        final DataOutputStream zipOut = new DataOutputStream(zipBytes);
+        final DataOutputStream dirOut = new DataOutputStream(dirBytes);
+        final DataOutputStream entryOut = new DataOutputStream(entryBytes);
+        final DataOutputStream stringOut = new DataOutputStream(stringBytes);
+        final Map<String, Integer> strings = new HashMap<String, Integer>();
+        int zipCount;
+        int directoryCount;
+        int entryCount;
+
+        /** Copies a zip file's record from the current index. */
+        void addZip(Zip zip) throws IOException {
+            addZip(zip.path, zip.symbolFilePrefix, zip.lastModified, zip.length, zip.directoryCount);
+            List<Entry> entries = new ArrayList<Entry>();
+            for (int d = zip.firstDirectory; d < zip.firstDirectory + zip.directoryCount; d++) {
+                String name = getDirectoryName(d);
+                entries.clear();
+                readEntries(d, new RelativeDirectory(name), entries);
+                addDirectory(name, entries);
+            }
+        }
+
+        /** Adds the contents of an index built from a zip file's central directory. */
+        void addZip(ZipFileIndex zi) throws IOException {
+            File zipFile = zi.getZipFile();
+            List<RelativeDirectory> dirs = new ArrayList<RelativeDirectory>(zi.getAllDirectories());
+            RelativeDirectory prefix = zi.symbolFilePrefix;
+            addZip(ZipFileIndex.cacheKey(zipFile).getPath(),
+                    prefix == null ? null : prefix.getPath(),
+                    zi.getZipFileLastModified(), zipFile.length(), dirs.size());
+            for (RelativeDirectory dir : dirs)
+                addDirectory(dir.getPath(), zi.getEntries(dir));
+        }
+
+        private void addZip(String path, String prefix, long lastModified, long length,
+                int dirs) throws IOException {
+            zipOut.writeInt(string(path));
+            zipOut.writeInt(string(prefix));
+            zipOut.writeLong(lastModified);
+            zipOut.writeLong(length);
+            zipOut.writeInt(directoryCount);
+            zipOut.writeInt(dirs);
+            zipCount++;
+        }
+
+        private void addDirectory(String name, List<Entry> entries) throws IOException {
+            dirOut.writeInt(string(name));
+            dirOut.writeInt(entryCount);
+            dirOut.writeInt(entries.size());
+            directoryCount++;
+            for (Entry e : entries) {
+                entryOut.writeInt(string(e.name));
+                entryOut.writeInt(e.isDir ? IS_DIR : 0);
+                entryOut.writeInt(e.offset);
+                entryOut.writeInt(e.size);
+                entryOut.writeInt(e.compressedSize);
+                entryOut.writeInt(e.getNativeTime());
+                entryOut.writeLong(e.javatime);
+                entryCount++;
+            }
+        }
+
+        private int string(String s) throws IOException {
+            if (s == null)
+                return -1;
+            Integer offset = strings.get(s);
+            if (offset == null) {
+                byte[] bytes = s.getBytes("UTF-8");
+                if (bytes.length > 0xFFFF)
+                    throw new IOException("name too long: " + s);
+                offset = stringOut.size();
+                stringOut.writeShort(bytes.length);
+                stringOut.write(bytes);
+                strings.put(s, offset);
+            }
+            return offset;
+        }
+
+        /**
+         * Writes the index to a temporary file, which then replaces the
+         * index file, so that a concurrent reader sees either version.
+         */
+        void write(File file) throws IOException {
+            CRC32 crc = new CRC32();
+            byte[][] parts = {
+                zipBytes.toByteArray(), dirBytes.toByteArray(),
+                entryBytes.toByteArray(), stringBytes.toByteArray()
+            };
+            for (byte[] part : parts)
+                crc.update(part);
+
+            File dir = file.getAbsoluteFile().getParentFile();
+            File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                DataOutputStream header = new DataOutputStream(out);
+                header.writeInt(MAGIC);
+                header.writeInt(VERSION);
+                header.writeLong(crc.getValue());
+                header.writeInt(zipCount);
+                header.writeInt(directoryCount);
+                header.writeInt(entryCount);
+                header.writeInt(parts[3].length);
+                for (byte[] part : parts)
+                    out.write(part);
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                file.delete();
+                if (!tmp.renameTo(file)) {
+                    tmp.delete();
+                    throw new IOException("cannot write " + file);
+                }
+            }
+        }
+    }
+}
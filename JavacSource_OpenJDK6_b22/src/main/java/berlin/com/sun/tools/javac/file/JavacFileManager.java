@@ -42,9 +42,16 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.zip.ZipFile;
 
 
@@ -110,6 +117,18 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
     protected boolean mmappedIO;
     protected boolean ignoreSymbolFile;
 
+    /** Index of the zip files on the class path, if -XDclasspathIndex=file is given. */
+    protected ClasspathIndex classpathIndex;
+
+    /** Image of the platform classes, if -XDsymbolImage=file is given;
+     *  it is opened in place of rt.jar (see newArchive). */
+    protected SymbolImage symbolImage;
+
+    /** The number of threads on which the entries of a path are probed
+     *  when a package is listed, if -XDparallelList is given; 0 otherwise.
+     */
+    protected int listThreads;
+
     /**
      * Register a Context.Factory to create a JavacFileManager.
      */
@@ -152,6 +171,31 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
 
         mmappedIO = options.get("mmappedIO") != null;
         ignoreSymbolFile = options.get("ignore.symbol.file") != null;
+
+        String cpIndex = options.get("classpathIndex");
+        if (cpIndex != null && classpathIndex == null)
+            classpathIndex = ClasspathIndex.read(new File(cpIndex));
+
+        listThreads = threadCount(options.get("parallelList"));
+
+        String image = options.get("symbolImage");
+        if (image != null && symbolImage == null) {
+            try {
+                symbolImage = new SymbolImage(this, new File(image));
+            } catch (IOException ex) {
+                log.error("error.reading.file", image, getMessage(ex));
+            }
+        }
+    }
+
+    private static int threadCount(String value) {
+        if (value == null)
+            return 0;
+        try {
+            return Math.max(1, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return Runtime.getRuntime().availableProcessors();
+        }
     }
 
     public JavaFileObject getFileForInput(String name) {
@@ -252,9 +296,7 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
                                ListBuffer<JavaFileObject> l) {
         Archive archive = archives.get(directory);
 
-        boolean isFile = fsInfo.isFile(directory);
-
-        if (archive != null || isFile) {
+        if (archive != null || fsInfo.isFile(directory)) {
             if (archive == null) {
                 try {
                     archive = openArchive(directory);
@@ -265,50 +307,247 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
                 }
             }
 
-            List<String> files = archive.getFiles(subdirectory);
-            if (files != null) {
-                for (String file; !files.isEmpty(); files = files.tail) {
-                    file = files.head;
-                    if (isValidFile(file, fileKinds)) {
-                        l.append(archive.getFileObject(subdirectory, file));
-                    }
+            listArchive(archive, subdirectory, fileKinds, recurse, l);
+        } else {
+            listFiles(directory, subdirectory, fileKinds, recurse, l);
+        }
+    }
+
+    /**
+     * Insert all files in subdirectory `subdirectory' of a directory
+     * `directory' on a path which end in one of the extensions in
+     * `extensions' into packageSym.  Return false if there is no such
+     * subdirectory.
+     */
+    private boolean listFiles(File directory,
+                              RelativeDirectory subdirectory,
+                              Set<JavaFileObject.Kind> fileKinds,
+                              boolean recurse,
+                              ListBuffer<JavaFileObject> l) {
+        File d = subdirectory.getFile(directory);
+        if (!caseMapCheck(d, subdirectory))
+            return false;
+
+        File[] files = d.listFiles();
+        if (files == null)
+            return false;
+
+        for (File f: files) {
+            String fname = f.getName();
+            if (f.isDirectory()) {
+                if (recurse && SourceVersion.isIdentifier(fname)) {
+                    listFiles(directory,
+                              new RelativeDirectory(subdirectory, fname),
+                              fileKinds,
+                              recurse,
+                              l);
                 }
+            } else {
+                if (isValidFile(fname, fileKinds)) {
+                    JavaFileObject fe =
+                        new RegularFileObject(this, fname, new File(d, fname));
+                    l.append(fe);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * List the files of a package on each entry of a path, as listDirectory
+     * does, but skip the entries known not to contain the package, and
+     * probe the others on listThreads threads.  The probes open archives
+     * and read directories; their results, and any errors in opening an
+     * archive, are then taken in the order of the path, so that the files
+     * are listed, and the errors reported, just as they are by
+     * listDirectory.  An entry that turns out not to contain the package
+     * is remembered, unless files have been written to that package.
+     */
+    private void listPath(Iterable<? extends File> path,
+                          RelativeDirectory subdirectory,
+                          Set<JavaFileObject.Kind> fileKinds,
+                          boolean recurse,
+                          ListBuffer<JavaFileObject> l) {
+        Set<File> absent;
+        synchronized (absentPackages) {
+            absent = recurse ? null : absentPackages.get(subdirectory);
+        }
+        ListBuffer<PathProbe> probes = new ListBuffer<PathProbe>();
+        int pending = 0;
+        for (File entry : path) {
+            if (absent != null && absent.contains(entry))
+                continue;
+            PathProbe p = new PathProbe(entry, subdirectory, fileKinds, recurse);
+            probes.append(p);
+            if (p.archive == null)
+                pending++;
+        }
+
+        if (listThreads > 1 && pending > 1) {
+            ExecutorService executor = getListExecutor();
+            for (PathProbe p : probes) {
+                if (p.archive == null)
+                    p.result = executor.submit(p);
             }
-            if (recurse) {
-                for (RelativeDirectory s: archive.getSubdirectories()) {
-                    if (subdirectory.contains(s)) {
-                        // Because the archive map is a flat list of directories,
-                        // the enclosing loop will pick up all child subdirectories.
-                        // Therefore, there is no need to recurse deeper.
-                        listDirectory(directory, s, fileKinds, false, l);
+        }
+
+        Set<File> found = new HashSet<File>();
+        for (PathProbe p : probes) {
+            if (p.archive == null) {
+                p.await();
+                if (p.opened != null) {
+                    if (p.opened instanceof MissingArchive)
+                        reportMissingArchive((MissingArchive) p.opened);
+                    p.archive = archives.get(p.entry);
+                    if (p.archive == null) {
+                        p.archive = p.opened;
+                        archives.put(p.entry, p.archive);
+                    } else if (p.archive != p.opened) {
+                        // the entry was opened before, as when it is on
+                        // the path twice
+                        try {
+                            p.opened.close();
+                        } catch (IOException e) {
+                        }
                     }
                 }
             }
-        } else {
-            File d = subdirectory.getFile(directory);
-            if (!caseMapCheck(d, subdirectory))
-                return;
-
-            File[] files = d.listFiles();
-            if (files == null)
-                return;
-
-            for (File f: files) {
-                String fname = f.getName();
-                if (f.isDirectory()) {
-                    if (recurse && SourceVersion.isIdentifier(fname)) {
-                        listDirectory(directory,
-                                      new RelativeDirectory(subdirectory, fname),
-                                      fileKinds,
-                                      recurse,
-                                      l);
+            if (p.archive != null) {
+                if (p.archive.getFiles(subdirectory) != null)
+                    found.add(p.entry);
+                listArchive(p.archive, subdirectory, fileKinds, recurse, l);
+            } else {
+                if (p.exists)
+                    found.add(p.entry);
+                l.appendList(p.files);
+            }
+        }
+
+        if (!recurse) {
+            synchronized (absentPackages) {
+                if (!outputPackages.contains(subdirectory)) {
+                    absent = absentPackages.get(subdirectory);
+                    if (absent == null)
+                        absentPackages.put(subdirectory, absent = new HashSet<File>());
+                    for (PathProbe p : probes) {
+                        if (!found.contains(p.entry))
+                            absent.add(p.entry);
                     }
-                } else {
-                    if (isValidFile(fname, fileKinds)) {
-                        JavaFileObject fe =
-                            new RegularFileObject(this, fname, new File(d, fname));
-                        l.append(fe);
+                }
+            }
+        }
+    }
+    // where
+        /**
+         * The listing of a package on an entry of a path: an archive not
+         * yet opened is opened, and the files of a directory are listed.
+         */
+        private class PathProbe implements Callable<Void> {
+            final File entry;
+            final RelativeDirectory subdirectory;
+            final Set<JavaFileObject.Kind> fileKinds;
+            final boolean recurse;
+            /** The archive already opened for the entry, if any. */
+            Archive archive;
+            /** The archive opened by this probe, if any. */
+            Archive opened;
+            /** Whether the entry is a directory with the given subdirectory. */
+            boolean exists;
+            final ListBuffer<JavaFileObject> files = new ListBuffer<JavaFileObject>();
+            Future<Void> result;
+
+            PathProbe(File entry, RelativeDirectory subdirectory,
+                      Set<JavaFileObject.Kind> fileKinds, boolean recurse) {
+                this.entry = entry;
+                this.subdirectory = subdirectory;
+                this.fileKinds = fileKinds;
+                this.recurse = recurse;
+                this.archive = archives.get(entry);
+            }
+
+            public Void call() {
+                if (fsInfo.isFile(entry))
+                    opened = newArchive(entry);
+                else
+                    exists = listFiles(entry, subdirectory, fileKinds, recurse, files);
+                return null;
+            }
+
+            /** Wait for the probe, or run it if it was not submitted. */
+            void await() {
+                if (result == null) {
+                    call();
+                    return;
+                }
+                try {
+                    result.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException)
+                        throw (RuntimeException) cause;
+                    if (cause instanceof Error)
+                        throw (Error) cause;
+                    throw new AssertionError(cause);
+                }
+            }
+        }
+
+        private synchronized ExecutorService getListExecutor() {
+            if (listExecutor == null) {
+                listExecutor = Executors.newFixedThreadPool(listThreads, new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "javac-list");
+                        t.setDaemon(true);
+                        return t;
                     }
+                });
+            }
+            return listExecutor;
+        }
+
+    /** The threads probing the entries of a path, once a path is listed on them. */
+    private ExecutorService listExecutor;
+
+    /** For each package, the entries of a path known not to contain it.
+     *  Only used if -XDparallelList is given; forgotten when the file
+     *  manager is flushed or closed, as files may be added between tasks.
+     */
+    private final Map<RelativeDirectory, Set<File>> absentPackages =
+        new HashMap<RelativeDirectory, Set<File>>();
+
+    /** The packages to which files have been written, which are never
+     *  remembered to be absent.  Guarded by absentPackages.
+     */
+    private final Set<RelativeDirectory> outputPackages = new HashSet<RelativeDirectory>();
+
+    /**
+     * Insert all files in subdirectory `subdirectory' of an archive which end
+     * in one of the extensions in `extensions' into packageSym.
+     */
+    private void listArchive(Archive archive,
+                             RelativeDirectory subdirectory,
+                             Set<JavaFileObject.Kind> fileKinds,
+                             boolean recurse,
+                             ListBuffer<JavaFileObject> l) {
+        List<String> files = archive.getFiles(subdirectory);
+        if (files != null) {
+            for (String file; !files.isEmpty(); files = files.tail) {
+                file = files.head;
+                if (isValidFile(file, fileKinds)) {
+                    l.append(archive.getFileObject(subdirectory, file));
+                }
+            }
+        }
+        if (recurse) {
+            for (RelativeDirectory s: archive.getSubdirectories()) {
+                if (subdirectory.contains(s)) {
+                    // Because the archive map is a flat list of directories,
+                    // the enclosing loop will pick up all child subdirectories.
+                    // Therefore, there is no need to recurse deeper.
+                    listArchive(archive, s, fileKinds, false, l);
                 }
             }
         }
@@ -370,8 +609,14 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
 
     public class MissingArchive implements Archive {
         final File zipFileName;
+        /** The error in reading the file, if it exists but could not be read. */
+        final IOException error;
         public MissingArchive(File name) {
+            this(name, null);
+        }
+        MissingArchive(File name, IOException error) {
             zipFileName = name;
+            this.error = error;
         }
         public boolean contains(RelativePath name) {
             return false;
@@ -411,89 +656,109 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
     protected Archive openArchive(File zipFileName) throws IOException {
         Archive archive = archives.get(zipFileName);
         if (archive == null) {
-            File origZipFileName = zipFileName;
-            if (!ignoreSymbolFile && paths.isBootClassPathRtJar(zipFileName)) {
-                File file = zipFileName.getParentFile().getParentFile(); // ${java.home}
-                if (new File(file.getName()).equals(new File("jre")))
-                    file = file.getParentFile();
-                // file == ${jdk.home}
-                for (String name : symbolFileLocation)
-                    file = new File(file, name);
-                // file == ${jdk.home}/lib/ct.sym
-                if (file.exists())
-                    zipFileName = file;
-            }
+            archive = newArchive(zipFileName);
+            if (archive instanceof MissingArchive)
+                reportMissingArchive((MissingArchive) archive);
+            archives.put(zipFileName, archive);
+        }
+        return archive;
+    }
 
-            try {
+    private void reportMissingArchive(MissingArchive archive) {
+        if (archive.error != null)
+            log.error("error.reading.file", archive.zipFileName, getMessage(archive.error));
+    }
 
-                ZipFile zdir = null;
+    /** Open a zip file directory, without entering it in archives.  A file
+     *  that cannot be read gives a MissingArchive, which records the error
+     *  to be reported.  May be called by several threads at once.
+     */
+    private Archive newArchive(File zipFileName) {
+        if (symbolImage != null && paths.isBootClassPathRtJar(zipFileName))
+            return symbolImage;
+        Archive archive;
+        File origZipFileName = zipFileName;
+        if (!ignoreSymbolFile && paths.isBootClassPathRtJar(zipFileName)) {
+            File file = zipFileName.getParentFile().getParentFile(); // ${java.home}
+            if (new File(file.getName()).equals(new File("jre")))
+                file = file.getParentFile();
+            // file == ${jdk.home}
+            for (String name : symbolFileLocation)
+                file = new File(file, name);
+            // file == ${jdk.home}/lib/ct.sym
+            if (file.exists())
+                zipFileName = file;
+        }
 
-                boolean usePreindexedCache = false;
-                String preindexCacheLocation = null;
+        try {
 
-                if (!useZipFileIndex) {
-                    zdir = new ZipFile(zipFileName);
-                }
-                else {
-                    usePreindexedCache = options.get("usezipindex") != null;
-                    preindexCacheLocation = options.get("java.io.tmpdir");
-                    String optCacheLoc = options.get("cachezipindexdir");
-
-                    if (optCacheLoc != null && optCacheLoc.length() != 0) {
-                        if (optCacheLoc.startsWith("\"")) {
-                            if (optCacheLoc.endsWith("\"")) {
-                                optCacheLoc = optCacheLoc.substring(1, optCacheLoc.length() - 1);
-                            }
-                           else {
-                                optCacheLoc = optCacheLoc.substring(1);
-                            }
+            ZipFile zdir = null;
+
+            boolean usePreindexedCache = false;
+            String preindexCacheLocation = null;
+
+            if (!useZipFileIndex) {
+                zdir = new ZipFile(zipFileName);
+            }
+            else {
+                usePreindexedCache = options.get("usezipindex") != null;
+                preindexCacheLocation = options.get("java.io.tmpdir");
+                String optCacheLoc = options.get("cachezipindexdir");
+
+                if (optCacheLoc != null && optCacheLoc.length() != 0) {
+                    if (optCacheLoc.startsWith("\"")) {
+                        if (optCacheLoc.endsWith("\"")) {
+                            optCacheLoc = optCacheLoc.substring(1, optCacheLoc.length() - 1);
+                        }
+                       else {
+                            optCacheLoc = optCacheLoc.substring(1);
                         }
+                    }
 
-                        File cacheDir = new File(optCacheLoc);
-                        if (cacheDir.exists() && cacheDir.canWrite()) {
-                            preindexCacheLocation = optCacheLoc;
-                            if (!preindexCacheLocation.endsWith("/") &&
-                                !preindexCacheLocation.endsWith(File.separator)) {
-                                preindexCacheLocation += File.separator;
-                            }
+                    File cacheDir = new File(optCacheLoc);
+                    if (cacheDir.exists() && cacheDir.canWrite()) {
+                        preindexCacheLocation = optCacheLoc;
+                        if (!preindexCacheLocation.endsWith("/") &&
+                            !preindexCacheLocation.endsWith(File.separator)) {
+                            preindexCacheLocation += File.separator;
                         }
                     }
                 }
+            }
 
-                if (origZipFileName == zipFileName) {
-                    if (!useZipFileIndex) {
-                        archive = new ZipArchive(this, zdir);
-                    } else {
-                        archive = new ZipFileIndexArchive(this,
-                                ZipFileIndex.getZipFileIndex(zipFileName,
-                                    null,
-                                    usePreindexedCache,
-                                    preindexCacheLocation,
-                                    options.get("writezipindexfiles") != null));
-                    }
+            if (origZipFileName == zipFileName) {
+                if (!useZipFileIndex) {
+                    archive = new ZipArchive(this, zdir);
+                } else {
+                    archive = new ZipFileIndexArchive(this,
+                            ZipFileIndex.getZipFileIndex(zipFileName,
+                                null,
+                                usePreindexedCache,
+                                preindexCacheLocation,
+                                options.get("writezipindexfiles") != null,
+                                mmappedIO,
+                                classpathIndex));
+                }
+            }
+            else {
+                if (!useZipFileIndex) {
+                    archive = new SymbolArchive(this, origZipFileName, zdir, symbolFilePrefix);
                 }
                 else {
-                    if (!useZipFileIndex) {
-                        archive = new SymbolArchive(this, origZipFileName, zdir, symbolFilePrefix);
-                    }
-                    else {
-                        archive = new ZipFileIndexArchive(this,
-                                ZipFileIndex.getZipFileIndex(zipFileName,
-                                    symbolFilePrefix,
-                                    usePreindexedCache,
-                                    preindexCacheLocation,
-                                    options.get("writezipindexfiles") != null));
-                    }
+                    archive = new ZipFileIndexArchive(this,
+                            ZipFileIndex.getZipFileIndex(zipFileName,
+                                symbolFilePrefix,
+                                usePreindexedCache,
+                                preindexCacheLocation,
+                                options.get("writezipindexfiles") != null,
+                                mmappedIO,
+                                classpathIndex));
                 }
-            } catch (FileNotFoundException ex) {
-                archive = new MissingArchive(zipFileName);
-            } catch (IOException ex) {
-                if (zipFileName.exists())
-                    log.error("error.reading.file", zipFileName, getMessage(ex));
-                archive = new MissingArchive(zipFileName);
             }
-
-            archives.put(origZipFileName, archive);
+        } catch (FileNotFoundException ex) {
+            archive = new MissingArchive(zipFileName);
+        } catch (IOException ex) {
+            archive = new MissingArchive(zipFileName, zipFileName.exists() ? ex : null);
         }
         return archive;
     }
@@ -502,12 +767,35 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
      */
     public void flush() {
         contentCache.clear();
+        forgetAbsentPackages();
+    }
+
+    private void forgetAbsentPackages() {
+        synchronized (absentPackages) {
+            absentPackages.clear();
+            outputPackages.clear();
+        }
     }
 
     /**
      * Close the JavaFileManager, releasing resources.
      */
     public void close() {
+        synchronized (this) {
+            if (listExecutor != null) {
+                listExecutor.shutdown();
+                listExecutor = null;
+            }
+        }
+        forgetAbsentPackages();
+        if (classpathIndex != null) {
+            ListBuffer<ZipFileIndex> indexes = new ListBuffer<ZipFileIndex>();
+            for (Archive a : archives.values()) {
+                if (a instanceof ZipFileIndexArchive)
+                    indexes.append(((ZipFileIndexArchive) a).getZipFileIndex());
+            }
+            classpathIndex = classpathIndex.update(indexes);
+        }
         for (Iterator<Archive> i = archives.values().iterator(); i.hasNext(); ) {
             Archive a = i.next();
             i.remove();
@@ -560,6 +848,11 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         RelativeDirectory subdirectory = RelativeDirectory.forPackage(packageName);
         ListBuffer<JavaFileObject> results = new ListBuffer<JavaFileObject>();
 
+        if (listThreads > 0) {
+            listPath(path, subdirectory, kinds, recurse, results);
+            return results.toList();
+        }
+
         for (File directory : path)
             listDirectory(directory, subdirectory, kinds, recurse, results);
 
@@ -684,6 +977,10 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
                                             FileObject sibling)
         throws IOException
     {
+        synchronized (absentPackages) {
+            if (outputPackages.add(fileName.dirname()))
+                absentPackages.remove(fileName.dirname());
+        }
         File dir;
         if (location == CLASS_OUTPUT) {
             if (getClassOutDir() != null) {
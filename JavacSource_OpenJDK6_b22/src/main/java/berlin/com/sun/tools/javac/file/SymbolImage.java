@@ -0,0 +1,468 @@
+/*
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package berlin.com.sun.tools.javac.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import berlin.com.sun.tools.javac.file.JavacFileManager.Archive;
+import berlin.com.sun.tools.javac.file.RelativePath.RelativeDirectory;
+import berlin.com.sun.tools.javac.util.List;
+import berlin.javax.tools.JavaFileObject;
+
+/** A precompiled image of the platform classes, such as the stubs written
+ *  by sym.CreateSymbols, kept in a single file that is mapped into memory.
+ *  If "-XDsymbolImage=<file>" is given, the image stands in for rt.jar on
+ *  the default boot class path: packages are listed from its tables and
+ *  classes are read straight from the mapped file, so that neither rt.jar
+ *  nor ct.sym need be opened.  The other entries of the platform class
+ *  path, such as those given by -Xbootclasspath/p:, -Xbootclasspath/a:
+ *  and -extdirs, are searched as usual.
+ *
+ *  Only the tables and string pool are checked against the checksum when
+ *  the image is mapped; the class files themselves are checked by
+ *  ClassReader as they are read.  All numbers are big-endian:
+ *  <pre>
+ *    header:      int magic, int version, long CRC-32 of the tables and
+ *                 string pool, int package count, int class count,
+ *                 int string pool size, int class data size
+ *    package:     int name, int first class, int class count
+ *    class:       int name, int offset in class data, int length
+ *    string pool: strings as a u2 length followed by UTF-8 bytes
+ *    class data:  the bytes of the class files
+ *  </pre>
+ *  Strings are referred to by their offset in the pool.  A package is
+ *  named by its directory, such as "java/lang/", and a class by its
+ *  file name, such as "Object.class".  Packages and the classes of each
+ *  package are sorted by name.
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+public class SymbolImage implements Archive {
+
+    private static final int MAGIC = 0x4a435349; // "JCSI"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int PACKAGE_SIZE = 12;
+    private static final int CLASS_SIZE = 12;
+
+    private final JavacFileManager fileManager;
+    private final File file;
+    private final long lastModified;
+    private ByteBuffer buffer;
+    private int classesStart;
+    private int stringsStart;
+    private int dataStart;
+
+    /** The index of each package in the package table. */
+    private final Map<RelativeDirectory, Integer> packages =
+        new HashMap<RelativeDirectory, Integer>();
+
+    /** The classes of the packages listed so far. */
+    private final Map<RelativeDirectory, Directory> directories =
+        new HashMap<RelativeDirectory, Directory>();
+
+    /** The classes of a package, decoded from the class table on first use. */
+    private static class Directory {
+        final String[] names;
+        final int firstClass;
+        List<String> files;
+
+        Directory(String[] names, int firstClass) {
+            this.names = names;
+            this.firstClass = firstClass;
+        }
+    }
+
+    /**
+     * Maps the image in a file.
+     * @throws IOException if the file cannot be read or is not a valid image
+     */
+    public SymbolImage(JavacFileManager fileManager, File file) throws IOException {
+        this.fileManager = fileManager;
+        this.file = file;
+        this.lastModified = file.lastModified();
+        load();
+    }
+
+    private void load() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        ByteBuffer buf;
+        try {
+            long length = raf.length();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE)
+                throw new IOException("bad symbol image");
+            buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } finally {
+            raf.close();
+        }
+
+        if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION)
+            throw new IOException("bad symbol image");
+        long checksum = buf.getLong(8);
+        int packageCount = buf.getInt(16);
+        int classCount = buf.getInt(20);
+        int stringsSize = buf.getInt(24);
+        int dataSize = buf.getInt(28);
+        long size = HEADER_SIZE + (long) packageCount * PACKAGE_SIZE
+                + (long) classCount * CLASS_SIZE + stringsSize + dataSize;
+        if (packageCount < 0 || classCount < 0 || stringsSize < 0 || dataSize < 0
+                || size != buf.limit())
+            throw new IOException("bad symbol image");
+
+        classesStart = HEADER_SIZE + packageCount * PACKAGE_SIZE;
+        stringsStart = classesStart + classCount * CLASS_SIZE;
+        dataStart = stringsStart + stringsSize;
+
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[8192];
+        ByteBuffer b = buf.duplicate();
+        b.position(HEADER_SIZE);
+        b.limit(dataStart);
+        while (b.hasRemaining()) {
+            int n = Math.min(chunk.length, b.remaining());
+            b.get(chunk, 0, n);
+            crc.update(chunk, 0, n);
+        }
+        if (crc.getValue() != checksum)
+            throw new IOException("bad symbol image");
+
+        buffer = buf;
+        for (int i = 0; i < packageCount; i++) {
+            int pos = HEADER_SIZE + i * PACKAGE_SIZE;
+            int first = buf.getInt(pos + 4);
+            int count = buf.getInt(pos + 8);
+            if (first < 0 || count < 0 || first > classCount - count)
+                throw new IOException("bad symbol image");
+            packages.put(new RelativeDirectory(getString(buf.getInt(pos))), i);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean contains(RelativePath name) {
+        Directory d = getDirectory(name.dirname());
+        return d != null && Arrays.binarySearch(d.names, name.basename()) >= 0;
+    }
+
+    public List<String> getFiles(RelativeDirectory subdirectory) {
+        Directory d = getDirectory(subdirectory);
+        if (d == null)
+            return null;
+        if (d.files == null) {
+            List<String> files = List.nil();
+            for (int i = d.names.length - 1; i >= 0; i--)
+                files = files.prepend(d.names[i]);
+            d.files = files;
+        }
+        return d.files;
+    }
+
+    public JavaFileObject getFileObject(RelativeDirectory subdirectory, String file) {
+        Directory d = getDirectory(subdirectory);
+        int i = (d == null) ? -1 : Arrays.binarySearch(d.names, file);
+        if (i < 0)
+            return null;
+        int pos = classesStart + (d.firstClass + i) * CLASS_SIZE;
+        return new ImageFileObject(this, subdirectory, file,
+                buffer.getInt(pos + 4), buffer.getInt(pos + 8));
+    }
+
+    public Set<RelativeDirectory> getSubdirectories() {
+        return packages.keySet();
+    }
+
+    public void close() {
+    }
+
+    private synchronized Directory getDirectory(RelativeDirectory subdirectory) {
+        Directory d = directories.get(subdirectory);
+        if (d == null) {
+            Integer p = packages.get(subdirectory);
+            if (p == null)
+                return null;
+            int pos = HEADER_SIZE + p * PACKAGE_SIZE;
+            int first = buffer.getInt(pos + 4);
+            String[] names = new String[buffer.getInt(pos + 8)];
+            for (int i = 0; i < names.length; i++)
+                names[i] = getString(buffer.getInt(classesStart + (first + i) * CLASS_SIZE));
+            d = new Directory(names, first);
+            directories.put(subdirectory, d);
+        }
+        return d;
+    }
+
+    private String getString(int offset) {
+        int pos = stringsStart + offset;
+        int len = buffer.getShort(pos) & 0xFFFF;
+        byte[] bytes = new byte[len];
+        ByteBuffer b = buffer.duplicate();
+        b.position(pos + 2);
+        b.get(bytes);
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /** Returns a view of the bytes of a class in the image. */
+    ByteBuffer readBuffer(int offset, int length) {
+        ByteBuffer b = buffer.duplicate();
+        b.position(dataStart + offset);
+        b.limit(dataStart + offset + length);
+        return b.slice();
+    }
+
+    @Override
+    public String toString() {
+        return "SymbolImage[" + file + "]";
+    }
+
+    /**
+     * A class file in a symbol image.
+     */
+    public static class ImageFileObject extends BaseFileObject {
+        final SymbolImage image;
+        final RelativeDirectory dir;
+        final String name;
+        final int offset;
+        final int length;
+
+        ImageFileObject(SymbolImage image, RelativeDirectory dir, String name,
+                int offset, int length) {
+            super(image.fileManager);
+            this.image = image;
+            this.dir = dir;
+            this.name = name;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public URI toUri() {
+            return createJarUri(image.file, dir.path + name);
+        }
+
+        public String getName() {
+            return image.file + "(" + dir.path + name + ")";
+        }
+
+        public String getShortName() {
+            return image.file.getName() + "(" + dir.path + name + ")";
+        }
+
+        public JavaFileObject.Kind getKind() {
+            return getKind(name);
+        }
+
+        public InputStream openInputStream() {
+            return new ZipFileIndexArchive.ByteBufferInputStream(image.readBuffer(offset, length));
+        }
+
+        public OutputStream openOutputStream() {
+            throw new UnsupportedOperationException();
+        }
+
+        public CharBuffer getCharContent(boolean ignoreEncodingErrors) {
+            JavacFileManager fileManager = image.fileManager;
+            CharBuffer cb = fileManager.getCachedContent(this);
+            if (cb == null) {
+                JavaFileObject prev = fileManager.log.useSource(this);
+                try {
+                    cb = fileManager.decode(image.readBuffer(offset, length), ignoreEncodingErrors);
+                } finally {
+                    fileManager.log.useSource(prev);
+                }
+                if (!ignoreEncodingErrors)
+                    fileManager.cache(this, cb);
+            }
+            return cb;
+        }
+
+        public Writer openWriter() {
+            throw new UnsupportedOperationException();
+        }
+
+        public long getLastModified() {
+            return image.lastModified;
+        }
+
+        protected CharsetDecoder getDecoder(boolean ignoreEncodingErrors) {
+            return image.fileManager.getDecoder(image.fileManager.getEncodingName(), ignoreEncodingErrors);
+        }
+
+        public boolean delete() {
+            throw new UnsupportedOperationException();
+        }
+
+        protected String inferBinaryName(Iterable<? extends File> path) {
+            return removeExtension(dir.path + name).replace('/', '.');
+        }
+
+        public boolean isNameCompatible(String cn, JavaFileObject.Kind k) {
+            cn.getClass(); // null check
+            if (k == Kind.OTHER && getKind() != k)
+                return false;
+            return name.equals(cn + k.extension);
+        }
+
+        public boolean equals(Object other) {
+            if (this == other)
+                return true;
+            if (!(other instanceof ImageFileObject))
+                return false;
+            ImageFileObject o = (ImageFileObject) other;
+            return image == o.image && offset == o.offset && length == o.length;
+        }
+
+        public int hashCode() {
+            return image.file.hashCode() + offset;
+        }
+    }
+
+    /**
+     * Writes an image of the class files in a directory tree, such as the
+     * output directory of sym.CreateSymbols.
+     */
+    public static void write(File image, File dir) throws IOException {
+        Map<String, Map<String, File>> classes = new TreeMap<String, Map<String, File>>();
+        collect(dir, "", classes);
+
+        ByteArrayOutputStream packageBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream dataBytes = new ByteArrayOutputStream();
+        DataOutputStream packageOut = new DataOutputStream(packageBytes);
+        DataOutputStream classOut = new DataOutputStream(classBytes);
+        DataOutputStream stringOut = new DataOutputStream(stringBytes);
+        Map<String, Integer> strings = new HashMap<String, Integer>();
+        int classCount = 0;
+        byte[] buf = new byte[8192];
+        for (Map.Entry<String, Map<String, File>> p : classes.entrySet()) {
+            packageOut.writeInt(string(p.getKey(), strings, stringOut));
+            packageOut.writeInt(classCount);
+            packageOut.writeInt(p.getValue().size());
+            for (Map.Entry<String, File> c : p.getValue().entrySet()) {
+                int offset = dataBytes.size();
+                InputStream in = new FileInputStream(c.getValue());
+                try {
+                    int n;
+                    while ((n = in.read(buf)) > 0)
+                        dataBytes.write(buf, 0, n);
+                } finally {
+                    in.close();
+                }
+                classOut.writeInt(string(c.getKey(), strings, stringOut));
+                classOut.writeInt(offset);
+                classOut.writeInt(dataBytes.size() - offset);
+                classCount++;
+            }
+        }
+
+        byte[][] tables = {
+            packageBytes.toByteArray(), classBytes.toByteArray(), stringBytes.toByteArray()
+        };
+        CRC32 crc = new CRC32();
+        for (byte[] table : tables)
+            crc.update(table);
+
+        OutputStream out = new FileOutputStream(image);
+        try {
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeLong(crc.getValue());
+            header.writeInt(classes.size());
+            header.writeInt(classCount);
+            header.writeInt(tables[2].length);
+            header.writeInt(dataBytes.size());
+            for (byte[] table : tables)
+                out.write(table);
+            dataBytes.writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    // where
+    private static void collect(File dir, String path, Map<String, Map<String, File>> classes) {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+        for (File f : files) {
+            String name = f.getName();
+            if (f.isDirectory()) {
+                collect(f, path + name + "/", classes);
+            } else if (name.endsWith(".class")) {
+                Map<String, File> pkg = classes.get(path);
+                if (pkg == null)
+                    classes.put(path, pkg = new TreeMap<String, File>());
+                pkg.put(name, f);
+            }
+        }
+    }
+
+    private static int string(String s, Map<String, Integer> strings, DataOutputStream out)
+            throws IOException {
+        Integer offset = strings.get(s);
+        if (offset == null) {
+            byte[] bytes = s.getBytes("UTF-8");
+            if (bytes.length > 0xFFFF)
+                throw new IOException("name too long: " + s);
+            offset = out.size();
+            out.writeShort(bytes.length);
+            out.write(bytes);
+            strings.put(s, offset);
+        }
+        return offset;
+    }
+}
@@ -26,12 +26,17 @@
 package berlin.com.sun.tools.javac.file;
 
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.lang.ref.Reference;
 import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -42,7 +47,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 import java.util.zip.ZipException;
@@ -65,6 +74,9 @@ import berlin.com.sun.tools.javac.file.RelativePath.RelativeFile;
  *  created for each archive, used by the compiler for compilation, at location,
  *  specified by "cachezipindexdir" option.
  *
+ *  If "-XDclasspathIndex=<file>" is specified, the directories of a zip file are read
+ *  from that index of the whole class path whenever it is up to date (see ClasspathIndex).
+ *
  * If nonBatchMode option is specified (-XDnonBatchMode) the compiler will use timestamp
  * checking to reindex the zip files if it is needed. In batch mode the timestamps are not checked
  * and the compiler uses the cached indexes.
@@ -80,34 +92,52 @@ public class ZipFileIndex {
 
     public final static long NOT_MODIFIED = Long.MIN_VALUE;
 
-    private static Map<File, ZipFileIndex> zipFileIndexCache = new HashMap<File, ZipFileIndex>();
-    private static ReentrantLock lock = new ReentrantLock();
+    // Indexes are shared by all compilations in this VM, keyed by canonical file.
+    private static ConcurrentMap<File, ZipFileIndex> zipFileIndexCache =
+            new ConcurrentHashMap<File, ZipFileIndex>();
 
     private static boolean NON_BATCH_MODE = System.getProperty("nonBatchMode") != null;// TODO: Use -XD compiler switch for this.
 
+    // Lookups and reads through zipChannel share the read lock of an index;
+    // (re)building it, opening zipChannel and writing the preindexed cache
+    // take the write lock.
+    private final ReadWriteLock indexLock = new ReentrantReadWriteLock();
+
     private Map<RelativeDirectory, DirectoryEntry> directories = Collections.<RelativeDirectory, DirectoryEntry>emptyMap();
-    private Set<RelativeDirectory> allDirs = Collections.<RelativeDirectory>emptySet();
+    private volatile Set<RelativeDirectory> allDirs = Collections.<RelativeDirectory>emptySet();
 
     // ZipFileIndex data entries
     private File zipFile;
     private Reference<File> absFileRef;
-    private long zipFileLastModified = NOT_MODIFIED;
+    private volatile long zipFileLastModified = NOT_MODIFIED;
     private RandomAccessFile zipRandomFile;
+    // Channel the entries are read through, at explicit positions, so that
+    // readers holding the read lock can share it.
+    private volatile FileChannel zipChannel;
     private Entry[] entries;
 
+    // Memory-mapped image of the whole zip file, used instead of zipRandomFile
+    // when useMappedIO is set.
+    private boolean useMappedIO = false;
+    private volatile ByteBuffer zipBuffer;
+
     private boolean readFromIndex = false;
     private File zipIndexFile = null;
     private boolean triedToReadIndex = false;
     final RelativeDirectory symbolFilePrefix;
     private int symbolFilePrefixLength = 0;
     private boolean hasPopulatedData = false;
-    private long lastReferenceTimeStamp = NOT_MODIFIED;
+    private volatile long lastReferenceTimeStamp = NOT_MODIFIED;
 
     private boolean usePreindexedCache = false;
     private String preindexedCacheLocation = null;
 
     private boolean writeIndex = false;
 
+    // Index of the whole class path; if it is up to date for this zip file,
+    // the directories are read from it rather than from the zip file.
+    private ClasspathIndex classpathIndex;
+
     private Map <String, SoftReference<RelativeDirectory>> relativeDirectoryCache =
             new HashMap<String, SoftReference<RelativeDirectory>>();
 
@@ -129,31 +159,21 @@ public class ZipFileIndex {
      */
     public static List<ZipFileIndex> getZipFileIndexes(boolean openedOnly) {
         List<ZipFileIndex> zipFileIndexes = new ArrayList<ZipFileIndex>();
-        lock.lock();
-        try {
-            zipFileIndexes.addAll(zipFileIndexCache.values());
-
-            if (openedOnly) {
-                for(ZipFileIndex elem : zipFileIndexes) {
-                    if (!elem.isOpen()) {
-                        zipFileIndexes.remove(elem);
-                    }
-                }
+        for (ZipFileIndex elem : zipFileIndexCache.values()) {
+            if (!openedOnly || elem.isOpen()) {
+                zipFileIndexes.add(elem);
             }
         }
-        finally {
-            lock.unlock();
-        }
         return zipFileIndexes;
     }
 
     public boolean isOpen() {
-        lock.lock();
+        indexLock.readLock().lock();
         try {
-            return zipRandomFile != null;
+            return zipRandomFile != null || zipBuffer != null;
         }
         finally {
-            lock.unlock();
+            indexLock.readLock().unlock();
         }
     }
 
@@ -161,95 +181,106 @@ public class ZipFileIndex {
             RelativeDirectory symbolFilePrefix,
             boolean useCache, String cacheLocation,
             boolean writeIndex) throws IOException {
-        ZipFileIndex zi = null;
-        lock.lock();
-        try {
-            zi = getExistingZipIndex(zipFile);
+        return getZipFileIndex(zipFile, symbolFilePrefix, useCache, cacheLocation,
+                writeIndex, false);
+    }
+
+    /**
+     * Returns the index for a zip file, creating it if necessary.
+     * If useMappedIO is set, a newly created index maps the whole file into
+     * memory: the central directory is parsed in place and stored entries
+     * are returned as slices of the mapping rather than copied.  The mapping
+     * is kept until the index is closed.
+     */
+    public static ZipFileIndex getZipFileIndex(File zipFile,
+            RelativeDirectory symbolFilePrefix,
+            boolean useCache, String cacheLocation,
+            boolean writeIndex, boolean useMappedIO) throws IOException {
+        return getZipFileIndex(zipFile, symbolFilePrefix, useCache, cacheLocation,
+                writeIndex, useMappedIO, null);
+    }
 
-            if (zi == null || (zi != null && zipFile.lastModified() != zi.zipFileLastModified)) {
-                zi = new ZipFileIndex(zipFile, symbolFilePrefix, writeIndex,
-                        useCache, cacheLocation);
-                zipFileIndexCache.put(zipFile, zi);
+    /**
+     * Returns the index for a zip file, creating it if necessary.  A newly
+     * created index is read from the given class path index, if that is not
+     * null and is up to date for the zip file.
+     */
+    public static ZipFileIndex getZipFileIndex(File zipFile,
+            RelativeDirectory symbolFilePrefix,
+            boolean useCache, String cacheLocation,
+            boolean writeIndex, boolean useMappedIO,
+            ClasspathIndex classpathIndex) throws IOException {
+        File key = cacheKey(zipFile);
+        ZipFileIndex zi = zipFileIndexCache.get(key);
+
+        if (zi == null || zipFile.lastModified() != zi.zipFileLastModified) {
+            ZipFileIndex newIndex = new ZipFileIndex(zipFile, symbolFilePrefix, writeIndex,
+                    useCache, cacheLocation, useMappedIO, classpathIndex);
+            if (zi == null) {
+                // another thread may have indexed the same file meanwhile
+                zi = zipFileIndexCache.putIfAbsent(key, newIndex);
+                if (zi == null)
+                    zi = newIndex;
+            } else {
+                zipFileIndexCache.put(key, newIndex);
+                zi = newIndex;
             }
         }
-        finally {
-            lock.unlock();
-        }
         return zi;
     }
 
     public static ZipFileIndex getExistingZipIndex(File zipFile) {
-        lock.lock();
-        try {
-            return zipFileIndexCache.get(zipFile);
-        }
-        finally {
-            lock.unlock();
-        }
+        return zipFileIndexCache.get(cacheKey(zipFile));
     }
 
     public static void clearCache() {
-        lock.lock();
-        try {
-            zipFileIndexCache.clear();
-        }
-        finally {
-            lock.unlock();
-        }
+        zipFileIndexCache.clear();
     }
 
     public static void clearCache(long timeNotUsed) {
-        lock.lock();
-        try {
-            Iterator<File> cachedFileIterator = zipFileIndexCache.keySet().iterator();
-            while (cachedFileIterator.hasNext()) {
-                File cachedFile = cachedFileIterator.next();
-                ZipFileIndex cachedZipIndex = zipFileIndexCache.get(cachedFile);
-                if (cachedZipIndex != null) {
-                    long timeToTest = cachedZipIndex.lastReferenceTimeStamp + timeNotUsed;
-                    if (timeToTest < cachedZipIndex.lastReferenceTimeStamp || // Overflow...
-                            System.currentTimeMillis() > timeToTest) {
-                        zipFileIndexCache.remove(cachedFile);
-                    }
-                }
+        Iterator<ZipFileIndex> cachedIndexIterator = zipFileIndexCache.values().iterator();
+        while (cachedIndexIterator.hasNext()) {
+            ZipFileIndex cachedZipIndex = cachedIndexIterator.next();
+            long timeToTest = cachedZipIndex.lastReferenceTimeStamp + timeNotUsed;
+            if (timeToTest < cachedZipIndex.lastReferenceTimeStamp || // Overflow...
+                    System.currentTimeMillis() > timeToTest) {
+                cachedIndexIterator.remove();
             }
         }
-        finally {
-            lock.unlock();
-        }
     }
 
     public static void removeFromCache(File file) {
-        lock.lock();
-        try {
-            zipFileIndexCache.remove(file);
-        }
-        finally {
-            lock.unlock();
-        }
+        zipFileIndexCache.remove(cacheKey(file));
     }
 
     /** Sets already opened list of ZipFileIndexes from an outside client
       * of the compiler. This functionality should be used in a non-batch clients of the compiler.
       */
     public static void setOpenedIndexes(List<ZipFileIndex>indexes) throws IllegalStateException {
-        lock.lock();
-        try {
-            if (zipFileIndexCache.isEmpty()) {
-                throw new IllegalStateException("Setting opened indexes should be called only when the ZipFileCache is empty. Call JavacFileManager.flush() before calling this method.");
-            }
+        if (zipFileIndexCache.isEmpty()) {
+            throw new IllegalStateException("Setting opened indexes should be called only when the ZipFileCache is empty. Call JavacFileManager.flush() before calling this method.");
+        }
 
-            for (ZipFileIndex zfi : indexes) {
-                zipFileIndexCache.put(zfi.zipFile, zfi);
-            }
+        for (ZipFileIndex zfi : indexes) {
+            zipFileIndexCache.put(cacheKey(zfi.zipFile), zfi);
         }
-        finally {
-            lock.unlock();
+    }
+
+    /**
+     * Returns the key under which the index for a file is cached, so that
+     * different paths to the same file share one index.
+     */
+    static File cacheKey(File zipFile) {
+        try {
+            return zipFile.getCanonicalFile();
+        } catch (IOException e) {
+            return zipFile.getAbsoluteFile();
         }
     }
 
     private ZipFileIndex(File zipFile, RelativeDirectory symbolFilePrefix, boolean writeIndex,
-            boolean useCache, String cacheLocation) throws IOException {
+            boolean useCache, String cacheLocation, boolean useMappedIO,
+            ClasspathIndex classpathIndex) throws IOException {
         this.zipFile = zipFile;
         this.symbolFilePrefix = symbolFilePrefix;
         this.symbolFilePrefixLength = (symbolFilePrefix == null ? 0 :
@@ -257,6 +288,8 @@ public class ZipFileIndex {
         this.writeIndex = writeIndex;
         this.usePreindexedCache = useCache;
         this.preindexedCacheLocation = cacheLocation;
+        this.useMappedIO = useMappedIO;
+        this.classpathIndex = classpathIndex;
 
         if (zipFile != null) {
             this.zipFileLastModified = zipFile.lastModified();
@@ -273,6 +306,7 @@ public class ZipFileIndex {
     // Just in case...
     protected void finalize() {
         closeFile();
+        unmapFile();
     }
 
     private boolean isUpToDate() {
@@ -293,10 +327,11 @@ public class ZipFileIndex {
         boolean isUpToDate = true;
         if (!isUpToDate()) {
             closeFile();
+            unmapFile();
             isUpToDate = false;
         }
 
-        if (zipRandomFile != null || isUpToDate) {
+        if (zipRandomFile != null || zipBuffer != null || isUpToDate) {
             lastReferenceTimeStamp = System.currentTimeMillis();
             return;
         }
@@ -311,6 +346,17 @@ public class ZipFileIndex {
         directories = Collections.<RelativeDirectory, DirectoryEntry>emptyMap();
         allDirs = Collections.<RelativeDirectory>emptySet();
 
+        if (readClasspathIndex()) {
+            lastReferenceTimeStamp = System.currentTimeMillis();
+            return;
+        }
+
+        if (mapFile() != null) {
+            new ZipDirectory(zipBuffer, this).buildIndex();
+            lastReferenceTimeStamp = System.currentTimeMillis();
+            return;
+        }
+
         try {
             openFile();
             long totalLength = zipRandomFile.length();
@@ -325,12 +371,137 @@ public class ZipFileIndex {
         lastReferenceTimeStamp = System.currentTimeMillis();
     }
 
+    /**
+     * Sets up the directories from the class path index, if it is up to date
+     * for this zip file.  Their entries are read when first needed.
+     */
+    private boolean readClasspathIndex() {
+        if (classpathIndex == null)
+            return false;
+        ClasspathIndex.Zip zip = classpathIndex.getZip(zipFile, symbolFilePrefix);
+        if (zip == null)
+            return false;
+
+        directories = new HashMap<RelativeDirectory, DirectoryEntry>();
+        for (int d = zip.firstDirectory; d < zip.firstDirectory + zip.directoryCount; d++) {
+            RelativeDirectory dirName = getRelativeDirectory(classpathIndex.getDirectoryName(d));
+            DirectoryEntry de = new DirectoryEntry(dirName, this);
+            de.classpathIndexDirectory = d;
+            directories.put(dirName, de);
+        }
+        entries = Entry.EMPTY_ARRAY;
+        zipFileLastModified = zip.lastModified;
+        return true;
+    }
+
     private void openFile() throws FileNotFoundException {
         if (zipRandomFile == null && zipFile != null) {
             zipRandomFile = new RandomAccessFile(zipFile, "r");
         }
     }
 
+    /**
+     * Maps the zip file into memory if mapped I/O was requested, returning
+     * the mapping or null if the file is to be read through zipChannel.
+     * Files too large for a single mapping are always read the usual way.
+     */
+    private ByteBuffer mapFile() throws IOException {
+        if (zipBuffer == null && useMappedIO && zipFile != null) {
+            RandomAccessFile raf = new RandomAccessFile(zipFile, "r");
+            try {
+                long length = raf.length();
+                if (length <= Integer.MAX_VALUE) {
+                    zipBuffer = raf.getChannel()
+                            .map(FileChannel.MapMode.READ_ONLY, 0, length)
+                            .order(ByteOrder.LITTLE_ENDIAN);
+                }
+            } finally {
+                // the mapping stays valid after the channel is closed
+                raf.close();
+            }
+        }
+        return zipBuffer;
+    }
+
+    private void unmapFile() {
+        // There is no way to unmap explicitly; the mapping is released
+        // once the buffer is garbage collected.
+        zipBuffer = null;
+    }
+
+    /**
+     * Returns the mapping of the zip file if mapped I/O is in use, mapping
+     * it first if necessary, or null if the file is read through zipChannel.
+     * Reading from the mapping needs no lock.
+     */
+    private ByteBuffer mappedFile() throws IOException {
+        ByteBuffer zip = zipBuffer;
+        if (zip == null && useMappedIO) {
+            indexLock.writeLock().lock();
+            try {
+                zip = mapFile();
+            }
+            finally {
+                indexLock.writeLock().unlock();
+            }
+        }
+        return zip;
+    }
+
+    /**
+     * Acquires the read lock of this index, first bringing the index up to
+     * date under the write lock if necessary.
+     */
+    private void lockIndex() throws IOException {
+        indexLock.readLock().lock();
+        if (isUpToDate()) {
+            lastReferenceTimeStamp = System.currentTimeMillis();
+            return;
+        }
+        indexLock.readLock().unlock();
+        indexLock.writeLock().lock();
+        try {
+            checkIndex();
+            // downgrade to the read lock
+            indexLock.readLock().lock();
+        }
+        finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    private void unlockIndex() {
+        indexLock.readLock().unlock();
+    }
+
+    /**
+     * Acquires the read lock of this index and returns the channel to read
+     * the entries through, first opening it under the write lock if it is
+     * not open.  Release the lock with unlockIndex.
+     */
+    private FileChannel lockChannel() throws IOException {
+        indexLock.readLock().lock();
+        FileChannel channel = zipChannel;
+        if (channel != null && channel.isOpen())
+            return channel;
+        indexLock.readLock().unlock();
+        indexLock.writeLock().lock();
+        try {
+            channel = zipChannel;
+            if (channel == null || !channel.isOpen()) {
+                // a channel is closed if a thread reading it is interrupted
+                channel = new RandomAccessFile(zipFile, "r").getChannel();
+                zipChannel = channel;
+            }
+            // downgrade to the read lock
+            indexLock.readLock().lock();
+        }
+        finally {
+            indexLock.writeLock().unlock();
+        }
+        return channel;
+    }
+
     private void cleanupState() {
         // Make sure there is a valid but empty index if the file doesn't exist
         entries = Entry.EMPTY_ARRAY;
@@ -340,13 +511,14 @@ public class ZipFileIndex {
     }
 
     public void close() {
-        lock.lock();
+        indexLock.writeLock().lock();
         try {
             writeIndex();
             closeFile();
+            unmapFile();
         }
         finally {
-            lock.unlock();
+            indexLock.writeLock().unlock();
         }
     }
 
@@ -358,24 +530,32 @@ public class ZipFileIndex {
             }
             zipRandomFile = null;
         }
+        if (zipChannel != null) {
+            try {
+                zipChannel.close();
+            } catch (IOException ex) {
+            }
+            zipChannel = null;
+        }
     }
 
     /**
      * Returns the ZipFileIndexEntry for an absolute path, if there is one.
      */
     Entry getZipIndexEntry(RelativePath path) {
-        lock.lock();
         try {
-            checkIndex();
-            DirectoryEntry de = directories.get(path.dirname());
-            String lookFor = path.basename();
-            return de == null ? null : de.getEntry(lookFor);
+            lockIndex();
         }
         catch (IOException e) {
             return null;
         }
+        try {
+            DirectoryEntry de = directories.get(path.dirname());
+            String lookFor = path.basename();
+            return de == null ? null : de.getEntry(lookFor);
+        }
         finally {
-            lock.unlock();
+            unlockIndex();
         }
     }
 
@@ -383,10 +563,13 @@ public class ZipFileIndex {
      * Returns a javac List of filenames within an absolute path in the ZipFileIndex.
      */
     public berlin.com.sun.tools.javac.util.List<String> getFiles(RelativeDirectory path) {
-        lock.lock();
         try {
-            checkIndex();
-
+            lockIndex();
+        }
+        catch (IOException e) {
+            return berlin.com.sun.tools.javac.util.List.<String>nil();
+        }
+        try {
             DirectoryEntry de = directories.get(path);
             berlin.com.sun.tools.javac.util.List<String> ret = de == null ? null : de.getFiles();
 
@@ -395,19 +578,19 @@ public class ZipFileIndex {
             }
             return ret;
         }
-        catch (IOException e) {
-            return berlin.com.sun.tools.javac.util.List.<String>nil();
-        }
         finally {
-            lock.unlock();
+            unlockIndex();
         }
     }
 
     public List<String> getDirectories(RelativeDirectory path) {
-        lock.lock();
         try {
-            checkIndex();
-
+            lockIndex();
+        }
+        catch (IOException e) {
+            return berlin.com.sun.tools.javac.util.List.<String>nil();
+        }
+        try {
             DirectoryEntry de = directories.get(path);
             berlin.com.sun.tools.javac.util.List<String> ret = de == null ? null : de.getDirectories();
 
@@ -417,29 +600,31 @@ public class ZipFileIndex {
 
             return ret;
         }
-        catch (IOException e) {
-            return berlin.com.sun.tools.javac.util.List.<String>nil();
-        }
         finally {
-            lock.unlock();
+            unlockIndex();
         }
     }
 
     public Set<RelativeDirectory> getAllDirectories() {
-        lock.lock();
         try {
-            checkIndex();
-            if (allDirs == Collections.EMPTY_SET) {
-                allDirs = new HashSet<RelativeDirectory>(directories.keySet());
-            }
-
-            return allDirs;
+            lockIndex();
         }
         catch (IOException e) {
             return Collections.<RelativeDirectory>emptySet();
         }
+        try {
+            Set<RelativeDirectory> result = allDirs;
+            if (result == Collections.EMPTY_SET) {
+                // racing threads compute equal sets; any of them may be kept
+                result = Collections.unmodifiableSet(
+                        new HashSet<RelativeDirectory>(directories.keySet()));
+                allDirs = result;
+            }
+
+            return result;
+        }
         finally {
-            lock.unlock();
+            unlockIndex();
         }
     }
 
@@ -451,130 +636,157 @@ public class ZipFileIndex {
      * @return True if the path is a file or dir, false otherwise.
      */
     public boolean contains(RelativePath path) {
-        lock.lock();
-        try {
-            checkIndex();
-            return getZipIndexEntry(path) != null;
-        }
-        catch (IOException e) {
-            return false;
-        }
-        finally {
-            lock.unlock();
-        }
+        return getZipIndexEntry(path) != null;
     }
 
     public boolean isDirectory(RelativePath path) throws IOException {
-        lock.lock();
-        try {
-            // The top level in a zip file is always a directory.
-            if (path.getPath().length() == 0) {
-                lastReferenceTimeStamp = System.currentTimeMillis();
-                return true;
-            }
+        // The top level in a zip file is always a directory.
+        if (path.getPath().length() == 0) {
+            lastReferenceTimeStamp = System.currentTimeMillis();
+            return true;
+        }
 
-            checkIndex();
+        lockIndex();
+        try {
             return directories.get(path) != null;
         }
         finally {
-            lock.unlock();
+            unlockIndex();
         }
     }
 
     public long getLastModified(RelativeFile path) throws IOException {
-        lock.lock();
-        try {
-            Entry entry = getZipIndexEntry(path);
-            if (entry == null)
-                throw new FileNotFoundException();
-            return entry.getLastModified();
-        }
-        finally {
-            lock.unlock();
-        }
+        Entry entry = getZipIndexEntry(path);
+        if (entry == null)
+            throw new FileNotFoundException();
+        return entry.getLastModified();
     }
 
     public int length(RelativeFile path) throws IOException {
-        lock.lock();
-        try {
-            Entry entry = getZipIndexEntry(path);
-            if (entry == null)
-                throw new FileNotFoundException();
+        Entry entry = getZipIndexEntry(path);
+        if (entry == null)
+            throw new FileNotFoundException();
 
-            if (entry.isDir) {
-                return 0;
-            }
-
-            byte[] header = getHeader(entry);
-            // entry is not compressed?
-            if (get2ByteLittleEndian(header, 8) == 0) {
-                return entry.compressedSize;
-            } else {
-                return entry.size;
-            }
-        }
-        finally {
-            lock.unlock();
+        if (entry.isDir) {
+            return 0;
         }
+
+        // the compressed size of a stored entry is its size, so
+        // there is no need to read the local header
+        return entry.size;
     }
 
     public byte[] read(RelativeFile path) throws IOException {
-        lock.lock();
-        try {
-            Entry entry = getZipIndexEntry(path);
-            if (entry == null)
-                throw new FileNotFoundException("Path not found in ZIP: " + path.path);
-            return read(entry);
-        }
-        finally {
-            lock.unlock();
-        }
+        Entry entry = getZipIndexEntry(path);
+        if (entry == null)
+            throw new FileNotFoundException("Path not found in ZIP: " + path.path);
+        return read(entry);
     }
 
     byte[] read(Entry entry) throws IOException {
-        lock.lock();
-        try {
-            openFile();
-            byte[] result = readBytes(entry);
-            closeFile();
+        ByteBuffer zip = mappedFile();
+        if (zip != null) {
+            ByteBuffer data = readMapped(zip, entry);
+            if (data.hasArray() && data.arrayOffset() == 0
+                    && data.array().length == data.remaining())
+                return data.array();
+            byte[] result = new byte[data.remaining()];
+            data.get(result);
             return result;
         }
-        finally {
-            lock.unlock();
+
+        while (true) {
+            FileChannel channel = lockChannel();
+            try {
+                return readBytes(channel, entry);
+            } catch (ClosedChannelException ex) {
+                retryRead(ex);
+            } finally {
+                unlockIndex();
+            }
         }
     }
 
     public int read(RelativeFile path, byte[] buffer) throws IOException {
-        lock.lock();
-        try {
-            Entry entry = getZipIndexEntry(path);
-            if (entry == null)
-                throw new FileNotFoundException();
-            return read(entry, buffer);
-        }
-        finally {
-            lock.unlock();
-        }
+        Entry entry = getZipIndexEntry(path);
+        if (entry == null)
+            throw new FileNotFoundException();
+        return read(entry, buffer);
     }
 
     int read(Entry entry, byte[] buffer)
             throws IOException {
-        lock.lock();
-        try {
-            int result = readBytes(entry, buffer);
-            return result;
+        ByteBuffer zip = mappedFile();
+        if (zip != null) {
+            ByteBuffer data = readMapped(zip, entry);
+            data.get(buffer, 0, Math.min(buffer.length, data.remaining()));
+            return entry.size;
         }
-        finally {
-            lock.unlock();
+
+        while (true) {
+            FileChannel channel = lockChannel();
+            try {
+                return readBytes(channel, entry, buffer);
+            } catch (ClosedChannelException ex) {
+                retryRead(ex);
+            } finally {
+                unlockIndex();
+            }
         }
     }
 
-    private byte[] readBytes(Entry entry) throws IOException {
-        byte[] header = getHeader(entry);
+    /**
+     * A read failed because the shared channel was closed under it, by
+     * another reader being interrupted; retry unless this thread was.
+     */
+    private static void retryRead(ClosedChannelException ex) throws IOException {
+        if (Thread.currentThread().isInterrupted())
+            throw ex;
+    }
+
+    /**
+     * Returns the contents of an entry as a read-only buffer, positioned at
+     * the start of the data.  With mapped I/O, the contents of a stored entry
+     * are not copied: the buffer is a view of the mapped file.
+     */
+    ByteBuffer readBuffer(Entry entry) throws IOException {
+        ByteBuffer zip = mappedFile();
+        if (zip != null)
+            return readMapped(zip, entry).asReadOnlyBuffer();
+        return ByteBuffer.wrap(read(entry)).asReadOnlyBuffer();
+    }
+
+    private ByteBuffer readMapped(ByteBuffer zip, Entry entry) throws IOException {
+        int pos = entry.offset;
+        if (pos < 0 || pos > zip.limit() - 30 || zip.getInt(pos) != 0x04034b50)
+            throw new ZipException("corrupted zip file");
+        if ((zip.getShort(pos + 6) & 1) != 0)
+            throw new ZipException("encrypted zip file"); // offset 6 in the header of the ZipFileEntry
+        int method = zip.getShort(pos + 8) & 0xFFFF;
+        int start = pos + 30 + (zip.getShort(pos + 26) & 0xFFFF) + (zip.getShort(pos + 28) & 0xFFFF);
+        int csize = entry.compressedSize;
+        if (csize < 0 || start > zip.limit() - csize)
+            throw new ZipException("corrupted zip file");
+
+        ByteBuffer data = zip.duplicate();
+        data.limit(start + csize).position(start);
+
+        // is this compressed - offset 8 in the ZipEntry header
+        if (method == 0)
+            return data.slice();
+
+        int size = entry.size;
+        byte[] buf = new byte[size];
+        if (inflate(data, buf) != size)
+            throw new ZipException("corrupted zip file");
+        return ByteBuffer.wrap(buf);
+    }
+
+    private byte[] readBytes(FileChannel channel, Entry entry) throws IOException {
+        byte[] header = getHeader(channel, entry);
         int csize = entry.compressedSize;
         byte[] cbuf = new byte[csize];
-        zipRandomFile.skipBytes(get2ByteLittleEndian(header, 26) + get2ByteLittleEndian(header, 28));
-        zipRandomFile.readFully(cbuf, 0, csize);
+        readFully(channel, dataOffset(entry, header), cbuf, csize);
 
         // is this compressed - offset 8 in the ZipEntry header
         if (get2ByteLittleEndian(header, 8) == 0)
@@ -591,27 +803,25 @@ public class ZipFileIndex {
     /**
      *
      */
-    private int readBytes(Entry entry, byte[] buffer) throws IOException {
-        byte[] header = getHeader(entry);
+    private int readBytes(FileChannel channel, Entry entry, byte[] buffer) throws IOException {
+        byte[] header = getHeader(channel, entry);
 
         // entry is not compressed?
         if (get2ByteLittleEndian(header, 8) == 0) {
-            zipRandomFile.skipBytes(get2ByteLittleEndian(header, 26) + get2ByteLittleEndian(header, 28));
-            int offset = 0;
-            int size = buffer.length;
-            while (offset < size) {
-                int count = zipRandomFile.read(buffer, offset, size - offset);
+            ByteBuffer dest = ByteBuffer.wrap(buffer);
+            long pos = dataOffset(entry, header);
+            while (dest.hasRemaining()) {
+                int count = channel.read(dest, pos);
                 if (count == -1)
                     break;
-                offset += count;
+                pos += count;
             }
             return entry.size;
         }
 
         int csize = entry.compressedSize;
         byte[] cbuf = new byte[csize];
-        zipRandomFile.skipBytes(get2ByteLittleEndian(header, 26) + get2ByteLittleEndian(header, 28));
-        zipRandomFile.readFully(cbuf, 0, csize);
+        readFully(channel, dataOffset(entry, header), cbuf, csize);
 
         int count = inflate(cbuf, buffer);
         if (count == -1)
@@ -624,10 +834,9 @@ public class ZipFileIndex {
     // Zip utilities
     //----------------------------------------------------------------------------
 
-    private byte[] getHeader(Entry entry) throws IOException {
-        zipRandomFile.seek(entry.offset);
+    private byte[] getHeader(FileChannel channel, Entry entry) throws IOException {
         byte[] header = new byte[30];
-        zipRandomFile.readFully(header);
+        readFully(channel, entry.offset, header, header.length);
         if (get4ByteLittleEndian(header, 0) != 0x04034b50)
             throw new ZipException("corrupted zip file");
         if ((get2ByteLittleEndian(header, 6) & 1) != 0)
@@ -635,24 +844,67 @@ public class ZipFileIndex {
         return header;
     }
 
+    private static long dataOffset(Entry entry, byte[] header) {
+        return entry.offset + 30L + get2ByteLittleEndian(header, 26) + get2ByteLittleEndian(header, 28);
+    }
+
+    private static void readFully(FileChannel channel, long pos, byte[] b, int len) throws IOException {
+        ByteBuffer dest = ByteBuffer.wrap(b, 0, len);
+        while (dest.hasRemaining()) {
+            int count = channel.read(dest, pos);
+            if (count == -1)
+                throw new EOFException();
+            pos += count;
+        }
+    }
+
   /*
-   * Inflate using the java.util.zip.Inflater class
+   * Inflate using the java.util.zip.Inflater class.  Inflaters are pooled so
+   * that threads reading different entries do not wait for each other.
    */
-    private static Inflater inflater;
+    private static ConcurrentLinkedQueue<InflaterBuffer> inflaters =
+            new ConcurrentLinkedQueue<InflaterBuffer>();
+
+    private static class InflaterBuffer {
+        final Inflater inflater = new Inflater(true);
+        // Inflater only accepts arrays, so compressed bytes from a mapped
+        // file are copied here first; larger entries get an array of their
+        // own, so that pooled buffers do not keep the largest entry read
+        final byte[] input = new byte[8192];
+    }
+
     private int inflate(byte[] src, byte[] dest) {
+        InflaterBuffer ib = inflaters.poll();
+        if (ib == null)
+            ib = new InflaterBuffer();
+        try {
+            return inflate(ib.inflater, src, 0, src.length, dest);
+        } finally {
+            inflaters.offer(ib);
+        }
+    }
 
-        // construct the inflater object or reuse an existing one
-        if (inflater == null)
-            inflater = new Inflater(true);
+    private int inflate(ByteBuffer src, byte[] dest) {
+        InflaterBuffer ib = inflaters.poll();
+        if (ib == null)
+            ib = new InflaterBuffer();
+        try {
+            int len = src.remaining();
+            byte[] input = (len <= ib.input.length) ? ib.input : new byte[len];
+            src.get(input, 0, len);
+            return inflate(ib.inflater, input, 0, len, dest);
+        } finally {
+            inflaters.offer(ib);
+        }
+    }
 
-        synchronized (inflater) {
-            inflater.reset();
-            inflater.setInput(src);
-            try {
-                return inflater.inflate(dest);
-            } catch (DataFormatException ex) {
-                return -1;
-            }
+    private static int inflate(Inflater inflater, byte[] src, int off, int len, byte[] dest) {
+        inflater.reset();
+        inflater.setInput(src, off, len);
+        try {
+            return inflater.inflate(dest);
+        } catch (DataFormatException ex) {
+            return -1;
         }
     }
 
@@ -678,10 +930,15 @@ public class ZipFileIndex {
 
     private class ZipDirectory {
         private RelativeDirectory lastDir;
-        private int lastStart;
         private int lastLen;
 
-        byte[] zipDir;
+        // entry names are copied here so that '\' can be changed to '/'
+        // without writing to a mapped central directory
+        private byte[] name = new byte[256];
+        private byte[] lastName = new byte[256];
+
+        ByteBuffer zipDir;
+        int entryCount;
         RandomAccessFile zipRandomFile = null;
         ZipFileIndex zipFileIndex = null;
 
@@ -692,6 +949,12 @@ public class ZipFileIndex {
             findCENRecord(start, end);
         }
 
+        public ZipDirectory(ByteBuffer zipBuffer, ZipFileIndex index) throws IOException {
+            this.zipFileIndex = index;
+
+            findCENRecord(zipBuffer);
+        }
+
         /*
          * Reads zip file central directory.
          * For more details see readCEN in zip_util.c from the JDK sources.
@@ -722,11 +985,11 @@ public class ZipFileIndex {
                 }
 
                 if (i >= 0) {
-                    zipDir = new byte[get4ByteLittleEndian(endbuf, i + 12) + 2];
-                    zipDir[0] = endbuf[i + 10];
-                    zipDir[1] = endbuf[i + 11];
+                    byte[] cen = new byte[get4ByteLittleEndian(endbuf, i + 12)];
+                    entryCount = get2ByteLittleEndian(endbuf, i + 10);
                     zipRandomFile.seek(start + get4ByteLittleEndian(endbuf, i + 16));
-                    zipRandomFile.readFully(zipDir, 2, zipDir.length - 2);
+                    zipRandomFile.readFully(cen, 0, cen.length);
+                    zipDir = ByteBuffer.wrap(cen).order(ByteOrder.LITTLE_ENDIAN);
                     return;
                 } else {
                     endbufend = endbufpos + 21;
@@ -735,14 +998,35 @@ public class ZipFileIndex {
             throw new ZipException("cannot read zip file");
         }
 
-        private void buildIndex() throws IOException {
-            int entryCount = get2ByteLittleEndian(zipDir, 0);
+        /*
+         * Locates the central directory in a mapped zip file; the directory
+         * is then read in place, without copying it out of the mapping.
+         */
+        private void findCENRecord(ByteBuffer zip) throws IOException {
+            int totalLength = zip.limit();
+            for (int i = totalLength - 22; i >= 0; i--) {
+                if (zip.getInt(i) == 0x06054b50 &&
+                        i + 22 + (zip.getShort(i + 20) & 0xFFFF) == totalLength) {
+                    int cenLength = zip.getInt(i + 12);
+                    int cenStart = zip.getInt(i + 16);
+                    if (cenStart < 0 || cenLength < 0 || cenStart > totalLength - cenLength)
+                        break;
+                    entryCount = zip.getShort(i + 10) & 0xFFFF;
+                    ByteBuffer cen = zip.duplicate();
+                    cen.limit(cenStart + cenLength).position(cenStart);
+                    zipDir = cen.slice().order(ByteOrder.LITTLE_ENDIAN);
+                    return;
+                }
+            }
+            throw new ZipException("cannot read zip file");
+        }
 
+        private void buildIndex() throws IOException {
             // Add each of the files
             if (entryCount > 0) {
                 directories = new HashMap<RelativeDirectory, DirectoryEntry>();
                 ArrayList<Entry> entryList = new ArrayList<Entry>();
-                int pos = 2;
+                int pos = 0;
                 for (int i = 0; i < entryCount; i++) {
                     pos = readEntry(pos, entryList, directories);
                 }
@@ -766,13 +1050,24 @@ public class ZipFileIndex {
 
         private int readEntry(int pos, List<Entry> entryList,
                 Map<RelativeDirectory, DirectoryEntry> directories) throws IOException {
-            if (get4ByteLittleEndian(zipDir, pos) != 0x02014b50) {
+            if (pos > zipDir.limit() - 46 || zipDir.getInt(pos) != 0x02014b50) {
                 throw new ZipException("cannot read zip file entry");
             }
 
-            int dirStart = pos + 46;
+            int nameLen = zipDir.getShort(pos + 28) & 0xFFFF;
+            if (nameLen > zipDir.limit() - pos - 46) {
+                throw new ZipException("cannot read zip file entry");
+            }
+            if (name.length < nameLen) {
+                name = new byte[nameLen];
+            }
+            ByteBuffer nameBuf = zipDir.duplicate();
+            nameBuf.position(pos + 46);
+            nameBuf.get(name, 0, nameLen);
+
+            int dirStart = 0;
             int fileStart = dirStart;
-            int fileEnd = fileStart + get2ByteLittleEndian(zipDir, pos + 28);
+            int fileEnd = nameLen;
 
             if (zipFileIndex.symbolFilePrefixLength != 0 &&
                     ((fileEnd - fileStart) >= symbolFilePrefixLength)) {
@@ -781,9 +1076,9 @@ public class ZipFileIndex {
             }
             // Force any '\' to '/'. Keep the position of the last separator.
             for (int index = fileStart; index < fileEnd; index++) {
-                byte nextByte = zipDir[index];
+                byte nextByte = name[index];
                 if (nextByte == (byte)'\\') {
-                    zipDir[index] = (byte)'/';
+                    name[index] = (byte)'/';
                     fileStart = index + 1;
                 } else if (nextByte == (byte)'/') {
                     fileStart = index + 1;
@@ -794,22 +1089,19 @@ public class ZipFileIndex {
             if (fileStart == dirStart)
                 directory = getRelativeDirectory("");
             else if (lastDir != null && lastLen == fileStart - dirStart - 1) {
+                // lastLen is 0 for names starting with '/'
                 int index = lastLen - 1;
-                while (zipDir[lastStart + index] == zipDir[dirStart + index]) {
-                    if (index == 0) {
-                        directory = lastDir;
-                        break;
-                    }
+                while (index >= 0 && lastName[dirStart + index] == name[dirStart + index])
                     index--;
-                }
+                if (index < 0)
+                    directory = lastDir;
             }
 
             // Sub directories
             if (directory == null) {
-                lastStart = dirStart;
                 lastLen = fileStart - dirStart - 1;
 
-                directory = getRelativeDirectory(new String(zipDir, dirStart, lastLen, "UTF-8"));
+                directory = getRelativeDirectory(new String(name, dirStart, lastLen, "UTF-8"));
                 lastDir = directory;
 
                 // Enter also all the parent directories
@@ -834,19 +1126,26 @@ public class ZipFileIndex {
             // For each dir create also a file
             if (fileStart != fileEnd) {
                 Entry entry = new Entry(directory,
-                        new String(zipDir, fileStart, fileEnd - fileStart, "UTF-8"));
+                        new String(name, fileStart, fileEnd - fileStart, "UTF-8"));
 
-                entry.setNativeTime(get4ByteLittleEndian(zipDir, pos + 12));
-                entry.compressedSize = get4ByteLittleEndian(zipDir, pos + 20);
-                entry.size = get4ByteLittleEndian(zipDir, pos + 24);
-                entry.offset = get4ByteLittleEndian(zipDir, pos + 42);
+                entry.setNativeTime(zipDir.getInt(pos + 12));
+                entry.compressedSize = zipDir.getInt(pos + 20);
+                entry.size = zipDir.getInt(pos + 24);
+                entry.offset = zipDir.getInt(pos + 42);
                 entryList.add(entry);
             }
 
+            // keep this name for comparison with the next entry's directory
+            if (directory == lastDir) {
+                byte[] tmp = lastName;
+                lastName = name;
+                name = tmp;
+            }
+
             return pos + 46 +
-                    get2ByteLittleEndian(zipDir, pos + 28) +
-                    get2ByteLittleEndian(zipDir, pos + 30) +
-                    get2ByteLittleEndian(zipDir, pos + 32);
+                    nameLen +
+                    (zipDir.getShort(pos + 30) & 0xFFFF) +
+                    (zipDir.getShort(pos + 32) & 0xFFFF);
         }
     }
 
@@ -854,14 +1153,27 @@ public class ZipFileIndex {
      * Returns the last modified timestamp of a zip file.
      * @return long
      */
+    /**
+     * Returns the entries of a directory, including its subdirectories.
+     */
+    List<Entry> getEntries(RelativeDirectory path) throws IOException {
+        lockIndex();
+        try {
+            DirectoryEntry de = directories.get(path);
+            return de == null ? Collections.<Entry>emptyList() : de.getEntriesAsCollection();
+        }
+        finally {
+            unlockIndex();
+        }
+    }
+
     public long getZipFileLastModified() throws IOException {
-        lock.lock();
+        lockIndex();
         try {
-            checkIndex();
             return zipFileLastModified;
         }
         finally {
-            lock.unlock();
+            unlockIndex();
         }
     }
 
@@ -870,12 +1182,15 @@ public class ZipFileIndex {
      * -------------------------------------------------------------------------*/
 
     static class DirectoryEntry {
-        private boolean filesInited;
-        private boolean directoriesInited;
-        private boolean zipFileEntriesInited;
-        private boolean entriesInited;
+        // Entries are computed at most once, under the DirectoryEntry's own
+        // lock, and then read without locking.
+        private volatile boolean filesInited;
+        private volatile boolean directoriesInited;
+        private volatile boolean zipFileEntriesInited;
+        private volatile boolean entriesInited;
 
         private long writtenOffsetOffset = 0;
+        private int classpathIndexDirectory = -1;
 
         private RelativeDirectory dirName;
 
@@ -901,12 +1216,16 @@ public class ZipFileIndex {
         private berlin.com.sun.tools.javac.util.List<String> getFiles() {
             if (!filesInited) {
                 initEntries();
-                for (Entry e : entries) {
-                    if (!e.isDir) {
-                        zipFileEntriesFiles = zipFileEntriesFiles.append(e.name);
+                synchronized (this) {
+                    if (!filesInited) {
+                        for (Entry e : entries) {
+                            if (!e.isDir) {
+                                zipFileEntriesFiles = zipFileEntriesFiles.append(e.name);
+                            }
+                        }
+                        filesInited = true;
                     }
                 }
-                filesInited = true;
             }
             return zipFileEntriesFiles;
         }
@@ -914,12 +1233,16 @@ public class ZipFileIndex {
         private berlin.com.sun.tools.javac.util.List<String> getDirectories() {
             if (!directoriesInited) {
                 initEntries();
-                for (Entry e : entries) {
-                    if (e.isDir) {
-                        zipFileEntriesDirectories = zipFileEntriesDirectories.append(e.name);
+                synchronized (this) {
+                    if (!directoriesInited) {
+                        for (Entry e : entries) {
+                            if (e.isDir) {
+                                zipFileEntriesDirectories = zipFileEntriesDirectories.append(e.name);
+                            }
+                        }
+                        directoriesInited = true;
                     }
                 }
-                directoriesInited = true;
             }
             return zipFileEntriesDirectories;
         }
@@ -927,11 +1250,15 @@ public class ZipFileIndex {
         private berlin.com.sun.tools.javac.util.List<Entry> getEntries() {
             if (!zipFileEntriesInited) {
                 initEntries();
-                zipFileEntries = berlin.com.sun.tools.javac.util.List.nil();
-                for (Entry zfie : entries) {
-                    zipFileEntries = zipFileEntries.append(zfie);
+                synchronized (this) {
+                    if (!zipFileEntriesInited) {
+                        zipFileEntries = berlin.com.sun.tools.javac.util.List.nil();
+                        for (Entry zfie : entries) {
+                            zipFileEntries = zipFileEntries.append(zfie);
+                        }
+                        zipFileEntriesInited = true;
+                    }
                 }
-                zipFileEntriesInited = true;
             }
             return zipFileEntries;
         }
@@ -950,8 +1277,18 @@ public class ZipFileIndex {
             if (entriesInited) {
                 return;
             }
+            synchronized (this) {
+                if (!entriesInited) {
+                    readEntries();
+                    entriesInited = true;
+                }
+            }
+        }
 
-            if (!zipFileIndex.readFromIndex) {
+        private void readEntries() {
+            if (classpathIndexDirectory >= 0) {
+                zipFileIndex.classpathIndex.readEntries(classpathIndexDirectory, dirName, entries);
+            } else if (!zipFileIndex.readFromIndex) {
                 int from = -Arrays.binarySearch(zipFileIndex.entries,
                         new Entry(dirName, ZipFileIndex.MIN_CHAR)) - 1;
                 int to = -Arrays.binarySearch(zipFileIndex.entries,
@@ -1011,8 +1348,6 @@ public class ZipFileIndex {
                     }
                 }
             }
-
-            entriesInited = true;
         }
 
         List<Entry> getEntriesAsCollection() {
@@ -1028,7 +1363,7 @@ public class ZipFileIndex {
         }
 
         boolean ret = false;
-        lock.lock();
+        indexLock.writeLock().lock();
         try {
             triedToReadIndex = true;
             RandomAccessFile raf = null;
@@ -1072,7 +1407,7 @@ public class ZipFileIndex {
             }
         }
         finally {
-            lock.unlock();
+            indexLock.writeLock().unlock();
         }
 
         return ret;
@@ -1191,12 +1526,12 @@ public class ZipFileIndex {
     }
 
     public boolean writeZipIndex() {
-        lock.lock();
+        indexLock.writeLock().lock();
         try {
             return writeIndex();
         }
         finally {
-            lock.unlock();
+            indexLock.writeLock().unlock();
         }
     }
 
@@ -1298,6 +1633,10 @@ public class ZipFileIndex {
             nativetime = natTime;
         }
 
+        int getNativeTime() {
+            return nativetime;
+        }
+
         public boolean isDirectory() {
             return isDir;
         }
@@ -28,7 +28,6 @@ package berlin.com.sun.tools.javac.file;
 import java.io.IOException;
 import java.util.Set;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -61,6 +60,10 @@ public class ZipFileIndexArchive implements Archive {
         this.zfIndex = zdir;
     }
 
+    ZipFileIndex getZipFileIndex() {
+        return zfIndex;
+    }
+
     public boolean contains(RelativePath name) {
         return zfIndex.contains(name);
     }
@@ -147,7 +150,7 @@ public class ZipFileIndexArchive implements Archive {
         public InputStream openInputStream() throws IOException {
             if (inputStream == null) {
                 assert entry != null; // see constructor
-                inputStream = new ByteArrayInputStream(zfIndex.read(entry));
+                inputStream = new ByteBufferInputStream(zfIndex.readBuffer(entry));
             }
             return inputStream;
         }
@@ -161,21 +164,17 @@ public class ZipFileIndexArchive implements Archive {
         public CharBuffer getCharContent(boolean ignoreEncodingErrors) throws IOException {
             CharBuffer cb = fileManager.getCachedContent(this);
             if (cb == null) {
-                InputStream in = new ByteArrayInputStream(zfIndex.read(entry));
+                // decode straight from the entry's buffer, which for a
+                // mapped index may be a view of the zip file itself
+                ByteBuffer bb = zfIndex.readBuffer(entry);
+                JavaFileObject prev = fileManager.log.useSource(this);
                 try {
-                    ByteBuffer bb = fileManager.makeByteBuffer(in);
-                    JavaFileObject prev = fileManager.log.useSource(this);
-                    try {
-                        cb = fileManager.decode(bb, ignoreEncodingErrors);
-                    } finally {
-                        fileManager.log.useSource(prev);
-                    }
-                    fileManager.recycleByteBuffer(bb); // save for next time
-                    if (!ignoreEncodingErrors)
-                        fileManager.cache(this, cb);
+                    cb = fileManager.decode(bb, ignoreEncodingErrors);
                 } finally {
-                    in.close();
+                    fileManager.log.useSource(prev);
                 }
+                if (!ignoreEncodingErrors)
+                    fileManager.cache(this, cb);
             }
             return cb;
         }
@@ -250,4 +249,44 @@ public class ZipFileIndexArchive implements Archive {
         }
     }
 
+    /**
+     * An input stream reading the remaining bytes of a buffer, so that
+     * entries of a mapped zip file can be read without copying them first.
+     */
+    static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        //@Override
+        public int read() {
+            return buf.hasRemaining() ? (buf.get() & 0xFF) : -1;
+        }
+
+        //@Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!buf.hasRemaining())
+                return -1;
+            len = Math.min(len, buf.remaining());
+            buf.get(b, off, len);
+            return len;
+        }
+
+        //@Override
+        public long skip(long n) {
+            int k = (int) Math.max(0, Math.min(n, buf.remaining()));
+            buf.position(buf.position() + k);
+            return k;
+        }
+
+        //@Override
+        public int available() {
+            return buf.remaining();
+        }
+    }
+
 }
@@ -93,7 +93,7 @@ public class ClassFile {
      * Return internal representation of given name, converting '/' to '.'.
      */
     public static byte[] internalize(Name name) {
-        return internalize(name.table.names, name.index, name.len);
+        return internalize(name.getByteArray(), name.getByteOffset(), name.len);
     }
 
     /**
@@ -116,7 +116,7 @@ public class ClassFile {
      * Return external representation of given name, converting '/' to '.'.
      */
     public static byte[] externalize(Name name) {
-        return externalize(name.table.names, name.index, name.len);
+        return externalize(name.getByteArray(), name.getByteOffset(), name.len);
     }
 
     /************************************************************************
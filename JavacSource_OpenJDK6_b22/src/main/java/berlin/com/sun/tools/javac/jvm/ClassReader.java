@@ -63,8 +63,11 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.CharBuffer;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
@@ -163,6 +166,25 @@ public class ClassReader extends ClassFile implements Completer {
      */
     private boolean cacheCompletionFailure;
 
+    /**
+     * Switch: leave the fields and methods of a class unread until its
+     * members are first asked for.
+     */
+    private boolean lazyMembers;
+
+    /**
+     * Switch: keep the members of classes with at least COMPACT_SCOPE_SIZE
+     * fields and methods in a Scope.CompactScope, unless -XDnoCompactScopes
+     * is used.
+     */
+    private boolean compactScopes;
+
+    /**
+     * The number of fields and methods from which a class gets a compact
+     * member scope.
+     */
+    static final int COMPACT_SCOPE_SIZE = 16;
+
     /**
      * Switch: prefer source files instead of newer when both source and class
      * are available
@@ -172,7 +194,7 @@ public class ClassReader extends ClassFile implements Completer {
     /**
      * The log to use for verbose output
      */
-    final Log log;
+    Log log;
 
     /** The symbol table. */
     Symtab syms;
@@ -185,12 +207,12 @@ public class ClassReader extends ClassFile implements Completer {
     /**
      * Force a completion failure on this name
      */
-    final Name completionFailureName;
+    Name completionFailureName;
 
     /**
      * Access to files
      */
-    private final JavaFileManager fileManager;
+    private JavaFileManager fileManager;
 
     /**
      * Can be reassigned from outside: the completer to be used for ".java"
@@ -209,6 +231,13 @@ public class ClassReader extends ClassFile implements Completer {
      */
     private Map<Name, PackageSymbol> packages;
 
+    /**
+     * The classes included from the platform class path, recorded when the
+     * symbols read by this class reader are kept for later compilations
+     * (-XDwarmSymbols); null otherwise.
+     */
+    private Set<ClassSymbol> platformClasses;
+
     /**
      * The current scope where type variables are entered.
      */
@@ -315,6 +344,19 @@ public class ClassReader extends ClassFile implements Completer {
 
         Options options = Options.instance(context);
         annotate = Annotate.instance(context);
+        initOptions(context);
+
+        if (options.get("warmSymbols") != null || options.get("incrementalRounds") != null)
+            platformClasses = new HashSet<ClassSymbol>();
+
+        typevars = new Scope(syms.noSymbol);
+    }
+
+    /**
+     * Read the switches of this class reader from the options of a context.
+     */
+    private void initOptions(Context context) {
+        Options options = Options.instance(context);
         verbose = options.get("-verbose") != null;
         checkClassFile = options.get("-checkclassfile") != null;
         Source source = Source.instance(context);
@@ -323,12 +365,127 @@ public class ClassReader extends ClassFile implements Completer {
         allowAnnotations = source.allowAnnotations();
         saveParameterNames = options.get("save-parameter-names") != null;
         cacheCompletionFailure = options.get("dev") == null;
+        lazyMembers = options.get("lazyMembers") != null;
+        compactScopes = options.get("noCompactScopes") == null;
         preferSource = "source".equals(options.get("-Xprefer"));
 
         completionFailureName = (options.get("failcomplete") != null) ? names.fromString(options.get("failcomplete"))
                 : null;
+    }
 
-        typevars = new Scope(syms.noSymbol);
+    /**
+     * Rebind this class reader, together with every symbol it has read, to
+     * a new context. The context must already share this reader's name table
+     * and symbol table; see berlin.com.sun.tools.javac.main.WarmSymbols.
+     */
+    public void setContext(Context context) {
+        context.put(classReaderKey, this);
+        // the new compiler installs itself as source completer
+        sourceCompleter = null;
+        assert names == Name.Table.instance(context) && syms == Symtab.instance(context);
+
+        fileManager = context.get(JavaFileManager.class);
+        if (fileManager == null)
+            throw new AssertionError("FileManager initialization error");
+        log = Log.instance(context);
+        types = Types.instance(context);
+        annotate = Annotate.instance(context);
+        initOptions(context);
+        verbosePath = true;
+    }
+
+    /**
+     * Discard everything but the classes read from the platform class path,
+     * so that this reader and its symbol table can be used for another
+     * compilation. Classes from the class path or from source, and classes
+     * that could not be completed, are removed from the symbol table; every
+     * package is reset so that its members are listed again when it is next
+     * completed. Placeholder symbols that were never completed are kept, as
+     * classes kept resident may refer to them.
+     *
+     * @return the number of classes kept
+     */
+    public int retainPlatformClasses() {
+        if (platformClasses == null)
+            throw new IllegalStateException("neither -XDwarmSymbols nor -XDincrementalRounds set");
+        int retained = 0;
+        for (Iterator<ClassSymbol> i = classes.values().iterator(); i.hasNext();) {
+            ClassSymbol c = i.next();
+            boolean keep;
+            if (c == syms.predefClass)
+                keep = true;
+            else if (c.completer == this)
+                keep = c.classfile == null || platformClasses.contains(c);
+            else
+                keep = platformClasses.contains(c) && c.type.tag == CLASS && c.classfile != null
+                        && c.classfile.getKind() == JavaFileObject.Kind.CLASS;
+            if (keep) {
+                retained++;
+            } else {
+                i.remove();
+                platformClasses.remove(c);
+            }
+        }
+        for (PackageSymbol p : packages.values())
+            resetPackage(p);
+        resetPackage(syms.unnamedPackage);
+        return retained;
+    }
+
+    /**
+     * Prepare this reader and its symbol table for another round of
+     * annotation processing, in which they are used in a new context
+     * (-XDincrementalRounds). As for another compilation, only the classes
+     * read from the platform class path are kept (see retainPlatformClasses):
+     * processors cannot add to the platform class path, so a new context
+     * would read these classes again from the same files. Everything else
+     * is found again as a new context would find it, including classes that
+     * could not be found before and classes generated in an earlier round,
+     * which are only found on the class path once the round that generated
+     * them is over. The annotations of packages whose package-info files
+     * were entered from source are discarded, as they are entered again.
+     *
+     * @param entered the classes, and the packages of package-info files,
+     *        entered from source in the round that ends
+     * @return the number of classes kept
+     */
+    public int newRound(Collection<? extends TypeSymbol> entered) {
+        for (TypeSymbol s : entered) {
+            if (s.kind == PCK)
+                s.attributes_field = List.nil();
+        }
+        return retainPlatformClasses();
+    }
+
+    // where
+    private void resetClass(ClassSymbol c) {
+        c.completer = this;
+        c.membersCompleter = null;
+        c.flags_field = 0;
+        c.members_field = null;
+        c.attributes_field = List.nil();
+        c.sourcefile = null;
+        c.pool = null;
+        if (c.type.tag == CLASS) {
+            ClassType ct = (ClassType) c.type;
+            ct.setEnclosingType(Type.noType);
+            ct.typarams_field = null;
+            ct.allparams_field = null;
+            ct.supertype_field = null;
+            ct.interfaces_field = null;
+        } else {
+            c.kind = TYP;
+            c.type = new ClassType(Type.noType, null, c);
+        }
+    }
+
+    private void resetPackage(PackageSymbol p) {
+        if (p.completer == null) {
+            p.members_field = null;
+            p.package_info = null;
+            p.flags_field &= ~EXISTS;
+            p.completer = this;
+        }
     }
 
     /**
@@ -598,7 +755,7 @@ public class ClassReader extends ClassFile implements Completer {
      * Convert signature to type, where signature is a name.
      */
     Type sigToType(Name sig) {
-        return sig == null ? null : sigToType(sig.table.names, sig.index, sig.len);
+        return sig == null ? null : sigToType(sig.getByteArray(), sig.getByteOffset(), sig.len);
     }
 
     /**
@@ -810,7 +967,7 @@ public class ClassReader extends ClassFile implements Completer {
      * Convert signature to type parameters, where signature is a name.
      */
     List<Type> sigToTypeParams(Name name) {
-        return sigToTypeParams(name.table.names, name.index, name.len);
+        return sigToTypeParams(name.getByteArray(), name.getByteOffset(), name.len);
     }
 
     /**
@@ -1021,6 +1178,7 @@ public class ClassReader extends ClassFile implements Completer {
         ClassSymbol c = readClassSymbol(nextChar());
         NameAndType nt = (NameAndType) readPool(nextChar());
 
+        c.completeMembers();
         MethodSymbol m = findMethod(nt, c.members_field, self.flags());
         if (nt != null && m == null)
             throw badClassFile("bad.enclosing.method", self);
@@ -1721,9 +1879,6 @@ public class ClassReader extends ClassFile implements Completer {
     void readClass(ClassSymbol c) {
         ClassType ct = (ClassType) c.type;
 
-        // allocate scope for members
-        c.members_field = new Scope(c);
-
         // prepare type variable table
         typevars = typevars.dup(currentOwner);
         if (ct.getEnclosingType().tag == CLASS)
@@ -1741,6 +1896,7 @@ public class ClassReader extends ClassFile implements Completer {
 
         // class attributes must be read before class
         // skip ahead to read class attributes
+        Symbol owner = c.owner;
         int startbp = bp;
         nextChar();
         char interfaceCount = nextChar();
@@ -1751,6 +1907,15 @@ public class ClassReader extends ClassFile implements Completer {
         char methodCount = nextChar();
         for (int i = 0; i < methodCount; i++)
             skipMember();
+        int membersEnd = bp;
+
+        // allocate scope for members
+        int size = fieldCount + methodCount;
+        if (compactScopes && size >= COMPACT_SCOPE_SIZE)
+            c.members_field = new Scope.CompactScope(c, size);
+        else
+            c.members_field = new Scope(c);
+
         readClassAttrs(c);
 
         if (readAllOfClassFile) {
@@ -1773,16 +1938,123 @@ public class ClassReader extends ClassFile implements Completer {
         if (ct.interfaces_field == null)
             ct.interfaces_field = is.reverse();
 
-        if (fieldCount != nextChar())
-            assert false;
+        // Members of local classes may refer to type variables of the
+        // enclosing method, which are only known while reading the class.
+        if (lazyMembers && !readAllOfClassFile && !saveParameterNames && c.owner == owner
+                && missingTypeVariables.isEmpty()) {
+            c.membersCompleter = new MembersCompleter(currentClassFile, ArrayUtils.copyOf(buf, membersEnd), poolIdx,
+                    poolObj, bp);
+            classesLeftUnread++;
+        } else {
+            readMembers(c);
+        }
+
+        typevars = typevars.leave();
+    }
+
+    /**
+     * Read the fields and methods of a class, and enter them into its members.
+     */
+    private void readMembers(ClassSymbol c) {
+        char fieldCount = nextChar();
         for (int i = 0; i < fieldCount; i++)
             enterMember(c, readField());
-        if (methodCount != nextChar())
-            assert false;
+        char methodCount = nextChar();
         for (int i = 0; i < methodCount; i++)
             enterMember(c, readMethod());
+    }
 
-        typevars = typevars.leave();
+    /**
+     * Reads the fields and methods of a class, which were left unread when the
+     * class was completed, from a copy of its class file.
+     */
+    private class MembersCompleter implements Completer {
+        final JavaFileObject classfile;
+
+        /** The class file, up to the end of the methods. */
+        final byte[] buf;
+
+        final int[] poolIdx;
+
+        final Object[] poolObj;
+
+        /** The position of the fields in buf. */
+        final int bp;
+
+        MembersCompleter(JavaFileObject classfile, byte[] buf, int[] poolIdx, Object[] poolObj, int bp) {
+            this.classfile = classfile;
+            this.buf = buf;
+            this.poolIdx = poolIdx;
+            this.poolObj = poolObj;
+            this.bp = bp;
+        }
+
+        public void complete(Symbol sym) throws CompletionFailure {
+            completeMembers((ClassSymbol) sym, this);
+        }
+    }
+
+    /**
+     * Read the members of a class that were left unread. This may happen
+     * while another class file is read, so the state of the reader is saved
+     * and restored around it.
+     */
+    private void completeMembers(ClassSymbol c, MembersCompleter mc) {
+        byte[] prevBuf = buf;
+        int prevBp = bp;
+        int[] prevPoolIdx = poolIdx;
+        Object[] prevPoolObj = poolObj;
+        Symbol prevOwner = currentOwner;
+        JavaFileObject prevClassFile = currentClassFile;
+        boolean prevFilling = filling;
+        boolean prevReadingClassAttr = readingClassAttr;
+        buf = mc.buf;
+        bp = mc.bp;
+        poolIdx = mc.poolIdx;
+        poolObj = mc.poolObj;
+        currentOwner = c;
+        currentClassFile = mc.classfile;
+        filling = true;
+        readingClassAttr = false;
+        if (signatureBuffer.length < buf.length)
+            signatureBuffer = new byte[Integer.highestOneBit(buf.length) << 1];
+        typevars = typevars.dup(currentOwner);
+        try {
+            enterTypevars(c.type);
+            readMembers(c);
+            classesReadLater++;
+        } finally {
+            typevars = typevars.leave();
+            buf = prevBuf;
+            bp = prevBp;
+            poolIdx = prevPoolIdx;
+            poolObj = prevPoolObj;
+            currentOwner = prevOwner;
+            currentClassFile = prevClassFile;
+            filling = prevFilling;
+            readingClassAttr = prevReadingClassAttr;
+        }
+        if (!filling && !suppressFlush)
+            annotate.flush(); // finish attaching annotations
+    }
+
+    /**
+     * The number of classes read from class files, of those whose members
+     * were left unread, and of those whose members were read later.
+     */
+    private int classesRead;
+
+    private int classesLeftUnread;
+
+    private int classesReadLater;
+
+    /**
+     * Print how many classes were read, and for how many of them reading
+     * the members was put off or avoided.
+     */
+    public void printStats() {
+        Log.printLines(log.noticeWriter, Log.getLocalizedString("verbose.members", Integer.toString(classesRead),
+                Integer.toString(classesLeftUnread), Integer.toString(classesReadLater)));
     }
 
     /**
@@ -1934,6 +2206,24 @@ public class ClassReader extends ClassFile implements Completer {
         return cs;
     }
 
+    /**
+     * Enter a class generated by an annotation processor in an earlier
+     * round. With incremental rounds (see newRound), the class may still be
+     * known although only platform classes are kept: as a placeholder that
+     * a kept class refers to, or as a platform class of the same name. The
+     * symbol is then read again, from the generated file, as a new context
+     * would read it; enterClass would fail on it.
+     */
+    public ClassSymbol enterGeneratedClass(Name flatName, JavaFileObject classFile) {
+        ClassSymbol cs = classes.get(flatName);
+        if (cs == null)
+            return enterClass(flatName, classFile);
+        if (cs.completer != this)
+            resetClass(cs);
+        cs.classfile = classFile;
+        return cs;
+    }
+
     /**
      * Create a new member or toplevel class symbol with given flat name and
      * enter in `classes' unless already there.
@@ -2033,6 +2323,7 @@ public class ClassReader extends ClassFile implements Completer {
                         bp = 0;
                         buf = readInputStream(buf, classfile.openInputStream());
                         readClassFile(c);
+                        classesRead++;
                         if (!missingTypeVariables.isEmpty() && !foundTypeVariables.isEmpty()) {
                             List<Type> missing = missingTypeVariables;
                             List<Type> found = foundTypeVariables;
@@ -2217,6 +2508,8 @@ public class ClassReader extends ClassFile implements Completer {
                 c.classfile = preferredFileObject(file, c.classfile);
         }
         c.flags_field |= seen;
+        if (platformClasses != null && currentLoc == PLATFORM_CLASS_PATH && kind == JavaFileObject.Kind.CLASS)
+            platformClasses.add(c);
     }
 
     /**
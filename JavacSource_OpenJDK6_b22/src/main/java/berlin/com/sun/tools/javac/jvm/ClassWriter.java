@@ -274,6 +274,40 @@ public class ClassWriter extends ClassFile {
         dumpMethodModifiers = (dumpModFlags != null && dumpModFlags.indexOf('m') != -1);
     }
 
+    /**
+     * Construct a class writer like a given one, but with buffers of its own.
+     */
+    private ClassWriter(ClassWriter writer, Log log) {
+        this.log = log;
+        names = writer.names;
+        syms = writer.syms;
+        options = writer.options;
+        target = writer.target;
+        source = writer.source;
+        types = writer.types;
+        fileManager = writer.fileManager;
+        verbose = writer.verbose;
+        scramble = writer.scramble;
+        scrambleAll = writer.scrambleAll;
+        retrofit = writer.retrofit;
+        genCrt = writer.genCrt;
+        debugstackmap = writer.debugstackmap;
+        emitSourceFile = writer.emitSourceFile;
+        dumpClassModifiers = writer.dumpClassModifiers;
+        dumpFieldModifiers = writer.dumpFieldModifiers;
+        dumpInnerClassModifiers = writer.dumpInnerClassModifiers;
+        dumpMethodModifiers = writer.dumpMethodModifiers;
+    }
+
+    /**
+     * Create a class writer, not registered in any context, that reports to
+     * the given log. Class writers created this way may write different
+     * classes at the same time, on different threads holding a SymbolLock.
+     */
+    public ClassWriter forLog(Log log) {
+        return new ClassWriter(this, log);
+    }
+
     /******************************************************************
      * Diagnostics: dump generated class names and modifiers
      ******************************************************************/
@@ -549,10 +583,6 @@ public class ClassWriter extends ClassFile {
         while (i < pool.pp) {
             Object value = pool.pool[i];
             assert value != null;
-            if (value instanceof Pool.Method)
-                value = ((Pool.Method) value).m;
-            else if (value instanceof Pool.Variable)
-                value = ((Pool.Variable) value).v;
 
             if (value instanceof MethodSymbol) {
                 MethodSymbol m = (MethodSymbol) value;
@@ -1614,8 +1644,7 @@ public class ClassWriter extends ClassFile {
      *            The class from which a class file is generated.
      */
     public JavaFileObject writeClass(ClassSymbol c) throws IOException, PoolOverflow, StringOverflow {
-        JavaFileObject outFile = fileManager.getJavaFileForOutput(CLASS_OUTPUT, c.flatname.toString(),
-                JavaFileObject.Kind.CLASS, c.sourcefile);
+        JavaFileObject outFile = getClassFile(c);
         OutputStream out = outFile.openOutputStream();
         try {
             writeClassFile(out, c);
@@ -1634,6 +1663,32 @@ public class ClassWriter extends ClassFile {
         return outFile; // may be null if write failed
     }
 
+    /**
+     * Get the file to which class `c' is written.
+     */
+    public JavaFileObject getClassFile(ClassSymbol c) throws IOException {
+        return fileManager.getJavaFileForOutput(CLASS_OUTPUT, c.flatname.toString(),
+                JavaFileObject.Kind.CLASS, c.sourcefile);
+    }
+
+    /**
+     * Write the contents of a class file, as produced by writeClassFile, to
+     * a given file. The file is deleted if it cannot be written completely.
+     */
+    public static void writeClassFile(JavaFileObject outFile, byte[] contents) throws IOException {
+        OutputStream out = outFile.openOutputStream();
+        try {
+            out.write(contents);
+            out.close();
+            out = null;
+        } finally {
+            if (out != null) {
+                out.close();
+                outFile.delete();
+            }
+        }
+    }
+
     /**
      * Write class `c' to outstream `out'.
      */
@@ -165,6 +165,7 @@ import berlin.com.sun.tools.javac.tree.JCTree.JCVariableDecl;
 import berlin.com.sun.tools.javac.tree.JCTree.JCWhileLoop;
 import berlin.com.sun.tools.javac.tree.JCTree.JCWildcard;
 import berlin.com.sun.tools.javac.tree.JCTree.LetExpr;
+import berlin.com.sun.tools.javac.util.Abort;
 import berlin.com.sun.tools.javac.util.Context;
 import berlin.com.sun.tools.javac.util.List;
 import berlin.com.sun.tools.javac.util.ListBuffer;
@@ -278,6 +279,57 @@ public class Gen extends JCTree.Visitor {
         this.useJsrLocally = false; // reset in visitTry
     }
 
+    /** Construct a code generator like a given one, but with a log, tree
+     *  maker and constant pool of its own.
+     */
+    protected Gen(Gen gen, Log log) {
+        names = gen.names;
+        this.log = log;
+        syms = gen.syms;
+        chk = gen.chk;
+        rs = gen.rs;
+        make = gen.make.forToplevel(null);
+        target = gen.target;
+        types = gen.types;
+        methodType = gen.methodType;
+        allowGenerics = gen.allowGenerics;
+        stringBufferType = gen.stringBufferType;
+        stringBufferAppend = new HashMap<Type,Symbol>();
+        accessDollar = gen.accessDollar;
+        lineDebugInfo = gen.lineDebugInfo;
+        varDebugInfo = gen.varDebugInfo;
+        genCrt = gen.genCrt;
+        debugCode = gen.debugCode;
+        generateIproxies = gen.generateIproxies;
+        stackMap = gen.stackMap;
+        jsrlimit = gen.jsrlimit;
+        useJsrLocally = false;
+    }
+
+    /** Create a code generator, not registered in any context, that
+     *  reports to the given log. Code generators created this way may
+     *  generate code for different classes at the same time, on different
+     *  threads holding a SymbolLock, unless Miranda methods are needed
+     *  (see needsMirandaMethods) or jsr may be used (see mayUseJsr).
+     */
+    public Gen forLog(Log log) {
+        return new Gen(this, log);
+    }
+
+    /** Are Miranda methods to be added to abstract classes?
+     */
+    public boolean needsMirandaMethods() {
+        return generateIproxies && !allowGenerics;
+    }
+
+    /** May finalizers be compiled as subroutines? Once a try statement is
+     *  compiled with jsr, so are all that follow (see useJsrLocally), so
+     *  the code of a class depends on the classes generated before it.
+     */
+    public boolean mayUseJsr() {
+        return !target.generateStackMapTable();
+    }
+
     /** Switches
      */
     private final boolean lineDebugInfo;
@@ -323,6 +375,14 @@ public class Gen extends JCTree.Visitor {
      */
     private Map<JCTree, Integer> endPositions;
 
+    /** Report a completion failure to this generator's log, as
+     *  Check.completionError does.
+     */
+    private void completionError(DiagnosticPosition pos, CompletionFailure ex) {
+        log.error(pos, "cant.access", ex.sym, ex.errmsg);
+        if (ex instanceof ClassReader.BadClassFile) throw new Abort();
+    }
+
     /** Generate code to load an integer constant.
      *  @param n     The integer to be loaded.
      */
@@ -734,13 +794,11 @@ public class Gen extends JCTree.Visitor {
     void implementInterfaceMethods(ClassSymbol c, ClassSymbol site) {
         for (List<Type> l = types.interfaces(c.type); l.nonEmpty(); l = l.tail) {
             ClassSymbol i = (ClassSymbol)l.head.tsym;
-            for (Scope.Entry e = i.members().elems;
-                 e != null;
-                 e = e.sibling)
+            for (Symbol sym : i.members().getLocalElements())
             {
-                if (e.sym.kind == MTH && (e.sym.flags() & STATIC) == 0)
+                if (sym.kind == MTH && (sym.flags() & STATIC) == 0)
                 {
-                    MethodSymbol absMeth = (MethodSymbol)e.sym;
+                    MethodSymbol absMeth = (MethodSymbol)sym;
                     MethodSymbol implMeth = absMeth.binaryImplementation(site, types);
                     if (implMeth == null)
                         addAbstractMethod(site, absMeth);
@@ -807,7 +865,7 @@ public class Gen extends JCTree.Visitor {
             this.env = env;
             tree.accept(this);
         } catch (CompletionFailure ex) {
-            chk.completionError(tree.pos(), ex);
+            completionError(tree.pos(), ex);
         } finally {
             this.env = prevEnv;
         }
@@ -962,7 +1020,7 @@ public class Gen extends JCTree.Visitor {
             }
             return result.coerce(pt);
         } catch (CompletionFailure ex) {
-            chk.completionError(tree.pos(), ex);
+            completionError(tree.pos(), ex);
             code.state.stacksize = 1;
             return items.makeStackItem(pt);
         } finally {
@@ -27,6 +27,7 @@ package berlin.com.sun.tools.javac.jvm;
 
 import java.util.*;
 
+import berlin.com.sun.tools.javac.code.Symbol;
 import berlin.com.sun.tools.javac.code.Type;
 import berlin.com.sun.tools.javac.code.Symbol.*;
 import berlin.com.sun.tools.javac.util.*;
@@ -51,18 +52,28 @@ public class Pool {
      */
     Object[] pool;
 
-    /** A hashtable containing all constants in the pool.
+    /** An open addressing hash table from constants to their indices in
+     *  the pool.  A slot is in use only if its stamp is the current
+     *  generation, so that the table can be emptied, and reused for the
+     *  next class, without clearing or reallocating it.
      */
-    Map<Object,Integer> indices;
+    private int[] slots;
+    private int[] stamps;
+    private int generation = 1;
+    private int count;
 
     /** Construct a pool with given number of elements and element array.
      */
     public Pool(int pp, Object[] pool) {
         this.pp = pp;
         this.pool = pool;
-        this.indices = new HashMap<Object,Integer>(pool.length);
+        int size = 64;
+        while (size < pool.length * 2)
+            size <<= 1;
+        slots = new int[size];
+        stamps = new int[size];
         for (int i = 1; i < pp; i++) {
-            if (pool[i] != null) indices.put(pool[i], i);
+            if (pool[i] != null && find(pool[i]) < 0) enter(pool[i], i);
         }
     }
 
@@ -82,7 +93,11 @@ public class Pool {
      */
     public void reset() {
         pp = 1;
-        indices.clear();
+        count = 0;
+        if (++generation == 0) {
+            Arrays.fill(stamps, 0);
+            generation = 1;
+        }
     }
 
     /** Double pool buffer in size.
@@ -98,16 +113,12 @@ public class Pool {
      *  package.  Return the object's index in the pool.
      */
     public int put(Object value) {
-        if (value instanceof MethodSymbol)
-            value = new Method((MethodSymbol)value);
-        else if (value instanceof VarSymbol)
-            value = new Variable((VarSymbol)value);
 //      assert !(value instanceof Type.TypeVar);
-        Integer index = indices.get(value);
-        if (index == null) {
+        int index = find(value);
+        if (index < 0) {
 //          System.err.println("put " + value + " " + value.getClass());//DEBUG
             index = pp;
-            indices.put(value, index);
+            enter(value, index);
             if (pp == pool.length) doublePool();
             pool[pp++] = value;
             if (value instanceof Long || value instanceof Double) {
@@ -115,58 +126,96 @@ public class Pool {
                 pool[pp++] = null;
             }
         }
-        return index.intValue();
+        return index;
     }
 
     /** Return the given object's index in the pool,
      *  or -1 if object is not in there.
      */
     public int get(Object o) {
-        Integer n = indices.get(o);
-        return n == null ? -1 : n.intValue();
+        return find(o);
     }
 
-    static class Method extends DelegatedSymbol {
-        MethodSymbol m;
-        Method(MethodSymbol m) {
-            super(m);
-            this.m = m;
-        }
-        public boolean equals(Object other) {
-            if (!(other instanceof Method)) return false;
-            MethodSymbol o = ((Method)other).m;
-            return
-                o.name == m.name &&
-                o.owner == m.owner &&
-                o.type.equals(m.type);
-        }
-        public int hashCode() {
-            return
-                m.name.hashCode() * 33 +
-                m.owner.hashCode() * 9 +
-                m.type.hashCode();
+    /** Return the index of the constant equal to value, or -1.
+     */
+    private int find(Object value) {
+        int mask = slots.length - 1;
+        int i = hash(value) & mask;
+        while (stamps[i] == generation) {
+            int index = slots[i];
+            if (equal(pool[index], value))
+                return index;
+            i = (i + 1) & mask;
         }
+        return -1;
     }
 
-    static class Variable extends DelegatedSymbol {
-        VarSymbol v;
-        Variable(VarSymbol v) {
-            super(v);
-            this.v = v;
-        }
-        public boolean equals(Object other) {
-            if (!(other instanceof Variable)) return false;
-            VarSymbol o = ((Variable)other).v;
-            return
-                o.name == v.name &&
-                o.owner == v.owner &&
-                o.type.equals(v.type);
+    /** Record the index of a constant known not to be in the table yet.
+     */
+    private void enter(Object value, int index) {
+        if ((count + 1) * 2 > slots.length)
+            rehash();
+        int mask = slots.length - 1;
+        int i = hash(value) & mask;
+        while (stamps[i] == generation)
+            i = (i + 1) & mask;
+        slots[i] = index;
+        stamps[i] = generation;
+        count++;
+    }
+
+    /** Double the hash table and reenter the constants in the pool.
+     */
+    private void rehash() {
+        int[] oldSlots = slots;
+        int[] oldStamps = stamps;
+        slots = new int[oldSlots.length * 2];
+        stamps = new int[oldSlots.length * 2];
+        int mask = slots.length - 1;
+        for (int j = 0; j < oldSlots.length; j++) {
+            if (oldStamps[j] != generation) continue;
+            int index = oldSlots[j];
+            int i = hash(pool[index]) & mask;
+            while (stamps[i] == generation)
+                i = (i + 1) & mask;
+            slots[i] = index;
+            stamps[i] = generation;
         }
-        public int hashCode() {
-            return
-                v.name.hashCode() * 33 +
-                v.owner.hashCode() * 9 +
-                v.type.hashCode();
+    }
+
+    /** Methods and fields are entered in the pool as themselves, but are
+     *  the same constant if they have the same name, owner and type.  Other
+     *  constants use their own notion of equality.
+     */
+    private static int hash(Object value) {
+        int h;
+        if (value instanceof MethodSymbol || value instanceof VarSymbol) {
+            Symbol sym = (Symbol)value;
+            h = sym.name.hashCode() * 33 +
+                sym.owner.hashCode() * 9 +
+                sym.type.hashCode();
+        } else {
+            h = value.hashCode();
         }
+        // spread the bits, since the table is indexed by the low bits
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equal(Object a, Object b) {
+        if (a == b)
+            return true;
+        if (a instanceof MethodSymbol)
+            return b instanceof MethodSymbol && sameMember((Symbol)a, (Symbol)b);
+        if (a instanceof VarSymbol)
+            return b instanceof VarSymbol && sameMember((Symbol)a, (Symbol)b);
+        return !(b instanceof MethodSymbol || b instanceof VarSymbol) && a.equals(b);
+    }
+
+    private static boolean sameMember(Symbol a, Symbol b) {
+        return
+            a.name == b.name &&
+            a.owner == b.owner &&
+            a.type.equals(b.type);
     }
 }
@@ -29,7 +29,9 @@ import static berlin.com.sun.tools.javac.util.ListBuffer.lb;
 import static berlin.javax.tools.StandardLocation.CLASS_OUTPUT;
 
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.CharBuffer;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -39,6 +41,15 @@ import java.util.MissingResourceException;
 import java.util.Queue;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -49,6 +60,7 @@ import berlin.com.sun.tools.javac.code.Flags;
 import berlin.com.sun.tools.javac.code.Kinds;
 import berlin.com.sun.tools.javac.code.Source;
 import berlin.com.sun.tools.javac.code.Symbol;
+import berlin.com.sun.tools.javac.code.SymbolLock;
 import berlin.com.sun.tools.javac.code.Symtab;
 import berlin.com.sun.tools.javac.code.Type;
 import berlin.com.sun.tools.javac.code.TypeTags;
@@ -64,6 +76,7 @@ import berlin.com.sun.tools.javac.comp.Enter;
 import berlin.com.sun.tools.javac.comp.Env;
 import berlin.com.sun.tools.javac.comp.Flow;
 import berlin.com.sun.tools.javac.comp.Lower;
+import berlin.com.sun.tools.javac.comp.Resolve;
 import berlin.com.sun.tools.javac.comp.Todo;
 import berlin.com.sun.tools.javac.comp.TransTypes;
 import berlin.com.sun.tools.javac.file.JavacFileManager;
@@ -86,6 +99,7 @@ import berlin.com.sun.tools.javac.tree.JCTree.JCMethodDecl;
 import berlin.com.sun.tools.javac.tree.JCTree.JCVariableDecl;
 import berlin.com.sun.tools.javac.util.Abort;
 import berlin.com.sun.tools.javac.util.Context;
+import berlin.com.sun.tools.javac.util.JCDiagnostic;
 import berlin.com.sun.tools.javac.util.List;
 import berlin.com.sun.tools.javac.util.ListBuffer;
 import berlin.com.sun.tools.javac.util.Log;
@@ -199,7 +213,16 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
          * Means output might be generated for some classes in a compilation unit
          * and not others.
          */
-        BY_TODO;
+        BY_TODO,
+
+        /**
+         * Process each entry on the todo list in turn, as {@code BY_TODO}
+         * does, but hand the classes to other threads to generate, taking
+         * turns with the processing of the next entries. Also selected by
+         * "pipelined", though attribution does not run alongside code
+         * generation: see compileAsyncGen.
+         */
+        ASYNC_GEN;
 
         static CompilePolicy decode(String option) {
             if (option == null)
@@ -214,6 +237,8 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
                 return BY_FILE;
             else if (option.equals("bytodo"))
                 return BY_TODO;
+            else if (option.equals("asyncgen") || option.equals("pipelined"))
+                return ASYNC_GEN;
             else
                 return DEFAULT_COMPILE_POLICY;
         }
@@ -398,6 +423,9 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
         devVerbose    = options.get("dev") != null;
         processPcks   = options.get("process.packages") != null;
         werror        = options.get("-Werror")        != null;
+        warmSymbols   = options.get("warmSymbols")    != null;
+        parallelParse = threadCount(options.get("parallelParse"));
+        parallelGen   = threadCount(options.get("parallelGen"));
 
         verboseCompilePolicy = options.get("verboseCompilePolicy") != null;
 
@@ -405,6 +433,13 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
             compilePolicy = CompilePolicy.ATTR_ONLY;
         else
             compilePolicy = CompilePolicy.decode(options.get("compilePolicy"));
+        if (compilePolicy == CompilePolicy.ASYNC_GEN && parallelGen < 1)
+            parallelGen = Runtime.getRuntime().availableProcessors();
+        pipelineStats = options.get("pipelineStats") != null;
+        nameStats = options.get("nameStats") != null;
+        resolveStats = options.get("resolveStats") != null;
+        typeStats = options.get("typeStats") != null;
+        readerStats = options.get("readerStats") != null;
 
         implicitSourcePolicy = ImplicitSourcePolicy.decode(options.get("-implicit"));
 
@@ -470,6 +505,46 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
      */
     protected boolean werror;
 
+    /** Switch: keep the name table for a later compilation, together with
+     *  the platform classes read (see WarmSymbols)
+     */
+    protected boolean warmSymbols;
+
+    /** The number of threads used to parse source files; files are
+     *  parsed one at a time by the calling thread unless this is at
+     *  least two.
+     */
+    protected int parallelParse;
+
+    /** The number of threads used to generate code for the classes in a
+     *  queue; classes are generated one at a time by the calling thread
+     *  unless this is at least two.
+     */
+    protected int parallelGen;
+
+    /** Switch: print the queue depths and stall times of the stages of
+     *  the asyncgen compile policy
+     */
+    protected boolean pipelineStats;
+
+    /** Switch: print the number of names and the memory used by the name table
+     */
+    protected boolean nameStats;
+
+    /** Switch: print how many method resolutions needed each phase, and
+     *  how often the candidate sets recorded for them were reused
+     */
+    protected boolean resolveStats;
+
+    /** Switch: print how often the caches of type operations were hit
+     */
+    protected boolean typeStats;
+
+    /** Switch: print how many classes were read, and how many of them had
+     *  their members left unread
+     */
+    protected boolean readerStats;
+
     /** Switch: is annotation processing requested explitly via
      * CompilationTask.setProcessors?
      */
@@ -536,8 +611,15 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
     protected Set<JavaFileObject> inputFiles = new HashSet<JavaFileObject>();
 
     protected boolean shouldStop(CompileState cs) {
+        return shouldStop(cs, errorCount());
+    }
+
+    /** Should the compiler stop before a given state, given the
+     *  number of errors reported?
+     */
+    private boolean shouldStop(CompileState cs, int errors) {
         if (shouldStopPolicy == null)
-            return (errorCount() > 0);
+            return (errors > 0);
         else
             return cs.ordinal() > shouldStopPolicy.ordinal();
     }
@@ -830,7 +912,7 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
                     classnames);
 
             delegateCompiler.compile2();
-            delegateCompiler.close();
+            delegateCompiler.close(!warmSymbols);
             elapsed_msec = delegateCompiler.elapsed_msec;
         } catch (Abort ex) {
             if (devVerbose)
@@ -873,6 +955,10 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
                     generate(desugar(flow(attribute(todo.remove()))));
                 break;
 
+            case ASYNC_GEN:
+                compileAsyncGen();
+                break;
+
             default:
                 assert false: "unknown compile policy";
             }
@@ -886,6 +972,18 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
             printVerbose("total", Long.toString(elapsed_msec));
         }
 
+        if (nameStats)
+            printNameStats();
+
+        if (resolveStats)
+            Resolve.instance(context).printStats();
+
+        if (typeStats)
+            types.printStats(log.noticeWriter);
+
+        if (readerStats)
+            reader.printStats();
+
         reportDeferredDiagnostics();
 
         if (!log.hasDiagnosticListener()) {
@@ -903,6 +1001,9 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
        if (shouldStop(CompileState.PARSE))
            return List.nil();
 
+        if (parallelParse > 1 && fileObjects.size() > 1)
+            return parseFilesInParallel(fileObjects);
+
         //parse all files
         ListBuffer<JCCompilationUnit> trees = lb();
         for (JavaFileObject fileObject : fileObjects)
@@ -910,6 +1011,166 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
         return trees.toList();
     }
 
+    /**
+     * Parse a list of files, scanning and parsing several at a time.
+     * The files are read by the calling thread, since the file manager
+     * is not safe for use by several threads, and handed to parallelParse
+     * threads as they are read. Each file is parsed with a log of its own,
+     * whose diagnostics are deferred; these, together with the diagnostics
+     * of reading the file, the verbose output and the task events, are
+     * then reported file by file in the order given, just as they are when
+     * the files are parsed one at a time.
+     */
+    private List<JCCompilationUnit> parseFilesInParallel(List<JavaFileObject> fileObjects) {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelParse);
+        ListBuffer<ParseTask> tasks = lb();
+        try {
+            Scanner.Factory scannerFactory = getScannerFactory();
+            log.deferDiagnostics = true;
+            try {
+                for (JavaFileObject fileObject : fileObjects) {
+                    ParseTask t = new ParseTask(fileObject, scannerFactory);
+                    tasks.append(t);
+                    if (t.content != null)
+                        t.result = executor.submit(t);
+                }
+            } finally {
+                log.deferDiagnostics = false;
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        ListBuffer<JCCompilationUnit> trees = lb();
+        for (ParseTask t : tasks)
+            trees.append(t.report());
+        return trees.toList();
+    }
+    // where
+        private class ParseTask implements Callable<JCCompilationUnit> {
+            final JavaFileObject filename;
+            final CharSequence content;
+            /** The diagnostics reported while reading the file. */
+            final Queue<JCDiagnostic> readDiagnostics;
+            /** The log to which the file's parser reports. */
+            final Log parseLog;
+            final Scanner.Factory scannerFactory;
+            final Parser.Factory parserFactory;
+            Future<JCCompilationUnit> result;
+            long msec;
+
+            ParseTask(JavaFileObject filename, Scanner.Factory scannerFactory) {
+                this.filename = filename;
+                JavaFileObject prev = log.useSource(filename);
+                try {
+                    content = readSource(filename);
+                } finally {
+                    log.useSource(prev);
+                }
+                readDiagnostics = log.deferredDiagnostics;
+                log.deferredDiagnostics = new ListBuffer<JCDiagnostic>();
+                parseLog = log.deferredLog();
+                this.scannerFactory = scannerFactory.forLog(parseLog);
+                this.parserFactory = JavaCompiler.this.parserFactory.forLog(parseLog);
+            }
+
+            public JCCompilationUnit call() {
+                long start = now();
+                char[] buf;
+                int len;
+                if (content instanceof CharBuffer) {
+                    len = ((CharBuffer) content).limit();
+                    buf = JavacFileManager.toArray((CharBuffer) content);
+                } else {
+                    buf = content.toString().toCharArray();
+                    len = buf.length;
+                }
+                parseLog.useSource(filename, buf);
+                Scanner scanner = scannerFactory.newScanner(buf, len);
+                Parser parser = parserFactory.newParser(scanner, keepComments(), genEndPos);
+                JCCompilationUnit tree = parser.compilationUnit();
+                if (lineDebugInfo) {
+                    tree.lineMap = scanner.getLineMap();
+                }
+                if (tree.endPositions != null)
+                    parseLog.setEndPosTable(filename, tree.endPositions);
+                msec = elapsed(start);
+                return tree;
+            }
+
+            /** Report the outcome of reading and parsing the file, as
+             *  parse(JavaFileObject) does, and return the tree.
+             */
+            JCCompilationUnit report() {
+                JavaFileObject prev = log.useSource(filename);
+                try {
+                    for (JCDiagnostic d : readDiagnostics)
+                        log.report(d);
+                    JCCompilationUnit tree;
+                    if (content == null) {
+                        tree = make.TopLevel(List.<JCTree.JCAnnotation>nil(),
+                                             null, List.<JCTree>nil());
+                        tree.sourcefile = filename;
+                        return tree;
+                    }
+                    if (verbose) {
+                        printVerbose("parsing.started", filename);
+                    }
+                    if (taskListener != null) {
+                        TaskEvent e = new TaskEvent(TaskEvent.Kind.PARSE, filename);
+                        taskListener.started(e);
+                    }
+                    tree = getResult();
+                    int initialErrorCount = log.nerrors;
+                    for (JCDiagnostic d : parseLog.deferredDiagnostics)
+                        log.report(d);
+                    log.unrecoverableError |= (log.nerrors > initialErrorCount);
+                    if (verbose) {
+                        printVerbose("parsing.done", Long.toString(msec));
+                    }
+                    tree.sourcefile = filename;
+                    if (taskListener != null) {
+                        TaskEvent e = new TaskEvent(TaskEvent.Kind.PARSE, tree);
+                        taskListener.finished(e);
+                    }
+                    if (tree.endPositions != null)
+                        log.setEndPosTable(filename, tree.endPositions);
+                    return tree;
+                } finally {
+                    log.useSource(prev);
+                }
+            }
+
+            private JCCompilationUnit getResult() {
+                try {
+                    return result.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new Abort(e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException)
+                        throw (RuntimeException) cause;
+                    if (cause instanceof Error)
+                        throw (Error) cause;
+                    throw new AssertionError(cause);
+                }
+            }
+        }
+
+    /** The number of threads requested by an option: its value if a number,
+     *  and otherwise the number of processors; zero if the option is unset.
+     */
+    private static int threadCount(String value) {
+        if (value == null)
+            return 0;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+    }
+
     /**
      * Enter the symbols found in a list of parse trees.
      * As a side-effect, this puts elements on the "todo" list.
@@ -1377,6 +1638,12 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
 
         boolean usePrintSource = (stubOutput || sourceOutput || printFlat);
 
+        if (parallelGen > 1 && queue.size() > 1 && !usePrintSource
+            && canGenerateInParallel()) {
+            generateInParallel(queue, results);
+            return;
+        }
+
         for (Pair<Env<AttrContext>, JCClassDecl> x: queue) {
             Env<AttrContext> env = x.fst;
             JCClassDecl cdef = x.snd;
@@ -1418,6 +1685,555 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
         }
     }
 
+    /**
+     * Generate code for the classes in a queue on parallelGen threads, and
+     * write the class files on another thread; see GenPipeline.
+     */
+    private void generateInParallel(Queue<Pair<Env<AttrContext>, JCClassDecl>> queue,
+                                    Queue<JavaFileObject> results) {
+        GenPipeline p = new GenPipeline(results, Integer.MAX_VALUE);
+        try {
+            p.submit(queue);
+            p.reportAll();
+        } finally {
+            p.finish();
+        }
+    }
+
+    /**
+     * Compile the todo list as the BY_TODO policy does, except that code is
+     * generated and class files written by other threads. Attribution, flow
+     * analysis and desugaring update the symbol table everywhere, so they
+     * hold the SymbolLock of the GenPipeline exclusively: they take turns
+     * with code generation rather than running alongside it. What overlaps
+     * is the generation of classes of several entries, and the writing of
+     * class files, which goes on while the next entries are processed. The
+     * number of classes awaiting generation is bounded by twice the number
+     * of threads generating code.
+     * Running the front end alongside code generation would need every
+     * update it makes to symbols that code generation reads to be made
+     * holding the lock exclusively, whereas only completion and a few
+     * caches are.
+     */
+    private void compileAsyncGen() {
+        if (!canGenerateInParallel()) {
+            while (!todo.isEmpty())
+                generate(desugar(flow(attribute(todo.remove()))));
+            return;
+        }
+        GenPipeline p = new GenPipeline(null, 2 * parallelGen);
+        try {
+            while (!todo.isEmpty()) {
+                p.frontEndItems++;
+                p.frontEndDepth.add(todo.size());
+                Queue<Pair<Env<AttrContext>, JCClassDecl>> queue;
+                p.enterFrontEnd();
+                try {
+                    queue = desugar(flow(attribute(todo.remove())));
+                } finally {
+                    p.exitFrontEnd();
+                }
+                if (!shouldStop(CompileState.GENERATE))
+                    p.submit(queue);
+                p.reportDone();
+            }
+            p.reportAll();
+        } finally {
+            p.finish();
+            if (pipelineStats)
+                p.printStats();
+        }
+    }
+
+    /** Can classes be generated on several threads? Not if output that
+     *  is printed as it is generated is requested, nor if code generation
+     *  adds members to classes other than the one generated, nor if the
+     *  code of a class depends on the classes generated before it.
+     */
+    private boolean canGenerateInParallel() {
+        return !verbose && !verboseCompilePolicy && taskListener == null
+            && fileManager instanceof JavacFileManager
+            && !gen.needsMirandaMethods() && !gen.mayUseJsr();
+    }
+
+    /**
+     * Classes being generated on parallelGen threads, and class files being
+     * written on another thread. Each class is generated by the code
+     * generator and class writer of its thread, whose log defers its
+     * diagnostics; the symbol table is updated, for instance to complete a
+     * class, holding a SymbolLock exclusively. The diagnostics are then
+     * reported class by class in the order submitted, and the class files
+     * written, just as they are when the classes are generated one at a
+     * time. Diagnostics reported to the compiler's log while a class is
+     * completed are reported before those of the next class reported.
+     */
+    private class GenPipeline {
+        final SymbolLock lock = new SymbolLock();
+        final Queue<JavaFileObject> results;
+        /** The largest number of classes generated and not reported. */
+        final int capacity;
+        /** The classes submitted and not reported, in order. */
+        final ListBuffer<GenTask> tasks = lb();
+        /** The classes submitted for writing and not known to be written. */
+        final ListBuffer<GenTask> writes = lb();
+        final Queue<JCDiagnostic> prevDeferred;
+        /** The number of errors reported for the classes reported so far. */
+        int genErrors;
+        /** Set when a class file could not be written; no more classes
+         *  are reported or written then. */
+        boolean stopped;
+        /** Set when the queue of the class reported is not to be generated,
+         *  because of errors reported for classes before it. */
+        boolean skipping;
+
+        /** Statistics, by stage: the number of items processed, the queue
+         *  depth when one is added, and the time stalled in milliseconds. */
+        int frontEndItems, genItems, writeItems;
+        final Depth frontEndDepth = new Depth(), genDepth = new Depth(), writeDepth = new Depth();
+        long frontEndStall, writeStall;
+
+        GenPipeline(Queue<JavaFileObject> results, int capacity) {
+            if (genExecutor == null)
+                startGenThreads();
+            this.results = results;
+            this.capacity = capacity;
+            prevDeferred = log.deferredDiagnostics;
+            log.deferredDiagnostics = new ConcurrentLinkedQueue<JCDiagnostic>();
+            log.deferDiagnostics = true;
+        }
+
+        /** Start generating code for the classes in a queue, after waiting
+         *  for earlier classes to be reported if there are too many.
+         */
+        void submit(Queue<Pair<Env<AttrContext>, JCClassDecl>> queue) {
+            boolean first = true;
+            for (Pair<Env<AttrContext>, JCClassDecl> x: queue) {
+                if (tasks.size() >= capacity) {
+                    long start = now();
+                    tasks.first().await();
+                    frontEndStall += elapsed(start);
+                    reportNext();
+                }
+                GenTask t = new GenTask(x.fst, x.snd, lock);
+                t.errorsBefore = errorCount();
+                t.firstOfQueue = first;
+                first = false;
+                genItems++;
+                genDepth.add(tasks.size());
+                t.result = genExecutor.submit(t);
+                tasks.append(t);
+            }
+        }
+
+        /** Hold the lock for the stages before generating code, reporting
+         *  their diagnostics as they occur.
+         */
+        void enterFrontEnd() {
+            long start = now();
+            lock.lockExclusive();
+            frontEndStall += elapsed(start);
+            log.deferDiagnostics = false;
+            while (!log.deferredDiagnostics.isEmpty())
+                log.report(log.deferredDiagnostics.remove());
+        }
+
+        void exitFrontEnd() {
+            log.deferDiagnostics = true;
+            lock.unlockExclusive();
+        }
+
+        /** Report the classes generated so far, in order.
+         */
+        void reportDone() {
+            while (tasks.nonEmpty() && tasks.first().result.isDone())
+                reportNext();
+        }
+
+        /** Report all classes submitted, and wait until they are written.
+         */
+        void reportAll() {
+            while (tasks.nonEmpty())
+                reportNext();
+            finishWrites();
+        }
+
+        /** Report the next class, and start writing it unless there are
+         *  errors, as genCode does.
+         */
+        private void reportNext() {
+            GenTask t = tasks.remove();
+            t.await();
+            if (stopped)
+                return;
+            // as generate does for each queue
+            if (t.firstOfQueue)
+                skipping = shouldStop(CompileState.GENERATE, t.errorsBefore + genErrors);
+            if (skipping)
+                return;
+            if (t.hasDiagnostics() || !log.deferredDiagnostics.isEmpty()) {
+                // a class is not reported unless all before it were written
+                if (!finishWrites())
+                    return;
+                lock.lockExclusive();
+                JavaFileObject prev = log.useSource(t.sourcefile);
+                log.deferDiagnostics = false;
+                try {
+                    int nerrors = log.nerrors;
+                    while (!log.deferredDiagnostics.isEmpty())
+                        log.report(log.deferredDiagnostics.remove());
+                    if (t.genDiagnostics != null) {
+                        for (JCDiagnostic d : t.genDiagnostics)
+                            log.report(d);
+                    }
+                    genErrors += log.nerrors - nerrors;
+                    if (t.generated && t.errorsBefore + genErrors == 0
+                        && t.writeDiagnostics != null) {
+                        nerrors = log.nerrors;
+                        for (JCDiagnostic d : t.writeDiagnostics)
+                            log.report(d);
+                        genErrors += log.nerrors - nerrors;
+                    }
+                } finally {
+                    log.deferDiagnostics = true;
+                    log.useSource(prev);
+                    lock.unlockExclusive();
+                }
+            }
+            if (t.failure instanceof RuntimeException)
+                throw (RuntimeException) t.failure;
+            if (t.failure instanceof Error)
+                throw (Error) t.failure;
+            if (t.classFile != null && t.errorsBefore + genErrors == 0) {
+                try {
+                    // the file manager is not updated by doing so
+                    t.outFile = writer.getClassFile(t.cdef.sym);
+                } catch (IOException ex) {
+                    if (finishWrites()) {
+                        t.writeError = ex;
+                        cantWrite(t);
+                    }
+                    return;
+                }
+                while (writes.nonEmpty() && writes.first().write.isDone()
+                       && writes.first().awaitWrite() == null) {
+                    if (results != null)
+                        results.add(writes.first().outFile);
+                    writes.remove();
+                }
+                writeItems++;
+                writeDepth.add(writes.size());
+                t.write = writeExecutor.submit(t.new Write());
+                writes.append(t);
+            }
+        }
+
+        /** Wait until the class files submitted for writing are written,
+         *  adding them to the results; report the first one that could
+         *  not be written.
+         *  @return false if a class file could not be written
+         */
+        private boolean finishWrites() {
+            long start = now();
+            GenTask failed = null;
+            try {
+                for (GenTask t : writes) {
+                    t.writeError = t.awaitWrite();
+                    if (failed != null)
+                        continue; // not written
+                    if (t.writeError != null)
+                        failed = t;
+                    else if (results != null)
+                        results.add(t.outFile);
+                }
+            } finally {
+                writes.clear();
+                writeStall += elapsed(start);
+            }
+            if (failed != null)
+                cantWrite(failed);
+            return failed == null;
+        }
+
+        private void cantWrite(GenTask t) {
+            lock.lockExclusive();
+            JavaFileObject prev = log.useSource(t.sourcefile);
+            log.deferDiagnostics = false;
+            try {
+                log.error(t.cdef.pos(), "class.cant.write",
+                          t.cdef.sym, t.writeError.getMessage());
+                genErrors++;
+                stopped = true;
+            } finally {
+                log.deferDiagnostics = true;
+                log.useSource(prev);
+                lock.unlockExclusive();
+            }
+        }
+
+        /** Wait until the threads are done with the classes submitted,
+         *  and report the diagnostics still deferred.
+         */
+        void finish() {
+            for (GenTask t : tasks)
+                t.await();
+            for (GenTask t : writes)
+                t.awaitWrite();
+            writeFailed = false;
+            log.deferDiagnostics = false;
+            for (JCDiagnostic d : log.deferredDiagnostics)
+                log.report(d);
+            log.deferredDiagnostics = prevDeferred;
+        }
+
+        void printStats() {
+            long genStall = 0;
+            for (GenWorker w : genWorkers)
+                genStall += w.stall;
+            printStats("pipeline", genItems, parallelGen);
+            printStats("pipeline.stage", "attr/flow/desugar", frontEndItems,
+                       frontEndDepth.max, frontEndDepth.average(),
+                       Long.toString(frontEndStall));
+            printStats("pipeline.stage", "gen", genItems,
+                       genDepth.max, genDepth.average(), Long.toString(genStall));
+            printStats("pipeline.stage", "write", writeItems,
+                       writeDepth.max, writeDepth.average(), Long.toString(writeStall));
+        }
+
+        private void printStats(String key, Object... args) {
+            Log.printLines(log.noticeWriter,
+                           Log.getLocalizedString("verbose." + key, args));
+        }
+    }
+
+        /** The depths of a queue, sampled when an item is added.
+         */
+        private static class Depth {
+            int max;
+            long total;
+            int count;
+
+            void add(int depth) {
+                max = Math.max(max, depth);
+                total += depth;
+                count++;
+            }
+
+            String average() {
+                return String.format("%.1f", count == 0 ? 0.0 : (double) total / count);
+            }
+        }
+
+        private ExecutorService genExecutor;
+        private ExecutorService writeExecutor;
+
+        /** The code generators and class writers of the parallelGen threads,
+         *  when not in use.
+         */
+        private BlockingQueue<GenWorker> genWorkers;
+
+        private void startGenThreads() {
+            ThreadFactory daemons = new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "javac-gen");
+                    t.setDaemon(true);
+                    return t;
+                }
+            };
+            genExecutor = Executors.newFixedThreadPool(parallelGen, daemons);
+            writeExecutor = Executors.newSingleThreadExecutor(daemons);
+            genWorkers = new ArrayBlockingQueue<GenWorker>(parallelGen);
+            for (int i = 0; i < parallelGen; i++)
+                genWorkers.add(new GenWorker());
+        }
+
+        private class GenWorker {
+            final Log log = new GenLog(JavaCompiler.this.log);
+            final Gen gen = JavaCompiler.this.gen.forLog(log);
+            final ClassWriter writer = JavaCompiler.this.writer.forLog(log);
+            /** The time spent waiting for the symbol lock, in milliseconds. */
+            long stall;
+        }
+
+        private class GenTask implements Callable<Void> {
+            final Env<AttrContext> env;
+            final JCClassDecl cdef;
+            final JavaFileObject sourcefile;
+            final SymbolLock lock;
+            /** The number of errors reported when the class was submitted. */
+            int errorsBefore;
+            boolean firstOfQueue;
+            Future<Void> result;
+            Throwable failure;
+            boolean generated;
+            /** The diagnostics of generating the code, and those of
+             *  writing the class to classFile. */
+            Queue<JCDiagnostic> genDiagnostics, writeDiagnostics;
+            byte[] classFile;
+            JavaFileObject outFile;
+            Future<IOException> write;
+            IOException writeError;
+
+            GenTask(Env<AttrContext> env, JCClassDecl cdef, SymbolLock lock) {
+                this.env = env;
+                this.cdef = cdef;
+                this.sourcefile = (env.enclClass.sym.sourcefile != null ?
+                                   env.enclClass.sym.sourcefile :
+                                   env.toplevel.sourcefile);
+                this.lock = lock;
+            }
+
+            /** Generate the class and write it to classFile, as genCode does.
+             */
+            public Void call() throws InterruptedException {
+                GenWorker w = genWorkers.take();
+                long start = now();
+                lock.enter();
+                w.stall += elapsed(start);
+                try {
+                    w.log.useSource(sourcefile);
+                    try {
+                        generated = w.gen.genClass(env, cdef);
+                    } catch (CompletionFailure ex) {
+                        completionError(w.log, ex);
+                    } finally {
+                        genDiagnostics = takeDiagnostics(w.log);
+                    }
+                    if (!generated || hasError(genDiagnostics))
+                        return null;
+                    try {
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        w.writer.writeClassFile(out, cdef.sym);
+                        classFile = out.toByteArray();
+                    } catch (IOException ex) {
+                        throw new AssertionError(ex);
+                    } catch (ClassWriter.PoolOverflow ex) {
+                        w.log.error(cdef.pos(), "limit.pool");
+                    } catch (ClassWriter.StringOverflow ex) {
+                        w.log.error(cdef.pos(), "limit.string.overflow",
+                                    ex.value.substring(0, 20));
+                    } catch (CompletionFailure ex) {
+                        completionError(w.log, ex);
+                    } finally {
+                        writeDiagnostics = takeDiagnostics(w.log);
+                    }
+                    return null;
+                } finally {
+                    lock.exit();
+                    genWorkers.put(w);
+                }
+            }
+
+            private void completionError(Log log, CompletionFailure ex) {
+                log.error(cdef.pos(), "cant.access", ex.sym, ex.errmsg);
+                if (ex instanceof ClassReader.BadClassFile) throw new Abort();
+            }
+
+            boolean hasDiagnostics() {
+                return failure != null
+                    || (genDiagnostics != null && genDiagnostics.size() > 0)
+                    || (writeDiagnostics != null && writeDiagnostics.size() > 0);
+            }
+
+            /** Wait until the class is generated, or generating it failed.
+             */
+            void await() {
+                try {
+                    result.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new Abort(e);
+                } catch (ExecutionException e) {
+                    failure = e.getCause();
+                }
+            }
+
+            /** Wait until the class file is written.
+             *  @return the exception if it could not be written
+             */
+            IOException awaitWrite() {
+                try {
+                    return write.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new Abort(e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException)
+                        throw (RuntimeException) cause;
+                    if (cause instanceof Error)
+                        throw (Error) cause;
+                    throw new AssertionError(cause);
+                }
+            }
+
+            /** Write classFile to outFile, unless a class file written
+             *  before could not be.
+             */
+            class Write implements Callable<IOException> {
+                public IOException call() {
+                    if (writeFailed)
+                        return null;
+                    try {
+                        ClassWriter.writeClassFile(outFile, classFile);
+                        return null;
+                    } catch (IOException ex) {
+                        writeFailed = true;
+                        return ex;
+                    }
+                }
+            }
+        }
+
+        /** Set when a class file could not be written; cleared when all
+         *  class files submitted for writing are written.
+         */
+        private volatile boolean writeFailed;
+
+        private static Queue<JCDiagnostic> takeDiagnostics(Log log) {
+            Queue<JCDiagnostic> q = log.deferredDiagnostics;
+            log.deferredDiagnostics = new ListBuffer<JCDiagnostic>();
+            return q;
+        }
+
+        private static boolean hasError(Queue<JCDiagnostic> diagnostics) {
+            for (JCDiagnostic d : diagnostics) {
+                if (d.getType() == JCDiagnostic.DiagnosticType.ERROR)
+                    return true;
+            }
+            return false;
+        }
+
+    /** A log for a code generating thread, whose diagnostics are deferred.
+     *  Finding the line of a position may read the source file through the
+     *  file manager, which is done holding the SymbolLock exclusively.
+     */
+    private static class GenLog extends Log {
+        GenLog(Log log) {
+            super(log);
+            deferDiagnostics = true;
+        }
+
+        @Override
+        protected int getLineNumber(int pos) {
+            SymbolLock lock = SymbolLock.lockForUpdate();
+            try {
+                return super.getLineNumber(pos);
+            } finally {
+                SymbolLock.unlockForUpdate(lock);
+            }
+        }
+
+        @Override
+        protected int getColumnNumber(int pos) {
+            SymbolLock lock = SymbolLock.lockForUpdate();
+            try {
+                return super.getColumnNumber(pos);
+            } finally {
+                SymbolLock.unlockForUpdate(lock);
+            }
+        }
+    }
+
         // where
         Map<JCCompilationUnit, Queue<Env<AttrContext>>> groupByFile(Queue<Env<AttrContext>> envs) {
             // use a LinkedHashMap to preserve the order of the original list as much as possible
@@ -1506,6 +2322,12 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
 
     public void close(boolean disposeNames) {
         rootClasses = null;
+        if (genExecutor != null) {
+            genExecutor.shutdown();
+            writeExecutor.shutdown();
+            genExecutor = writeExecutor = null;
+            genWorkers = null;
+        }
         reader = null;
         make = null;
         writer = null;
@@ -1537,6 +2359,23 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
         }
     }
 
+    /** Print the memory used by the name table, in total and per name, and
+     *  what it would have been with all names in a single array.
+     */
+    protected void printNameStats() {
+        int count = Math.max(1, names.getNameCount());
+        long memory = names.estimateMemory(false);
+        long arrayMemory = names.estimateMemory(true);
+        Log.printLines(log.noticeWriter,
+                       Log.getLocalizedString("verbose.names",
+                                              Integer.toString(names.getNameCount()),
+                                              Long.toString(names.getNameBytes()),
+                                              Long.toString(memory),
+                                              Long.toString(memory / count),
+                                              Long.toString(arrayMemory),
+                                              Long.toString(arrayMemory / count)));
+    }
+
     protected void printNote(String lines) {
         Log.printLines(log.noticeWriter, lines);
     }
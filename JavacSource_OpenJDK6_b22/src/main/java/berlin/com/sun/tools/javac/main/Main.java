@@ -335,6 +335,8 @@ public class Main {
         filenames = new ListBuffer<File>();
         classnames = new ListBuffer<String>();
         JavaCompiler comp = null;
+        WarmSymbols warm = null;
+        boolean completed = false;
         /*
          * TODO: Logic below about what is an acceptable command line should be
          * updated to take annotation processing semantics into account.
@@ -380,6 +382,9 @@ public class Main {
 
             fileManager = context.get(JavaFileManager.class);
 
+            if (options.get("warmSymbols") != null)
+                warm = WarmSymbols.checkout(context);
+
             comp = JavaCompiler.instance(context);
             if (comp == null)
                 return EXIT_SYSERR;
@@ -395,6 +400,7 @@ public class Main {
                     fileObjects = fileObjects.prepend(fo);
             }
             comp.compile(fileObjects, classnames.toList(), processors);
+            completed = true;
 
             if (comp.errorCount() != 0)
                 return EXIT_ERROR;
@@ -427,8 +433,11 @@ public class Main {
                 bugMessage(ex);
             return EXIT_ABNORMAL;
         } finally {
-            if (comp != null)
-                comp.close();
+            if (comp != null) {
+                comp.close(warm == null);
+                if (warm != null)
+                    warm.checkin(context, comp, completed);
+            }
             filenames = null;
             options = null;
         }
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package berlin.com.sun.tools.javac.main;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import berlin.com.sun.tools.javac.code.Source;
+import berlin.com.sun.tools.javac.code.Symtab;
+import berlin.com.sun.tools.javac.jvm.ClassReader;
+import berlin.com.sun.tools.javac.jvm.Target;
+import berlin.com.sun.tools.javac.util.Context;
+import berlin.com.sun.tools.javac.util.List;
+import berlin.com.sun.tools.javac.util.Log;
+import berlin.com.sun.tools.javac.util.Name;
+import berlin.com.sun.tools.javac.util.Options;
+import berlin.javax.tools.JavaFileManager;
+import berlin.javax.tools.StandardJavaFileManager;
+
+import static berlin.javax.tools.StandardLocation.PLATFORM_CLASS_PATH;
+
+/**
+ * Keeps the classes read from the platform class path resident between
+ * compilations made by the same VM, such as those of the compile server.
+ * Enabled with -XDwarmSymbols.
+ *
+ * <p>Before a compilation, {@link #checkout} seeds the new context with the
+ * name table and symbol table (and so the class reader) of an earlier
+ * compilation that used the same source, target and platform class path,
+ * provided no archive on that path has changed size or modification time
+ * since. After the compilation, {@link #checkin} drops everything but the
+ * platform classes and makes the symbols available again. A set of symbols
+ * is used by one compilation at a time; concurrent compilations get their
+ * own. Idle sets are softly referenced, as the name tables are.
+ *
+ * <p>The compile server compiles every request with -XDwarmSymbols, so
+ * its requests share these symbols as well as the file system cache
+ * (CacheFSInfo) and the static ZipFileIndex cache. The classes of one
+ * request are not seen by the next: {@link ClassReader#retainPlatformClasses}
+ * drops every class not read from the platform class path and resets every
+ * package, so that its members are listed again.
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+public class WarmSymbols {
+
+    /** Idle symbol sets, by key.
+     */
+    private static final Map<String, List<SoftReference<WarmSymbols>>> idle =
+        new HashMap<String, List<SoftReference<WarmSymbols>>>();
+
+    /** The largest number of idle symbol sets kept for one key.
+     */
+    private static final int maxIdle = Runtime.getRuntime().availableProcessors();
+
+    private final String key;
+
+    /** Length and modification time of each platform class path entry.
+     */
+    private final Map<File, String> stamps;
+
+    private Name.Table names;
+    private Symtab syms;
+
+    /** The number of classes kept after the last compilation.
+     */
+    private int retained;
+
+    private WarmSymbols(String key, Map<File, String> stamps) {
+        this.key = key;
+        this.stamps = stamps;
+    }
+
+    /**
+     * Prepare a context for a compilation, reusing the symbols of an
+     * earlier compilation if possible. Must be called after the options
+     * have been processed and before the compiler is created.
+     *
+     * @return the symbols to be returned with {@link #checkin}, or null if
+     *         the file manager or the platform class path cannot be used
+     */
+    public static WarmSymbols checkout(Context context) {
+        JavaFileManager fm = context.get(JavaFileManager.class);
+        if (!(fm instanceof StandardJavaFileManager))
+            return null;
+        Iterable<? extends File> path = ((StandardJavaFileManager) fm).getLocation(PLATFORM_CLASS_PATH);
+        if (path == null)
+            return null;
+
+        Options options = Options.instance(context);
+        StringBuilder sb = new StringBuilder();
+        sb.append(Source.instance(context).name).append(File.pathSeparatorChar);
+        sb.append(Target.instance(context).name).append(File.pathSeparatorChar);
+        sb.append(options.get("save-parameter-names") != null).append(File.pathSeparatorChar);
+        sb.append(options.get("dev") != null);
+        Map<File, String> stamps = new LinkedHashMap<File, String>();
+        for (File f : path) {
+            // the contents of a directory cannot be checked cheaply
+            if (f.isDirectory())
+                return null;
+            stamps.put(f, stamp(f));
+            sb.append(File.pathSeparatorChar).append(f.getPath());
+        }
+        String key = sb.toString();
+
+        WarmSymbols w = take(key, stamps);
+        if (w == null)
+            return new WarmSymbols(key, stamps);
+
+        context.put(Name.Table.namesKey, w.names);
+        w.syms.setContext(context);
+        if (options.get("-verbose") != null)
+            Log.printLines(Log.instance(context).noticeWriter,
+                           Log.getLocalizedString("verbose.warm.symbols", w.retained));
+        return w;
+    }
+
+    /**
+     * Make the platform classes read in a context available to later
+     * compilations.
+     *
+     * @param ok false if the compilation did not complete normally, in which
+     *           case the symbols are dropped
+     */
+    public void checkin(Context context, JavaCompiler compiler, boolean ok) {
+        // annotation processing continues in contexts with a symbol
+        // table of their own
+        if (!ok || compiler.annotationProcessingOccurred)
+            return;
+        if (names == null) {
+            names = Name.Table.instance(context);
+            syms = Symtab.instance(context);
+        }
+        retained = ClassReader.instance(context).retainPlatformClasses();
+        synchronized (idle) {
+            List<SoftReference<WarmSymbols>> l = idle.get(key);
+            if (l == null)
+                l = List.nil();
+            if (l.length() < maxIdle)
+                idle.put(key, l.prepend(new SoftReference<WarmSymbols>(this)));
+        }
+    }
+
+    private static WarmSymbols take(String key, Map<File, String> stamps) {
+        synchronized (idle) {
+            List<SoftReference<WarmSymbols>> l = idle.get(key);
+            if (l == null)
+                return null;
+            WarmSymbols result = null;
+            while (result == null && l.nonEmpty()) {
+                WarmSymbols w = l.head.get();
+                l = l.tail;
+                if (w != null && w.stamps.equals(stamps))
+                    result = w;
+            }
+            if (l.isEmpty())
+                idle.remove(key);
+            else
+                idle.put(key, l);
+            return result;
+        }
+    }
+
+    private static String stamp(File f) {
+        return f.length() + "@" + f.lastModified();
+    }
+}
@@ -118,9 +118,9 @@ public class AnnotationProxyMaker {
 
         // First find the default values.
         ClassSymbol sym = (ClassSymbol) anno.type.tsym;
-        for (Scope.Entry e = sym.members().elems; e != null; e = e.sibling) {
-            if (e.sym.kind == Kinds.MTH) {
-                MethodSymbol m = (MethodSymbol) e.sym;
+        for (Symbol member : sym.members().getLocalElements()) {
+            if (member.kind == Kinds.MTH) {
+                MethodSymbol m = (MethodSymbol) member;
                 Attribute def = m.getDefaultValue();
                 if (def != null)
                     res.put(m, def);
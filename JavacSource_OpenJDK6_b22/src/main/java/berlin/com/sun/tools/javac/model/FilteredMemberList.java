@@ -55,17 +55,17 @@ public class FilteredMemberList extends AbstractList<Symbol> {
 
     public int size() {
         int cnt = 0;
-        for (Scope.Entry e = scope.elems; e != null; e = e.sibling) {
-            if (!unwanted(e.sym))
+        for (Symbol sym : scope.getLocalElements()) {
+            if (!unwanted(sym))
                 cnt++;
         }
         return cnt;
     }
 
     public Symbol get(int index) {
-        for (Scope.Entry e = scope.elems; e != null; e = e.sibling) {
-            if (!unwanted(e.sym) && (index-- == 0))
-                return e.sym;
+        for (Symbol sym : scope.getLocalElements()) {
+            if (!unwanted(sym) && (index-- == 0))
+                return sym;
         }
         throw new IndexOutOfBoundsException();
     }
@@ -74,27 +74,25 @@ public class FilteredMemberList extends AbstractList<Symbol> {
     public Iterator<Symbol> iterator() {
         return new Iterator<Symbol>() {
 
-            /** The next entry to examine, or null if none. */
-            private Scope.Entry nextEntry = scope.elems;
+            /** The symbols of the scope. */
+            private final Iterator<Symbol> elems = scope.getLocalElements().iterator();
 
-            private boolean hasNextForSure = false;
+            /** The next symbol to return, or null if none. */
+            private Symbol nextSym = null;
 
             public boolean hasNext() {
-                if (hasNextForSure) {
-                    return true;
+                while (nextSym == null && elems.hasNext()) {
+                    Symbol sym = elems.next();
+                    if (!unwanted(sym))
+                        nextSym = sym;
                 }
-                while (nextEntry != null && unwanted(nextEntry.sym)) {
-                    nextEntry = nextEntry.sibling;
-                }
-                hasNextForSure = (nextEntry != null);
-                return hasNextForSure;
+                return nextSym != null;
             }
 
             public Symbol next() {
                 if (hasNext()) {
-                    Symbol result = nextEntry.sym;
-                    nextEntry = nextEntry.sibling;
-                    hasNextForSure = false;
+                    Symbol result = nextSym;
+                    nextSym = null;
                     return result;
                 } else {
                     throw new NoSuchElementException();
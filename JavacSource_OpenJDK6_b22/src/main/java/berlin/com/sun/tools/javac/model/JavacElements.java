@@ -36,6 +36,7 @@ import berlin.com.sun.tools.javac.code.Flags;
 import berlin.com.sun.tools.javac.code.Kinds;
 import berlin.com.sun.tools.javac.code.Scope;
 import berlin.com.sun.tools.javac.code.Symbol;
+import berlin.com.sun.tools.javac.code.SymbolLock;
 import berlin.com.sun.tools.javac.code.Symtab;
 import berlin.com.sun.tools.javac.code.Type;
 import berlin.com.sun.tools.javac.code.TypeTags;
@@ -83,6 +84,10 @@ import berlin.javax.tools.JavaFileObject;
 /**
  * Utility methods for operating on program elements.
  *
+ * <p>Methods that look up names or compare types hold the SymbolLock
+ * exclusively, as annotation processors run on several threads may call
+ * them at once.
+ *
  * <p><b>This is NOT part of any supported API.
  * If you write code that depends on this, you do so at your own
  * risk.  This code and its internal interfaces are subject to change
@@ -190,12 +195,14 @@ public class JavacElements implements Elements {
      */
     private <S extends Symbol> S nameToSymbol(String nameStr, Class<S> clazz) {
         Name name = names.fromString(nameStr);
-        // First check cache.
-        Symbol sym = (clazz == ClassSymbol.class)
-                    ? syms.classes.get(name)
-                    : syms.packages.get(name);
-
+        // resolving the name may enter classes and packages
+        SymbolLock lock = SymbolLock.lockForUpdate();
         try {
+            // First check cache.
+            Symbol sym = (clazz == ClassSymbol.class)
+                        ? syms.classes.get(name)
+                        : syms.packages.get(name);
+
             if (sym == null)
                 sym = javaCompiler.resolveIdent(nameStr);
 
@@ -209,6 +216,8 @@ public class JavacElements implements Elements {
                 : null;
         } catch (CompletionFailure e) {
             return null;
+        } finally {
+            SymbolLock.unlockForUpdate(lock);
         }
     }
 
@@ -416,55 +425,65 @@ public class JavacElements implements Elements {
 
     public Map<MethodSymbol, Attribute> getElementValuesWithDefaults(
                                                         AnnotationMirror a) {
-        Attribute.Compound anno = cast(Attribute.Compound.class, a);
-        DeclaredType annotype = a.getAnnotationType();
-        Map<MethodSymbol, Attribute> valmap = anno.getElementValues();
-
-        for (ExecutableElement ex :
-                 methodsIn(annotype.asElement().getEnclosedElements())) {
-            MethodSymbol meth = (MethodSymbol) ex;
-            Attribute defaultValue = meth.getDefaultValue();
-            if (defaultValue != null && !valmap.containsKey(meth)) {
-                valmap.put(meth, defaultValue);
+        SymbolLock lock = SymbolLock.lockForUpdate();
+        try {
+            Attribute.Compound anno = cast(Attribute.Compound.class, a);
+            DeclaredType annotype = a.getAnnotationType();
+            Map<MethodSymbol, Attribute> valmap = anno.getElementValues();
+
+            for (ExecutableElement ex :
+                     methodsIn(annotype.asElement().getEnclosedElements())) {
+                MethodSymbol meth = (MethodSymbol) ex;
+                Attribute defaultValue = meth.getDefaultValue();
+                if (defaultValue != null && !valmap.containsKey(meth)) {
+                    valmap.put(meth, defaultValue);
+                }
             }
+            return valmap;
+        } finally {
+            SymbolLock.unlockForUpdate(lock);
         }
-        return valmap;
     }
 
     /**
      * {@inheritDoc}
      */
     public FilteredMemberList getAllMembers(TypeElement element) {
-        Symbol sym = cast(Symbol.class, element);
-        Scope scope = sym.members().dupUnshared();
-        List<Type> closure = types.closure(sym.asType());
-        for (Type t : closure)
-            addMembers(scope, t);
-        return new FilteredMemberList(scope);
+        SymbolLock lock = SymbolLock.lockForUpdate();
+        try {
+            Symbol sym = cast(Symbol.class, element);
+            Scope scope = sym.members().dupUnshared();
+            List<Type> closure = types.closure(sym.asType());
+            for (Type t : closure)
+                addMembers(scope, t);
+            return new FilteredMemberList(scope);
+        } finally {
+            SymbolLock.unlockForUpdate(lock);
+        }
     }
     // where
         private void addMembers(Scope scope, Type type) {
             members:
-            for (Scope.Entry e = type.asElement().members().elems; e != null; e = e.sibling) {
-                Scope.Entry overrider = scope.lookup(e.sym.getSimpleName());
+            for (Symbol sym : type.asElement().members().getLocalElements()) {
+                Scope.Entry overrider = scope.lookup(sym.getSimpleName());
                 while (overrider.scope != null) {
-                    if (overrider.sym.kind == e.sym.kind
+                    if (overrider.sym.kind == sym.kind
                         && (overrider.sym.flags() & Flags.SYNTHETIC) == 0)
                     {
                         if (overrider.sym.getKind() == ElementKind.METHOD
-                        && overrides((ExecutableElement)overrider.sym, (ExecutableElement)e.sym, (TypeElement)type.asElement())) {
+                        && overrides((ExecutableElement)overrider.sym, (ExecutableElement)sym, (TypeElement)type.asElement())) {
                             continue members;
                         }
                     }
                     overrider = overrider.next();
                 }
-                boolean derived = e.sym.getEnclosingElement() != scope.owner;
-                ElementKind kind = e.sym.getKind();
+                boolean derived = sym.getEnclosingElement() != scope.owner;
+                ElementKind kind = sym.getKind();
                 boolean initializer = kind == ElementKind.CONSTRUCTOR
                     || kind == ElementKind.INSTANCE_INIT
                     || kind == ElementKind.STATIC_INIT;
-                if (!derived || (!initializer && e.sym.isInheritedIn(scope.owner, types)))
-                    scope.enter(e.sym);
+                if (!derived || (!initializer && sym.isInheritedIn(scope.owner, types)))
+                    scope.enter(sym);
             }
         }
 
@@ -476,24 +495,29 @@ public class JavacElements implements Elements {
      * @return all annotations of the element
      */
     public List<Attribute.Compound> getAllAnnotationMirrors(Element e) {
-        Symbol sym = cast(Symbol.class, e);
-        List<Attribute.Compound> annos = sym.getAnnotationMirrors();
-        while (sym.getKind() == ElementKind.CLASS) {
-            Type sup = ((ClassSymbol) sym).getSuperclass();
-            if (sup.tag != TypeTags.CLASS || sup.isErroneous() ||
-                    sup.tsym == syms.objectType.tsym) {
-                break;
-            }
-            sym = sup.tsym;
-            List<Attribute.Compound> oldAnnos = annos;
-            for (Attribute.Compound anno : sym.getAnnotationMirrors()) {
-                if (isInherited(anno.type) &&
-                        !containsAnnoOfType(oldAnnos, anno.type)) {
-                    annos = annos.prepend(anno);
+        SymbolLock lock = SymbolLock.lockForUpdate();
+        try {
+            Symbol sym = cast(Symbol.class, e);
+            List<Attribute.Compound> annos = sym.getAnnotationMirrors();
+            while (sym.getKind() == ElementKind.CLASS) {
+                Type sup = ((ClassSymbol) sym).getSuperclass();
+                if (sup.tag != TypeTags.CLASS || sup.isErroneous() ||
+                        sup.tsym == syms.objectType.tsym) {
+                    break;
+                }
+                sym = sup.tsym;
+                List<Attribute.Compound> oldAnnos = annos;
+                for (Attribute.Compound anno : sym.getAnnotationMirrors()) {
+                    if (isInherited(anno.type) &&
+                            !containsAnnoOfType(oldAnnos, anno.type)) {
+                        annos = annos.prepend(anno);
+                    }
                 }
             }
+            return annos;
+        } finally {
+            SymbolLock.unlockForUpdate(lock);
         }
-        return annos;
     }
 
     /**
@@ -521,61 +545,71 @@ public class JavacElements implements Elements {
     }
 
     public boolean hides(Element hiderEl, Element hideeEl) {
-        Symbol hider = cast(Symbol.class, hiderEl);
-        Symbol hidee = cast(Symbol.class, hideeEl);
-
-        // Fields only hide fields; methods only methods; types only types.
-        // Names must match.  Nothing hides itself (just try it).
-        if (hider == hidee ||
-                hider.kind != hidee.kind ||
-                hider.name != hidee.name) {
-            return false;
-        }
+        SymbolLock lock = SymbolLock.lockForUpdate();
+        try {
+            Symbol hider = cast(Symbol.class, hiderEl);
+            Symbol hidee = cast(Symbol.class, hideeEl);
+
+            // Fields only hide fields; methods only methods; types only types.
+            // Names must match.  Nothing hides itself (just try it).
+            if (hider == hidee ||
+                    hider.kind != hidee.kind ||
+                    hider.name != hidee.name) {
+                return false;
+            }
+
+            // Only static methods can hide other methods.
+            // Methods only hide methods with matching signatures.
+            if (hider.kind == Kinds.MTH) {
+                if (!hider.isStatic() ||
+                            !types.isSubSignature(hider.type, hidee.type)) {
+                    return false;
+                }
+            }
 
-        // Only static methods can hide other methods.
-        // Methods only hide methods with matching signatures.
-        if (hider.kind == Kinds.MTH) {
-            if (!hider.isStatic() ||
-                        !types.isSubSignature(hider.type, hidee.type)) {
+            // Hider must be in a subclass of hidee's class.
+            // Note that if M1 hides M2, and M2 hides M3, and M3 is accessible
+            // in M1's class, then M1 and M2 both hide M3.
+            ClassSymbol hiderClass = hider.owner.enclClass();
+            ClassSymbol hideeClass = hidee.owner.enclClass();
+            if (hiderClass == null || hideeClass == null ||
+                    !hiderClass.isSubClass(hideeClass, types)) {
                 return false;
             }
-        }
 
-        // Hider must be in a subclass of hidee's class.
-        // Note that if M1 hides M2, and M2 hides M3, and M3 is accessible
-        // in M1's class, then M1 and M2 both hide M3.
-        ClassSymbol hiderClass = hider.owner.enclClass();
-        ClassSymbol hideeClass = hidee.owner.enclClass();
-        if (hiderClass == null || hideeClass == null ||
-                !hiderClass.isSubClass(hideeClass, types)) {
-            return false;
+            // Hidee must be accessible in hider's class.
+            // The method isInheritedIn is poorly named:  it checks only access.
+            return hidee.isInheritedIn(hiderClass, types);
+        } finally {
+            SymbolLock.unlockForUpdate(lock);
         }
-
-        // Hidee must be accessible in hider's class.
-        // The method isInheritedIn is poorly named:  it checks only access.
-        return hidee.isInheritedIn(hiderClass, types);
     }
 
     public boolean overrides(ExecutableElement riderEl,
                              ExecutableElement rideeEl, TypeElement typeEl) {
-        MethodSymbol rider = cast(MethodSymbol.class, riderEl);
-        MethodSymbol ridee = cast(MethodSymbol.class, rideeEl);
-        ClassSymbol origin = cast(ClassSymbol.class, typeEl);
+        SymbolLock lock = SymbolLock.lockForUpdate();
+        try {
+            MethodSymbol rider = cast(MethodSymbol.class, riderEl);
+            MethodSymbol ridee = cast(MethodSymbol.class, rideeEl);
+            ClassSymbol origin = cast(ClassSymbol.class, typeEl);
 
-        return rider.name == ridee.name &&
+            return rider.name == ridee.name &&
 
-               // not reflexive as per JLS
-               rider != ridee &&
+                   // not reflexive as per JLS
+                   rider != ridee &&
 
-               // we don't care if ridee is static, though that wouldn't
-               // compile
-               !rider.isStatic() &&
+                   // we don't care if ridee is static, though that wouldn't
+                   // compile
+                   !rider.isStatic() &&
 
-               // Symbol.overrides assumes the following
-               ridee.isMemberOf(origin, types) &&
+                   // Symbol.overrides assumes the following
+                   ridee.isMemberOf(origin, types) &&
 
-               // check access and signatures; don't check return types
-               rider.overrides(ridee, origin, types, false);
+                   // check access and signatures; don't check return types
+                   rider.overrides(ridee, origin, types, false);
+        } finally {
+            SymbolLock.unlockForUpdate(lock);
+        }
     }
 
     public String getConstantExpression(Object value) {
@@ -38,6 +38,10 @@ import berlin.javax.lang.model.type.*;
 /**
  * Utility methods for operating on types.
  *
+ * <p>Annotation processors run on several threads may call these at
+ * once. The type operations record the comparisons in progress, so they
+ * are done holding the SymbolLock exclusively.
+ *
  * <p><b>This is NOT part of any supported API.
  * If you write code that depends on this, you do so at your own
  * risk.  This code and its internal interfaces are subject to change
@@ -86,62 +90,112 @@ public class JavacTypes implements berlin.javax.lang.model.util.Types {
     }
 
     public boolean isSameType(TypeMirror t1, TypeMirror t2) {
-        return types.isSameType((Type) t1, (Type) t2);
+        SymbolLock lock = SymbolLock.lockForUpdate();
+        try {
+            return types.isSameType((Type) t1, (Type) t2);
+        } finally {
+            SymbolLock.unlockForUpdate(lock);
+        }
     }
 
     public boolean isSubtype(TypeMirror t1, TypeMirror t2) {
-        validateTypeNotIn(t1, EXEC_OR_PKG);
-        validateTypeNotIn(t2, EXEC_OR_PKG);
-        return types.isSubtype((Type) t1, (Type) t2);
+        SymbolLock lock = SymbolLock.lockForUpdate();
+        try {
+            validateTypeNotIn(t1, EXEC_OR_PKG);
+            validateTypeNotIn(t2, EXEC_OR_PKG);
+            return types.isSubtype((Type) t1, (Type) t2);
+        } finally {
+            SymbolLock.unlockForUpdate(lock);
+        }
     }
 
     public boolean isAssignable(TypeMirror t1, TypeMirror t2) {
-        validateTypeNotIn(t1, EXEC_OR_PKG);
-        validateTypeNotIn(t2, EXEC_OR_PKG);
-        return types.isAssignable((Type) t1, (Type) t2);
+        SymbolLock lock = SymbolLock.lockForUpdate();
+        try {
+            validateTypeNotIn(t1, EXEC_OR_PKG);
+            validateTypeNotIn(t2, EXEC_OR_PKG);
+            return types.isAssignable((Type) t1, (Type) t2);
+        } finally {
+            SymbolLock.unlockForUpdate(lock);
+        }
     }
 
     public boolean contains(TypeMirror t1, TypeMirror t2) {
-        validateTypeNotIn(t1, EXEC_OR_PKG);
-        validateTypeNotIn(t2, EXEC_OR_PKG);
-        return ((Type) t1).contains((Type) t2);
+        SymbolLock lock = SymbolLock.lockForUpdate();
+        try {
+            validateTypeNotIn(t1, EXEC_OR_PKG);
+            validateTypeNotIn(t2, EXEC_OR_PKG);
+            return ((Type) t1).contains((Type) t2);
+        } finally {
+            SymbolLock.unlockForUpdate(lock);
+        }
     }
 
     public boolean isSubsignature(ExecutableType m1, ExecutableType m2) {
-        return types.isSubSignature((Type) m1, (Type) m2);
+        SymbolLock lock = SymbolLock.lockForUpdate();
+        try {
+            return types.isSubSignature((Type) m1, (Type) m2);
+        } finally {
+            SymbolLock.unlockForUpdate(lock);
+        }
     }
 
     public List<Type> directSupertypes(TypeMirror t) {
-        validateTypeNotIn(t, EXEC_OR_PKG);
-        Type type = (Type) t;
-        Type sup = types.supertype(type);
-        return (sup == Type.noType || sup == type || sup == null)
-              ? types.interfaces(type)
-              : types.interfaces(type).prepend(sup);
+        SymbolLock lock = SymbolLock.lockForUpdate();
+        try {
+            validateTypeNotIn(t, EXEC_OR_PKG);
+            Type type = (Type) t;
+            Type sup = types.supertype(type);
+            return (sup == Type.noType || sup == type || sup == null)
+                  ? types.interfaces(type)
+                  : types.interfaces(type).prepend(sup);
+        } finally {
+            SymbolLock.unlockForUpdate(lock);
+        }
     }
 
     public TypeMirror erasure(TypeMirror t) {
-        if (t.getKind() == TypeKind.PACKAGE)
-            throw new IllegalArgumentException(t.toString());
-        return types.erasure((Type) t);
+        SymbolLock lock = SymbolLock.lockForUpdate();
+        try {
+            if (t.getKind() == TypeKind.PACKAGE)
+                throw new IllegalArgumentException(t.toString());
+            return types.erasure((Type) t);
+        } finally {
+            SymbolLock.unlockForUpdate(lock);
+        }
     }
 
     public TypeElement boxedClass(PrimitiveType p) {
-        return types.boxedClass((Type) p);
+        SymbolLock lock = SymbolLock.lockForUpdate();
+        try {
+            return types.boxedClass((Type) p);
+        } finally {
+            SymbolLock.unlockForUpdate(lock);
+        }
     }
 
     public PrimitiveType unboxedType(TypeMirror t) {
-        if (t.getKind() != TypeKind.DECLARED)
-            throw new IllegalArgumentException(t.toString());
-        Type unboxed = types.unboxedType((Type) t);
-        if (! unboxed.isPrimitive())    // only true primitives, not void
-            throw new IllegalArgumentException(t.toString());
-        return unboxed;
+        SymbolLock lock = SymbolLock.lockForUpdate();
+        try {
+            if (t.getKind() != TypeKind.DECLARED)
+                throw new IllegalArgumentException(t.toString());
+            Type unboxed = types.unboxedType((Type) t);
+            if (! unboxed.isPrimitive())    // only true primitives, not void
+                throw new IllegalArgumentException(t.toString());
+            return unboxed;
+        } finally {
+            SymbolLock.unlockForUpdate(lock);
+        }
     }
 
     public TypeMirror capture(TypeMirror t) {
-        validateTypeNotIn(t, EXEC_OR_PKG);
-        return types.capture((Type) t);
+        SymbolLock lock = SymbolLock.lockForUpdate();
+        try {
+            validateTypeNotIn(t, EXEC_OR_PKG);
+            return types.capture((Type) t);
+        } finally {
+            SymbolLock.unlockForUpdate(lock);
+        }
     }
 
     public PrimitiveType getPrimitiveType(TypeKind kind) {
@@ -273,11 +327,16 @@ public class JavacTypes implements berlin.javax.lang.model.util.Types {
      *          for the given type
      */
     public TypeMirror asMemberOf(DeclaredType containing, Element element) {
-        Type site = (Type)containing;
-        Symbol sym = (Symbol)element;
-        if (types.asSuper(site, sym.getEnclosingElement()) == null)
-            throw new IllegalArgumentException(sym + "@" + site);
-        return types.memberType(site, sym);
+        SymbolLock lock = SymbolLock.lockForUpdate();
+        try {
+            Type site = (Type)containing;
+            Symbol sym = (Symbol)element;
+            if (types.asSuper(site, sym.getEnclosingElement()) == null)
+                throw new IllegalArgumentException(sym + "@" + site);
+            return types.memberType(site, sym);
+        } finally {
+            SymbolLock.unlockForUpdate(lock);
+        }
     }
 
 
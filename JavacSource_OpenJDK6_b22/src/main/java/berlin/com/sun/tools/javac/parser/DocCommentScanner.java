@@ -59,6 +59,17 @@ public class DocCommentScanner extends Scanner {
             super(context);
         }
 
+        /** Create a scanner factory that is like a given one, but reports
+         *  to another log. */
+        protected Factory(Factory fac, Log log) {
+            super(fac, log);
+        }
+
+        @Override
+        public Factory forLog(Log log) {
+            return new Factory(this, log);
+        }
+
         @Override
         public Scanner newScanner(CharSequence input) {
             if (input instanceof CharBuffer) {
@@ -169,6 +169,25 @@ public class Parser {
             this.options = Options.instance(context);
         }
 
+        /** Create a parser factory that is like a given one, but has a
+         *  tree factory of its own and reports to another log. */
+        protected Factory(Factory fac, Log log) {
+            this.F = fac.F.forToplevel(null);
+            this.log = log;
+            this.names = fac.names;
+            this.keywords = fac.keywords;
+            this.source = fac.source;
+            this.options = fac.options;
+        }
+
+        /** Create a parser factory, not registered in any context, whose
+         *  parsers report to the given log. Parsers made by different
+         *  factories may run in different threads at the same time.
+         */
+        public Factory forLog(Log log) {
+            return new Factory(this, log);
+        }
+
         /**
          * Create a new Parser.
          * @param S Lexer for getting tokens while parsing
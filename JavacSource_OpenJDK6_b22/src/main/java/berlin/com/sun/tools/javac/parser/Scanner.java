@@ -95,6 +95,23 @@ public class Scanner implements Lexer {
             this.keywords = Keywords.instance(context);
         }
 
+        /** Create a scanner factory that is like a given one, but reports
+         *  to another log. */
+        protected Factory(Factory fac, Log log) {
+            this.log = log;
+            this.names = fac.names;
+            this.source = fac.source;
+            this.keywords = fac.keywords;
+        }
+
+        /** Create a scanner factory, not registered in any context, that
+         *  makes the same kind of scanner as this one but reports to the
+         *  given log. Subclasses should override this method.
+         */
+        public Factory forLog(Log log) {
+            return new Factory(this, log);
+        }
+
         public Scanner newScanner(CharSequence input) {
             if (input instanceof CharBuffer) {
                 return new Scanner(this, (CharBuffer)input);
@@ -252,16 +252,39 @@ public class JavacFiler implements Filer, Closeable {
             this.fileObject = fileObject;
         }
 
+        @Override
+        public void write(int b) throws IOException {
+            long start = (profile != null) ? System.nanoTime() : 0;
+            out.write(b);
+            if (profile != null)
+                profile.filerTime(start);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            // FilterOutputStream would write the bytes one at a time
+            long start = (profile != null) ? System.nanoTime() : 0;
+            out.write(b, off, len);
+            if (profile != null)
+                profile.filerTime(start);
+        }
+
         public synchronized void close() throws IOException {
             if (!closed) {
                 closed = true;
+                long start = (profile != null) ? System.nanoTime() : 0;
                 /*
                  * If an IOException occurs when closing the underlying
                  * stream, still try to process the file.
                  */
 
-                closeFileObject(typeName, fileObject);
-                out.close();
+                try {
+                    closeFileObject(typeName, fileObject);
+                    out.close();
+                } finally {
+                    if (profile != null)
+                        profile.filerTime(start);
+                }
             }
         }
     }
@@ -287,16 +310,46 @@ public class JavacFiler implements Filer, Closeable {
             this.fileObject = fileObject;
         }
 
+        @Override
+        public void write(int c) throws IOException {
+            long start = (profile != null) ? System.nanoTime() : 0;
+            out.write(c);
+            if (profile != null)
+                profile.filerTime(start);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            long start = (profile != null) ? System.nanoTime() : 0;
+            out.write(cbuf, off, len);
+            if (profile != null)
+                profile.filerTime(start);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            long start = (profile != null) ? System.nanoTime() : 0;
+            out.write(str, off, len);
+            if (profile != null)
+                profile.filerTime(start);
+        }
+
         public synchronized void close() throws IOException {
             if (!closed) {
                 closed = true;
+                long start = (profile != null) ? System.nanoTime() : 0;
                 /*
                  * If an IOException occurs when closing the underlying
                  * Writer, still try to process the file.
                  */
 
-                closeFileObject(typeName, fileObject);
-                out.close();
+                try {
+                    closeFileObject(typeName, fileObject);
+                    out.close();
+                } finally {
+                    if (profile != null)
+                        profile.filerTime(start);
+                }
             }
         }
     }
@@ -308,6 +361,20 @@ public class JavacFiler implements Filer, Closeable {
 
     private final boolean lint;
 
+    /**
+     * Where the time spent in the Filer is counted, for
+     * -XDprocessorStats; null if it is not.
+     */
+    ProcessorProfile profile;
+
+    /**
+     * The files closed on the current thread while it runs an annotation
+     * processor alongside others, see deferClosedFiles; null if they are
+     * registered as they are closed.
+     */
+    private final ThreadLocal<ListBuffer<Pair<String, FileObject>>> closedFiles =
+        new ThreadLocal<ListBuffer<Pair<String, FileObject>>>();
+
     /**
      * Logical names of all created files.  This set must be
      * synchronized.
@@ -382,7 +449,8 @@ public class JavacFiler implements Filer, Closeable {
         return createSourceOrClassFile(false, name.toString());
     }
 
-    private JavaFileObject createSourceOrClassFile(boolean isSourceFile, String name) throws IOException {
+    private synchronized JavaFileObject createSourceOrClassFile(boolean isSourceFile, String name) throws IOException {
+        long start = (profile != null) ? System.nanoTime() : 0;
         checkNameAndExistence(name, isSourceFile);
         Location loc = (isSourceFile ? SOURCE_OUTPUT : CLASS_OUTPUT);
         JavaFileObject.Kind kind = (isSourceFile ?
@@ -402,13 +470,18 @@ public class JavacFiler implements Filer, Closeable {
             aggregateGeneratedClassNames.add(name);
         openTypeNames.add(name);
 
+        if (profile != null) {
+            profile.fileCreated();
+            profile.filerTime(start);
+        }
         return new FilerOutputJavaFileObject(name, fileObject);
     }
 
-    public FileObject createResource(JavaFileManager.Location location,
-                                     CharSequence pkg,
-                                     CharSequence relativeName,
-                                     Element... originatingElements) throws IOException {
+    public synchronized FileObject createResource(JavaFileManager.Location location,
+                                                  CharSequence pkg,
+                                                  CharSequence relativeName,
+                                                  Element... originatingElements) throws IOException {
+        long start = (profile != null) ? System.nanoTime() : 0;
         locationCheck(location);
 
         String strPkg = pkg.toString();
@@ -420,6 +493,10 @@ public class JavacFiler implements Filer, Closeable {
                                          relativeName.toString(), null);
         checkFileReopening(fileObject, true);
 
+        if (profile != null) {
+            profile.fileCreated();
+            profile.filerTime(start);
+        }
         if (fileObject instanceof JavaFileObject)
             return new FilerOutputJavaFileObject(null, (JavaFileObject)fileObject);
         else
@@ -435,9 +512,10 @@ public class JavacFiler implements Filer, Closeable {
         }
     }
 
-    public FileObject getResource(JavaFileManager.Location location,
-                                  CharSequence pkg,
-                                  CharSequence relativeName) throws IOException {
+    public synchronized FileObject getResource(JavaFileManager.Location location,
+                                               CharSequence pkg,
+                                               CharSequence relativeName) throws IOException {
+        long start = (profile != null) ? System.nanoTime() : 0;
         String strPkg = pkg.toString();
         if (strPkg.length() > 0)
             checkName(strPkg);
@@ -451,6 +529,8 @@ public class JavacFiler implements Filer, Closeable {
                                                              null);
         // If the path was already opened for writing, throw an exception.
         checkFileReopening(fileObject, false);
+        if (profile != null)
+            profile.filerTime(start);
         return new FilerInputFileObject(fileObject);
     }
 
@@ -573,11 +653,42 @@ public class JavacFiler implements Filer, Closeable {
         return "javac Filer";
     }
 
+    /**
+     * Keep the files closed on the current thread from here on, rather
+     * than register them, until takeClosedFiles is called. A processor
+     * run alongside others does so, so that the files generated in a
+     * round can be registered in the order of the processors, whatever
+     * the order in which the threads closed them.
+     */
+    void deferClosedFiles() {
+        closedFiles.set(new ListBuffer<Pair<String, FileObject>>());
+    }
+
+    /**
+     * The files closed on the current thread since deferClosedFiles,
+     * to be passed to registerClosedFiles.
+     */
+    ListBuffer<Pair<String, FileObject>> takeClosedFiles() {
+        ListBuffer<Pair<String, FileObject>> files = closedFiles.get();
+        closedFiles.remove();
+        return files;
+    }
+
+    synchronized void registerClosedFiles(ListBuffer<Pair<String, FileObject>> files) {
+        for (Pair<String, FileObject> f : files)
+            closeFileObject(f.fst, f.snd);
+    }
+
     /**
      * Upon close, register files opened by create{Source, Class}File
      * for annotation processing.
      */
     private void closeFileObject(String typeName, FileObject fileObject) {
+        ListBuffer<Pair<String, FileObject>> deferred = closedFiles.get();
+        if (deferred != null) {
+            deferred.append(new Pair<String, FileObject>(typeName, fileObject));
+            return;
+        }
         /*
          * If typeName is non-null, the file object was opened as a
          * source or class file by the user.  If a file was opened as
@@ -50,11 +50,63 @@ public class JavacMessager implements Messager {
     JavacProcessingEnvironment processingEnv;
     int errorCount = 0;
 
+    /**
+     * A message printed by a processor, with its position hints.
+     */
+    static class Message {
+        final Diagnostic.Kind kind;
+        final CharSequence msg;
+        final Element e;
+        final AnnotationMirror a;
+        final AnnotationValue v;
+
+        Message(Diagnostic.Kind kind, CharSequence msg,
+                Element e, AnnotationMirror a, AnnotationValue v) {
+            this.kind = kind;
+            this.msg = msg;
+            this.e = e;
+            this.a = a;
+            this.v = v;
+        }
+    }
+
+    /**
+     * The messages printed on the current thread while it runs an
+     * annotation processor alongside others, see deferMessages; null if
+     * they are printed at once.
+     */
+    private final ThreadLocal<ListBuffer<Message>> deferred =
+        new ThreadLocal<ListBuffer<Message>>();
+
     JavacMessager(Context context, JavacProcessingEnvironment processingEnv) {
         log = Log.instance(context);
         this.processingEnv = processingEnv;
     }
 
+    /**
+     * Keep the messages printed on the current thread from here on,
+     * until takeMessages is called, so that the messages of processors
+     * run alongside others can be printed in the order of the processors.
+     */
+    void deferMessages() {
+        deferred.set(new ListBuffer<Message>());
+    }
+
+    /**
+     * The messages printed on the current thread since deferMessages,
+     * to be passed to printMessages.
+     */
+    ListBuffer<Message> takeMessages() {
+        ListBuffer<Message> messages = deferred.get();
+        deferred.remove();
+        return messages;
+    }
+
+    void printMessages(ListBuffer<Message> messages) {
+        for (Message m : messages)
+            printMessage(m.kind, m.msg, m.e, m.a, m.v);
+    }
+
     // processingEnv.getElementUtils()
 
     public void printMessage(Diagnostic.Kind kind, CharSequence msg) {
@@ -93,6 +145,11 @@ public class JavacMessager implements Messager {
      */
     public void printMessage(Diagnostic.Kind kind, CharSequence msg,
                       Element e, AnnotationMirror a, AnnotationValue v) {
+        ListBuffer<Message> messages = deferred.get();
+        if (messages != null) {
+            messages.append(new Message(kind, msg.toString(), e, a, v));
+            return;
+        }
         JavaFileObject oldSource = null;
         JavaFileObject newSource = null;
         JCDiagnostic.DiagnosticPosition pos = null;
@@ -47,8 +47,16 @@ import java.util.LinkedHashSet;
 import java.util.Locale;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Queue;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Pattern;
 
 import berlin.com.sun.source.util.TaskEvent;
@@ -59,6 +67,9 @@ import berlin.com.sun.tools.javac.code.Symbol;
 import berlin.com.sun.tools.javac.code.Symbol.ClassSymbol;
 import berlin.com.sun.tools.javac.code.Symbol.CompletionFailure;
 import berlin.com.sun.tools.javac.code.Symbol.PackageSymbol;
+import berlin.com.sun.tools.javac.code.SymbolLock;
+import berlin.com.sun.tools.javac.code.Symtab;
+import berlin.com.sun.tools.javac.comp.Enter;
 import berlin.com.sun.tools.javac.file.JavacFileManager;
 import berlin.com.sun.tools.javac.jvm.ClassReader;
 import berlin.com.sun.tools.javac.main.JavaCompiler;
@@ -82,11 +93,13 @@ import berlin.com.sun.tools.javac.tree.JCTree.JCVariableDecl;
 import berlin.com.sun.tools.javac.util.Abort;
 import berlin.com.sun.tools.javac.util.Context;
 import berlin.com.sun.tools.javac.util.Convert;
+import berlin.com.sun.tools.javac.util.JCDiagnostic;
 import berlin.com.sun.tools.javac.util.List;
 import berlin.com.sun.tools.javac.util.ListBuffer;
 import berlin.com.sun.tools.javac.util.Log;
 import berlin.com.sun.tools.javac.util.Name;
 import berlin.com.sun.tools.javac.util.Options;
+import berlin.com.sun.tools.javac.util.Pair;
 import berlin.javax.annotation.processing.Filer;
 import berlin.javax.annotation.processing.Messager;
 import berlin.javax.annotation.processing.ProcessingEnvironment;
@@ -100,6 +113,7 @@ import berlin.javax.lang.model.element.TypeElement;
 import berlin.javax.lang.model.util.ElementScanner6;
 import berlin.javax.lang.model.util.Elements;
 import berlin.javax.tools.DiagnosticListener;
+import berlin.javax.tools.FileObject;
 import berlin.javax.tools.JavaFileManager;
 import berlin.javax.tools.JavaFileObject;
 import berlin.javax.tools.StandardJavaFileManager;
@@ -122,6 +136,35 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
     private final boolean lint;
     private final boolean procOnly;
     private final boolean fatalErrors;
+    private final boolean incrementalRounds;
+
+    /**
+     * The time and memory used by each processor, for -XDprocessorStats;
+     * null if they are not measured.
+     */
+    private final ProcessorProfile profile;
+
+    /**
+     * The file the measurements are written to; null if they are
+     * printed.
+     */
+    private final String profileFile;
+
+    /**
+     * The number of threads on which processors that may run alongside
+     * others are run, for -XDparallelProcessors; zero if all processors
+     * are run one after another.
+     */
+    private final int processorThreads;
+
+    /**
+     * The names of the processor classes that may run alongside others,
+     * given by -XDthreadSafeProcessors as a comma separated list.
+     */
+    private final Set<String> threadSafeProcessors;
+
+    /** The threads running processors alongside others, once needed. */
+    private ExecutorService processorExecutor;
 
     private final JavacFiler filer;
     private final JavacMessager messager;
@@ -178,11 +221,21 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
         procOnly = options.get("-proc:only") != null ||
             options.get("-Xprint") != null;
         fatalErrors = options.get("fatalEnterError") != null;
+        incrementalRounds = options.get("incrementalRounds") != null;
+        String stats = options.get("processorStats");
+        profile = (stats != null) ? new ProcessorProfile() : null;
+        profileFile = (stats != null && !stats.equals("processorStats")) ? stats : null;
+        processorThreads = threadCount(options.get("parallelProcessors"));
+        threadSafeProcessors = new HashSet<String>();
+        String threadSafe = options.get("threadSafeProcessors");
+        if (threadSafe != null)
+            threadSafeProcessors.addAll(Arrays.asList(threadSafe.split(",")));
         platformAnnotations = initPlatformAnnotations();
 
         // Initialize services before any processors are initialzied
         // in case processors use them.
         filer = new JavacFiler(context);
+        filer.profile = profile;
         messager = new JavacMessager(context, this);
         elementUtils = new JavacElements(context);
         typeUtils = new JavacTypes(context);
@@ -191,6 +244,19 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
         initProcessorIterator(context, processors);
     }
 
+    /** The number of threads requested by an option: its value if a number,
+     *  and otherwise the number of processors; zero if the option is unset.
+     */
+    private static int threadCount(String value) {
+        if (value == null)
+            return 0;
+        try {
+            return Math.max(1, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+    }
+
     private Set<String> initPlatformAnnotations() {
         Set<String> platformAnnotations = new HashSet<String>();
         platformAnnotations.add("java.lang.Deprecated");
@@ -493,6 +559,8 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
     static class ProcessorState {
         public Processor processor;
         public boolean   contributed;
+        /** May the processor run alongside others? See -XDparallelProcessors. */
+        boolean threadSafe;
         private ArrayList<Pattern> supportedAnnotationPatterns;
         private ArrayList<String>  supportedOptionNames;
 
@@ -596,8 +664,17 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
                 }
 
                 if (psi.processorIterator.hasNext()) {
-                    ProcessorState ps = new ProcessorState(psi.processorIterator.next(),
-                                                           log, source, JavacProcessingEnvironment.this);
+                    Processor p = psi.processorIterator.next();
+                    ProcessorState ps;
+                    if (profile != null)
+                        profile.start(p);
+                    try {
+                        ps = new ProcessorState(p, log, source, JavacProcessingEnvironment.this);
+                    } finally {
+                        if (profile != null)
+                            profile.stop();
+                    }
+                    ps.threadSafe = threadSafeProcessors.contains(p.getClass().getName());
                     psi.procStateList.add(ps);
                     return ps;
                 } else
@@ -623,11 +700,22 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
             public void runContributingProcs(RoundEnvironment re) {
                 if (!onProcInterator) {
                     Set<TypeElement> emptyTypeElements = Collections.emptySet();
+                    Map<String, TypeElement> noAnnotations = Collections.emptyMap();
+                    ListBuffer<ProcessorCall> together = new ListBuffer<ProcessorCall>();
                     while(innerIter.hasNext()) {
                         ProcessorState ps = innerIter.next();
-                        if (ps.contributed)
+                        if (ps.contributed) {
+                            if (processorThreads > 0 && ps.threadSafe) {
+                                together.append(new ProcessorCall(ps, noAnnotations, re));
+                                continue;
+                            }
+                            if (together.nonEmpty())
+                                runTogether(together, null, null);
                             callProcessor(ps.processor, emptyTypeElements, re);
+                        }
                     }
+                    if (together.nonEmpty())
+                        runTogether(together, null, null);
                 }
             }
         }
@@ -643,6 +731,97 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
             this.processorIterator = processorIterator;
             this.procStateList = new ArrayList<ProcessorState>();
         }
+
+        /**
+         * Discover and initialize all remaining processors, rather than
+         * as they are needed, so that none is initialized while others
+         * run.
+         */
+        void discoverAll() {
+            ProcessorStateIterator psi = iterator();
+            while (psi.hasNext())
+                psi.next();
+        }
+    }
+
+    /**
+     * A call of a processor in a round, with the annotations it is
+     * called for. Calls of processors that may run alongside others are
+     * run together, on processorThreads threads, when the annotations
+     * they are called for are disjoint; whatever one of them claims then
+     * does not change what the others are called for. The messages they
+     * print and the files they generate are kept, and taken in the order
+     * of the processors once all have run, so that the result is that of
+     * calling them one after another.
+     */
+    class ProcessorCall implements Callable<Void> {
+        final ProcessorState ps;
+        final Set<String> matchedNames = new HashSet<String>();
+        final Set<TypeElement> typeElements = new LinkedHashSet<TypeElement>();
+        final RoundEnvironment renv;
+        boolean result;
+
+        /** Set when the call is run alongside others. */
+        SymbolLock lock;
+        Future<Void> future;
+        ListBuffer<JavacMessager.Message> messages;
+        ListBuffer<Pair<String, FileObject>> closedFiles;
+
+        ProcessorCall(ProcessorState ps, Map<String, TypeElement> unmatchedAnnotations,
+                      RoundEnvironment renv) {
+            this.ps = ps;
+            this.renv = renv;
+            for (String unmatchedAnnotationName : unmatchedAnnotations.keySet()) {
+                if (ps.annotationSupported(unmatchedAnnotationName) ) {
+                    matchedNames.add(unmatchedAnnotationName);
+                    TypeElement te = unmatchedAnnotations.get(unmatchedAnnotationName);
+                    if (te != null)
+                        typeElements.add(te);
+                }
+            }
+        }
+
+        boolean isCalled() {
+            return matchedNames.size() > 0 || ps.contributed;
+        }
+
+        public Void call() {
+            lock.enter();
+            messager.deferMessages();
+            filer.deferClosedFiles();
+            try {
+                result = callProcessor(ps.processor, typeElements, renv);
+            } finally {
+                messages = messager.takeMessages();
+                closedFiles = filer.takeClosedFiles();
+                lock.exit();
+            }
+            return null;
+        }
+
+        /** Wait until the call has run alongside others, and take its
+         *  messages and files.
+         */
+        void await() {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new Abort(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw new AssertionError(cause);
+            } finally {
+                if (messages != null)
+                    messager.printMessages(messages);
+                if (closedFiles != null)
+                    filer.registerClosedFiles(closedFiles);
+            }
+        }
     }
 
     private void discoverAndRunProcs(Context context,
@@ -664,6 +843,8 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
         if (unmatchedAnnotations.size() == 0)
             unmatchedAnnotations.put("", null);
 
+        if (processorThreads > 0)
+            discoveredProcs.discoverAll();
         DiscoveredProcessors.ProcessorStateIterator psi = discoveredProcs.iterator();
         // TODO: Create proper argument values; need past round
         // information to fill in this constructor.  Note that the 1
@@ -681,37 +862,42 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
                                                           rootElements,
                                                           JavacProcessingEnvironment.this);
 
+        ListBuffer<ProcessorCall> together = new ListBuffer<ProcessorCall>();
+        Set<String> togetherNames = new HashSet<String>();
+
         while(unmatchedAnnotations.size() > 0 && psi.hasNext() ) {
-            ProcessorState ps = psi.next();
-            Set<String>  matchedNames = new HashSet<String>();
-            Set<TypeElement> typeElements = new LinkedHashSet<TypeElement>();
-            for (String unmatchedAnnotationName : unmatchedAnnotations.keySet()) {
-                if (ps.annotationSupported(unmatchedAnnotationName) ) {
-                    matchedNames.add(unmatchedAnnotationName);
-                    TypeElement te = unmatchedAnnotations.get(unmatchedAnnotationName);
-                    if (te != null)
-                        typeElements.add(te);
-                }
+            ProcessorCall call = new ProcessorCall(psi.next(), unmatchedAnnotations, renv);
+            if (!call.isCalled())
+                continue;
+
+            boolean alongside = processorThreads > 0 && call.ps.threadSafe;
+            if (together.nonEmpty()
+                && (!alongside || !Collections.disjoint(togetherNames, call.matchedNames))) {
+                // what the processor is called for may depend on the
+                // processors before it
+                runTogether(together, unmatchedAnnotations, xout);
+                togetherNames.clear();
+                call = new ProcessorCall(call.ps, unmatchedAnnotations, renv);
+                if (!call.isCalled())
+                    continue;
             }
 
-            if (matchedNames.size() > 0 || ps.contributed) {
-                boolean processingResult = callProcessor(ps.processor, typeElements, renv);
-                ps.contributed = true;
-                ps.removeSupportedOptions(unmatchedProcessorOptions);
-
-                if (printProcessorInfo || verbose) {
-                    xout.println(Log.getLocalizedString("x.print.processor.info",
-                                                        ps.processor.getClass().getName(),
-                                                        matchedNames.toString(),
-                                                        processingResult));
-                }
-
-                if (processingResult) {
-                    unmatchedAnnotations.keySet().removeAll(matchedNames);
-                }
-
+            if (alongside) {
+                together.append(call);
+                togetherNames.addAll(call.matchedNames);
+                // unless they may claim all annotations left, which would
+                // leave the processors after them uncalled
+                if (!togetherNames.containsAll(unmatchedAnnotations.keySet()))
+                    continue;
+                runTogether(together, unmatchedAnnotations, xout);
+                togetherNames.clear();
+            } else {
+                call.result = callProcessor(call.ps.processor, call.typeElements, renv);
+                processorCalled(call, unmatchedAnnotations, xout);
             }
         }
+        if (together.nonEmpty())
+            runTogether(together, unmatchedAnnotations, xout);
         unmatchedAnnotations.remove("");
 
         if (lint && unmatchedAnnotations.size() > 0) {
@@ -732,6 +918,94 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
             filer.displayState();
     }
 
+    /**
+     * Account for a call of a processor, in the order of the processors.
+     */
+    private void processorCalled(ProcessorCall call,
+                                 Map<String, TypeElement> unmatchedAnnotations,
+                                 PrintWriter xout) {
+        ProcessorState ps = call.ps;
+        ps.contributed = true;
+        ps.removeSupportedOptions(unmatchedProcessorOptions);
+
+        if (printProcessorInfo || verbose) {
+            xout.println(Log.getLocalizedString("x.print.processor.info",
+                                                ps.processor.getClass().getName(),
+                                                call.matchedNames.toString(),
+                                                call.result));
+        }
+
+        if (call.result) {
+            unmatchedAnnotations.keySet().removeAll(call.matchedNames);
+        }
+    }
+
+    /**
+     * Run calls of processors that may run alongside others, on
+     * processorThreads threads, and account for them in order, unless
+     * unmatchedAnnotations is null, as for the calls of runContributingProcs.
+     * The diagnostics of the compiler are reported once all have run.
+     */
+    private void runTogether(ListBuffer<ProcessorCall> calls,
+                             Map<String, TypeElement> unmatchedAnnotations,
+                             PrintWriter xout) {
+        if (calls.size() == 1) {
+            ProcessorCall call = calls.next();
+            call.result = callProcessor(call.ps.processor, call.typeElements, call.renv);
+            if (unmatchedAnnotations != null)
+                processorCalled(call, unmatchedAnnotations, xout);
+            return;
+        }
+        SymbolLock lock = new SymbolLock();
+        boolean prevDefer = log.deferDiagnostics;
+        Queue<JCDiagnostic> prevDeferred = log.deferredDiagnostics;
+        Queue<JCDiagnostic> deferred = new ConcurrentLinkedQueue<JCDiagnostic>();
+        log.deferredDiagnostics = deferred;
+        log.deferDiagnostics = true;
+        try {
+            ExecutorService executor = getProcessorExecutor();
+            for (ProcessorCall call : calls) {
+                call.lock = lock;
+                call.future = executor.submit(call);
+            }
+            // let all calls finish, even if one fails
+            for (ProcessorCall call : calls) {
+                try {
+                    call.future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new Abort(e);
+                } catch (ExecutionException e) {
+                    // taken in order below
+                }
+            }
+        } finally {
+            log.deferDiagnostics = prevDefer;
+            log.deferredDiagnostics = prevDeferred;
+        }
+        for (JCDiagnostic d : deferred)
+            log.report(d);
+        while (calls.nonEmpty()) {
+            ProcessorCall call = calls.next();
+            call.await();
+            if (unmatchedAnnotations != null)
+                processorCalled(call, unmatchedAnnotations, xout);
+        }
+    }
+
+    private synchronized ExecutorService getProcessorExecutor() {
+        if (processorExecutor == null) {
+            processorExecutor = Executors.newFixedThreadPool(processorThreads, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "javac-processor");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return processorExecutor;
+    }
+
     /**
      * Computes the set of annotations on the symbol in question.
      * Leave class public for external testing purposes.
@@ -765,6 +1039,8 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
     private boolean callProcessor(Processor proc,
                                          Set<? extends TypeElement> tes,
                                          RoundEnvironment renv) {
+        if (profile != null)
+            profile.start(proc);
         try {
             return proc.process(tes, renv);
         } catch (CompletionFailure ex) {
@@ -774,6 +1050,9 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
             return false;
         } catch (Throwable t) {
             throw new AnnotationProcessingError(t);
+        } finally {
+            if (profile != null)
+                profile.stop();
         }
     }
 
@@ -835,6 +1114,8 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
             this.context = currentContext;
             roundNumber++;
             printRoundInfo(xout, roundNumber, topLevelClasses, annotationsPresent, false);
+            if (profile != null)
+                profile.newRound(roundNumber);
 
             if (taskListener != null)
                 taskListener.started(new TaskEvent(TaskEvent.Kind.ANNOTATION_PROCESSING_ROUND));
@@ -930,6 +1211,8 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
         */
        errorStatus = errorStatus || messager.errorRaised();
 
+        if (profile != null)
+            profile.report(log, profileFile);
 
         // Free resources
         this.close();
@@ -983,6 +1266,8 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
         List<ClassSymbol> noTopLevelClasses = List.nil();
         Set<TypeElement> noAnnotations =  Collections.emptySet();
         printRoundInfo(xout, roundNumber, noTopLevelClasses, noAnnotations, true);
+        if (profile != null)
+            profile.newRound(roundNumber);
 
         Set<Element> emptyRootElements = Collections.emptySet(); // immutable
         RoundEnvironment renv = new JavacRoundEnvironment(true,
@@ -1056,7 +1341,9 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
                 cs = p.package_info;
                 if (cs.classfile == null)
                     cs.classfile = file;
-            } else
+            } else if (incrementalRounds)
+                cs = reader.enterGeneratedClass(name, file);
+            else
                 cs = reader.enterClass(name, file);
             list = list.prepend(cs);
         }
@@ -1069,6 +1356,10 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
     public void close() throws IOException {
         filer.close();
         discoveredProcs = null;
+        if (processorExecutor != null) {
+            processorExecutor.shutdown();
+            processorExecutor = null;
+        }
         if (processorClassLoader != null && processorClassLoader instanceof Closeable)
             ((Closeable) processorClassLoader).close();
     }
@@ -1165,6 +1456,15 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
         assert(keywords != null);
         next.put(Keywords.keywordsKey, keywords);
 
+        if (incrementalRounds) {
+            // Keep the symbol table and the classes read from the platform
+            // class path, rather than read them again in the next round;
+            // all other classes are dropped (see ClassReader.newRound).
+            ClassReader reader = ClassReader.instance(context);
+            reader.newRound(Enter.instance(context).getEnteredSymbols());
+            Symtab.instance(context).setContext(next);
+        }
+
         JavaCompiler oldCompiler = JavaCompiler.instance(context);
         JavaCompiler nextCompiler = JavaCompiler.instance(next);
         nextCompiler.initRound(oldCompiler);
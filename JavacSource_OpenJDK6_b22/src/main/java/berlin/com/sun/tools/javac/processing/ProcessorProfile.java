@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package berlin.com.sun.tools.javac.processing;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import berlin.com.sun.tools.javac.util.List;
+import berlin.com.sun.tools.javac.util.ListBuffer;
+import berlin.com.sun.tools.javac.util.Log;
+import berlin.javax.annotation.processing.Processor;
+
+/**
+ * The time and memory used by each annotation processor in each round,
+ * for -XDprocessorStats. A processor is measured while it is initialized
+ * and while its process method runs; the time it spends in the Filer,
+ * creating, writing and closing files, is counted separately as well.
+ * Processors run on several threads (see -XDparallelProcessors) are
+ * measured on the threads they run on.
+ *
+ * <p>With -XDprocessorStats the figures are printed when processing is
+ * done. With -XDprocessorStats=file they are written to the file instead,
+ * one row per processor and round: as JSON if the name ends in ".json",
+ * and as comma separated values otherwise. Figures the virtual machine
+ * cannot measure are given as -1.
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+class ProcessorProfile {
+
+    /** The figures of one processor in one round.
+     */
+    static class Entry {
+        final String processor;
+        final int round;
+        int calls;
+        long wallNanos;
+        long cpuNanos;
+        long allocatedBytes;
+        long filerNanos;
+        int filesCreated;
+
+        Entry(String processor, int round) {
+            this.processor = processor;
+            this.round = round;
+        }
+    }
+
+    private final ThreadMXBean threads;
+    private final boolean cpuTime;
+    private final boolean allocation;
+
+    private final ListBuffer<Entry> entries = new ListBuffer<Entry>();
+    private Map<Processor, Entry> roundEntries = new IdentityHashMap<Processor, Entry>();
+    private int round;
+
+    /** A processor being measured on a thread, and when the measurement
+     *  started.
+     */
+    private static class Measurement {
+        final Entry entry;
+        final long wallStart;
+        final long cpuStart;
+        final long allocatedStart;
+
+        Measurement(Entry entry, long wallStart, long cpuStart, long allocatedStart) {
+            this.entry = entry;
+            this.wallStart = wallStart;
+            this.cpuStart = cpuStart;
+            this.allocatedStart = allocatedStart;
+        }
+    }
+
+    private final ThreadLocal<Measurement> current = new ThreadLocal<Measurement>();
+
+    ProcessorProfile() {
+        threads = ManagementFactory.getThreadMXBean();
+        boolean cpu = threads.isCurrentThreadCpuTimeSupported();
+        if (cpu && !threads.isThreadCpuTimeEnabled()) {
+            try {
+                threads.setThreadCpuTimeEnabled(true);
+            } catch (UnsupportedOperationException e) {
+                cpu = false;
+            } catch (SecurityException e) {
+                cpu = false;
+            }
+        }
+        cpuTime = cpu;
+        boolean alloc = false;
+        try {
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean t = (com.sun.management.ThreadMXBean) threads;
+                alloc = t.isThreadAllocatedMemorySupported() && t.isThreadAllocatedMemoryEnabled();
+            }
+        } catch (LinkageError e) {
+            // not a virtual machine that can count allocations
+        }
+        allocation = alloc;
+    }
+
+    /** Start a new round of processing.
+     */
+    void newRound(int round) {
+        this.round = round;
+        roundEntries = new IdentityHashMap<Processor, Entry>();
+    }
+
+    /** Start measuring the given processor on the current thread.
+     */
+    void start(Processor p) {
+        Entry e;
+        synchronized (this) {
+            e = roundEntries.get(p);
+            if (e == null) {
+                e = new Entry(p.getClass().getName(), round);
+                roundEntries.put(p, e);
+                entries.append(e);
+            }
+        }
+        current.set(new Measurement(e, System.nanoTime(), cpuTime(), allocatedBytes()));
+    }
+
+    /** Stop measuring the processor given to start on the current thread.
+     */
+    void stop() {
+        Measurement m = current.get();
+        if (m == null)
+            return;
+        current.remove();
+        long wall = System.nanoTime() - m.wallStart;
+        long cpu = cpuTime() - m.cpuStart;
+        long allocated = allocatedBytes() - m.allocatedStart;
+        synchronized (this) {
+            m.entry.calls++;
+            m.entry.wallNanos += wall;
+            m.entry.cpuNanos += cpu;
+            m.entry.allocatedBytes += allocated;
+        }
+    }
+
+    /** Count the time since start, a value of System.nanoTime, as time
+     *  spent in the Filer. Time spent when no processor is being measured
+     *  on the current thread, such as for files closed after processing,
+     *  is not counted.
+     */
+    void filerTime(long start) {
+        Measurement m = current.get();
+        if (m != null) {
+            long time = System.nanoTime() - start;
+            synchronized (this) {
+                m.entry.filerNanos += time;
+            }
+        }
+    }
+
+    /** Count a file created through the Filer.
+     */
+    void fileCreated() {
+        Measurement m = current.get();
+        if (m != null) {
+            synchronized (this) {
+                m.entry.filesCreated++;
+            }
+        }
+    }
+
+    private long cpuTime() {
+        return cpuTime ? threads.getCurrentThreadCpuTime() : 0;
+    }
+
+    private long allocatedBytes() {
+        if (!allocation)
+            return 0;
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /** Print the figures, or write them to the given file.
+     */
+    void report(Log log, String file) {
+        if (file == null) {
+            for (Entry e : entries) {
+                Log.printLines(log.noticeWriter,
+                               Log.getLocalizedString("verbose.processor",
+                                                      Integer.toString(e.round),
+                                                      e.processor,
+                                                      Integer.toString(e.calls),
+                                                      Long.toString(e.wallNanos / 1000000),
+                                                      cpuTime ? Long.toString(e.cpuNanos / 1000000) : "-1",
+                                                      allocation ? Long.toString(e.allocatedBytes / 1024) : "-1",
+                                                      Long.toString(e.filerNanos / 1000000),
+                                                      Integer.toString(e.filesCreated)));
+            }
+            return;
+        }
+        try {
+            PrintWriter out = new PrintWriter(new FileWriter(file));
+            try {
+                if (file.endsWith(".json"))
+                    writeJson(out);
+                else
+                    writeCsv(out);
+            } finally {
+                out.close();
+            }
+            if (out.checkError())
+                throw new IOException(file);
+        } catch (IOException ex) {
+            log.warning("proc.cant.write.stats", file, ex.getLocalizedMessage());
+        }
+    }
+
+    private void writeCsv(PrintWriter out) {
+        out.println("round,processor,calls,wallNanos,cpuNanos,allocatedBytes,filerNanos,filesCreated");
+        for (Entry e : entries) {
+            out.println(e.round + "," + e.processor + "," + e.calls + "," + e.wallNanos
+                        + "," + (cpuTime ? e.cpuNanos : -1)
+                        + "," + (allocation ? e.allocatedBytes : -1)
+                        + "," + e.filerNanos + "," + e.filesCreated);
+        }
+    }
+
+    private void writeJson(PrintWriter out) {
+        out.println("[");
+        for (List<Entry> l = entries.toList(); l.nonEmpty(); l = l.tail) {
+            Entry e = l.head;
+            out.print("  {\"round\": " + e.round
+                      + ", \"processor\": \"" + e.processor.replace("\\", "\\\\").replace("\"", "\\\"") + "\""
+                      + ", \"calls\": " + e.calls
+                      + ", \"wallNanos\": " + e.wallNanos
+                      + ", \"cpuNanos\": " + (cpuTime ? e.cpuNanos : -1)
+                      + ", \"allocatedBytes\": " + (allocation ? e.allocatedBytes : -1)
+                      + ", \"filerNanos\": " + e.filerNanos
+                      + ", \"filesCreated\": " + e.filesCreated + "}");
+            out.println(l.tail.nonEmpty() ? "," : "");
+        }
+        out.println("]");
+    }
+}
@@ -32,6 +32,7 @@ import berlin.com.sun.tools.javac.code.Scope;
 import berlin.com.sun.tools.javac.code.Symbol;
 import berlin.com.sun.tools.javac.code.Symtab;
 import berlin.com.sun.tools.javac.code.Type;
+import berlin.com.sun.tools.javac.file.SymbolImage;
 import berlin.com.sun.tools.javac.code.Symbol.*;
 import berlin.com.sun.tools.javac.jvm.ClassReader;
 import berlin.com.sun.tools.javac.jvm.ClassWriter;
@@ -72,9 +73,14 @@ import static berlin.javax.tools.JavaFileObject.Kind.CLASS;
  * includes supported or legacy proprietary API.  Valid annotation
  * processor options:
  *
+ * <p>If com.sun.tools.javac.sym.Image is given, the classes written to
+ * the destination directory are also packed into a symbol image (see
+ * file.SymbolImage) that can be given to javac with -XDsymbolImage.
+ *
  * @author Peter von der Ah\u00e9
  */
-@SupportedOptions({"com.sun.tools.javac.sym.Jar","com.sun.tools.javac.sym.Dest"})
+@SupportedOptions({"com.sun.tools.javac.sym.Jar","com.sun.tools.javac.sym.Dest",
+                   "com.sun.tools.javac.sym.Image"})
 @SupportedAnnotationTypes("*")
 public class CreateSymbols extends AbstractProcessor {
 
@@ -203,6 +209,10 @@ public class CreateSymbols extends AbstractProcessor {
             writeClass(pool, cs, writer);
         }
 
+        String imageName = processingEnv.getOptions().get("com.sun.tools.javac.sym.Image");
+        if (imageName != null)
+            SymbolImage.write(new File(imageName), destDir);
+
         if (false) {
             for (String pckName : crisp)
                 System.out.println("Crisp: " + pckName);
@@ -222,9 +232,9 @@ public class CreateSymbols extends AbstractProcessor {
             pool.reset();
             cs.pool = pool;
             writer.writeClass(cs);
-            for (Scope.Entry e = cs.members().elems; e != null; e = e.sibling) {
-                if (e.sym.kind == Kinds.TYP) {
-                    ClassSymbol nestedClass = (ClassSymbol)e.sym;
+            for (Symbol sym : cs.members().getLocalElements()) {
+                if (sym.kind == Kinds.TYP) {
+                    ClassSymbol nestedClass = (ClassSymbol)sym;
                     nestedClass.complete();
                     writeClass(pool, nestedClass, writer);
                 }
@@ -547,6 +547,12 @@ public abstract class JCTree implements Tree, Cloneable, DiagnosticPosition {
 
         public Map<JCTree, Integer> endPositions = null;
 
+        /** The parents of the nodes, built on demand by ParentIndex.instance. */
+        public ParentIndex parentIndex = null;
+
+        /** The nodes by position, built on demand by PositionIndex.instance. */
+        public PositionIndex positionIndex = null;
+
         protected JCCompilationUnit(List<JCAnnotation> packageAnnotations, JCExpression pid, List<JCTree> defs,
                 JavaFileObject sourcefile, PackageSymbol packge, Scope namedImportScope, Scope starImportScope) {
             this.packageAnnotations = packageAnnotations;
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package berlin.com.sun.tools.javac.tree;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import berlin.com.sun.source.tree.CompilationUnitTree;
+import berlin.com.sun.source.tree.Tree;
+import berlin.com.sun.source.util.TreePath;
+import berlin.com.sun.source.util.TreeScanner;
+import berlin.com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import berlin.com.sun.tools.javac.util.List;
+
+/**
+ * The parent of each node in a compilation unit, so that the path to a
+ * node can be found by following parents instead of scanning the whole
+ * compilation unit, as TreePath.getPath does. The index is built in one
+ * pass, the first time it is asked for, and kept in the compilation unit.
+ *
+ * <p>The nodes are visited in the same order as by TreePathScanner, and a
+ * node reachable along more than one path, such as the type shared by the
+ * variables of one declaration, gets the parent it is first reached from;
+ * so the paths found are those TreePath.getPath would find. The index is
+ * not updated when the tree is changed: JavacTaskImpl drops it when it
+ * enters, analyzes or generates code for the compilation unit, and other
+ * code that changes the tree must clear JCCompilationUnit.parentIndex.
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+public class ParentIndex {
+
+    /** Get the index of the given compilation unit, building it if needed.
+     */
+    public static ParentIndex instance(JCCompilationUnit unit) {
+        ParentIndex index = unit.parentIndex;
+        if (index == null) {
+            index = new ParentIndex(unit);
+            unit.parentIndex = index;
+        }
+        return index;
+    }
+
+    private final CompilationUnitTree unit;
+    private final Map<Tree, Tree> parents = new IdentityHashMap<Tree, Tree>();
+
+    private ParentIndex(CompilationUnitTree unit) {
+        this.unit = unit;
+        new TreeScanner<Void, Tree>() {
+            @Override
+            public Void scan(Tree tree, Tree parent) {
+                if (tree == null || parents.containsKey(tree))
+                    return null;
+                parents.put(tree, parent);
+                return tree.accept(this, tree);
+            }
+        }.scan(unit, null);
+    }
+
+    /** The compilation unit this is the index of.
+     */
+    public CompilationUnitTree getCompilationUnit() {
+        return unit;
+    }
+
+    /** The node enclosing the given one, or null if there is none or
+     *  the given node is not in the index.
+     */
+    public Tree getParent(Tree tree) {
+        return parents.get(tree);
+    }
+
+    /** Get the path to a node below the compilation unit.
+     *  @return null if the node is not in the index
+     */
+    public TreePath getPath(Tree target) {
+        if (target == unit || !parents.containsKey(target))
+            return null;
+        List<Tree> nodes = List.nil();
+        for (Tree t = target; t != unit; t = parents.get(t))
+            nodes = nodes.prepend(t);
+        TreePath path = new TreePath(unit);
+        for (Tree t : nodes)
+            path = new TreePath(path, t);
+        return path;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package berlin.com.sun.tools.javac.tree;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import berlin.com.sun.source.tree.Tree;
+import berlin.com.sun.source.util.TreeScanner;
+import berlin.com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import berlin.com.sun.tools.javac.util.ListBuffer;
+import berlin.com.sun.tools.javac.util.Position;
+
+/**
+ * The nodes of a compilation unit ordered by their source positions, to
+ * find the innermost node at a position without scanning the whole unit.
+ * The index is built the first time it is asked for and kept in the
+ * compilation unit.
+ *
+ * <p>Each node covers the positions from its start position up to, but
+ * not including, its end position, as given by TreeInfo.getStartPos and
+ * TreeInfo.getEndPos; nodes with no positions are left out. The nodes are
+ * kept in arrays sorted by start position, outer nodes first, together
+ * with the index of the innermost node enclosing each of them. A query
+ * does a binary search for the last node starting at or before the
+ * position, then goes out to the enclosing nodes until one covers the
+ * position. End positions are only exact if the unit was parsed with
+ * them, as by the compiler API or -Xjcov. The index is not updated when
+ * the tree is changed: JavacTaskImpl drops it when it enters, analyzes or
+ * generates code for the compilation unit, and other code that changes
+ * the tree must clear JCCompilationUnit.positionIndex.
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+public class PositionIndex {
+
+    /** Get the index of the given compilation unit, building it if needed.
+     */
+    public static PositionIndex instance(JCCompilationUnit unit) {
+        PositionIndex index = unit.positionIndex;
+        if (index == null) {
+            index = new PositionIndex(unit);
+            unit.positionIndex = index;
+        }
+        return index;
+    }
+
+    private final JCTree[] trees;
+    private final int[] starts;
+    private final int[] ends;
+    /** The index of the innermost enclosing node, or -1. */
+    private final int[] outer;
+
+    private PositionIndex(final JCCompilationUnit unit) {
+        final ListBuffer<JCTree> found = new ListBuffer<JCTree>();
+        final ListBuffer<int[]> spans = new ListBuffer<int[]>();
+        new TreeScanner<Void, Void>() {
+            @Override
+            public Void scan(Tree tree, Void p) {
+                if (tree == null)
+                    return null;
+                if (tree != unit) {
+                    JCTree t = (JCTree) tree;
+                    int start = TreeInfo.getStartPos(t);
+                    int end = TreeInfo.getEndPos(t, unit.endPositions);
+                    if (start != Position.NOPOS && end > start) {
+                        spans.append(new int[] { start, end, found.length() });
+                        found.append(t);
+                    }
+                }
+                return tree.accept(this, p);
+            }
+        }.scan(unit, null);
+
+        // outer nodes first; of nodes with the same positions, the one
+        // found first in the tree is the outer one
+        int[][] sorted = spans.toArray(new int[spans.length()][]);
+        Arrays.sort(sorted, new Comparator<int[]>() {
+            public int compare(int[] a, int[] b) {
+                if (a[0] != b[0])
+                    return a[0] < b[0] ? -1 : 1;
+                if (a[1] != b[1])
+                    return a[1] > b[1] ? -1 : 1;
+                return a[2] - b[2];
+            }
+        });
+
+        JCTree[] nodes = found.toArray(new JCTree[found.length()]);
+        int n = sorted.length;
+        trees = new JCTree[n];
+        starts = new int[n];
+        ends = new int[n];
+        outer = new int[n];
+        int[] stack = new int[n];
+        int depth = 0;
+        for (int i = 0; i < n; i++) {
+            trees[i] = nodes[sorted[i][2]];
+            starts[i] = sorted[i][0];
+            ends[i] = sorted[i][1];
+            while (depth > 0 && ends[stack[depth - 1]] < ends[i])
+                depth--;
+            outer[i] = (depth > 0) ? stack[depth - 1] : -1;
+            stack[depth++] = i;
+        }
+    }
+
+    /** The number of nodes in the index.
+     */
+    public int size() {
+        return trees.length;
+    }
+
+    /** Get the innermost node covering the given position.
+     *  @return null if no node covers the position
+     */
+    public JCTree getTree(int pos) {
+        int lo = 0;
+        int hi = starts.length - 1;
+        int i = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] <= pos) {
+                i = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        while (i >= 0 && ends[i] <= pos)
+            i = outer[i];
+        return (i >= 0) ? trees[i] : null;
+    }
+}
@@ -31,21 +31,21 @@ package berlin.com.sun.tools.javac.util;
 public class Bits {
 
 
-    private final static int wordlen = 32;
-    private final static int wordshift = 5;
+    private final static int wordlen = 64;
+    private final static int wordshift = 6;
     private final static int wordmask = wordlen - 1;
 
-    private int[] bits;
+    private long[] bits;
 
     /** Construct an initially empty set.
      */
     public Bits() {
-        this(new int[1]);
+        this(new long[1]);
     }
 
     /** Construct a set consisting initially of given bit vector.
      */
-    public Bits(int[] bits) {
+    public Bits(long[] bits) {
         this.bits = bits;
     }
 
@@ -58,7 +58,7 @@ public class Bits {
 
     private void sizeTo(int len) {
         if (bits.length < len) {
-            int[] newbits = new int[len];
+            long[] newbits = new long[len];
             System.arraycopy(bits, 0, newbits, 0, bits.length);
             bits = newbits;
         }
@@ -73,18 +73,31 @@ public class Bits {
     /** Return a copy of this set.
      */
     public Bits dup() {
-        int[] newbits = new int[bits.length];
+        long[] newbits = new long[bits.length];
         System.arraycopy(bits, 0, newbits, 0, bits.length);
         return new Bits(newbits);
     }
 
+    /** This set = xs, reusing the storage of this set where it is large
+     *  enough.
+     */
+    public Bits assign(Bits xs) {
+        int len = xs.bits.length;
+        if (bits.length < len)
+            bits = new long[len];
+        System.arraycopy(xs.bits, 0, bits, 0, len);
+        for (int i = len; i < bits.length; i++)
+            bits[i] = 0;
+        return this;
+    }
+
     /** Include x in this set.
      */
     public void incl(int x) {
         assert x >= 0;
         sizeTo((x >>> wordshift) + 1);
         bits[x >>> wordshift] = bits[x >>> wordshift] |
-            (1 << (x & wordmask));
+            (1L << (x & wordmask));
     }
 
 
@@ -92,9 +105,20 @@ public class Bits {
      */
     public void inclRange(int start, int limit) {
         sizeTo((limit >>> wordshift) + 1);
-        for (int x = start; x < limit; x++)
-            bits[x >>> wordshift] = bits[x >>> wordshift] |
-                (1 << (x & wordmask));
+        if (start >= limit)
+            return;
+        int first = start >>> wordshift;
+        int last = (limit - 1) >>> wordshift;
+        long firstMask = -1L << (start & wordmask);
+        long lastMask = -1L >>> (wordmask - ((limit - 1) & wordmask));
+        if (first == last) {
+            bits[first] |= firstMask & lastMask;
+        } else {
+            bits[first] |= firstMask;
+            for (int i = first + 1; i < last; i++)
+                bits[i] = -1L;
+            bits[last] |= lastMask;
+        }
     }
 
     /** Exclude x from this set.
@@ -103,7 +127,7 @@ public class Bits {
         assert x >= 0;
         sizeTo((x >>> wordshift) + 1);
         bits[x >>> wordshift] = bits[x >>> wordshift] &
-            ~(1 << (x & wordmask));
+            ~(1L << (x & wordmask));
     }
 
     /** Is x an element of this set?
@@ -111,7 +135,7 @@ public class Bits {
     public boolean isMember(int x) {
         return
             0 <= x && x < (bits.length << wordshift) &&
-            (bits[x >>> wordshift] & (1 << (x & wordmask))) != 0;
+            (bits[x >>> wordshift] & (1L << (x & wordmask))) != 0;
     }
 
     /** this set = this set & xs.
@@ -135,11 +159,9 @@ public class Bits {
     /** this set = this set \ xs.
      */
     public Bits diffSet(Bits xs) {
-        for (int i = 0; i < bits.length; i++) {
-            if (i < xs.bits.length) {
-                bits[i] = bits[i] & ~xs.bits[i];
-            }
-        }
+        int len = Math.min(bits.length, xs.bits.length);
+        for (int i = 0; i < len; i++)
+            bits[i] = bits[i] & ~xs.bits[i];
         return this;
     }
 
@@ -152,20 +174,6 @@ public class Bits {
         return this;
     }
 
-    /** Count trailing zero bits in an int. Algorithm from "Hacker's
-     *  Delight" by Henry S. Warren Jr. (figure 5-13)
-     */
-    private static int trailingZeroBits(int x) {
-        assert wordlen == 32;
-        if (x == 0) return 32;
-        int n = 1;
-        if ((x & 0xffff) == 0) { n += 16; x >>>= 16; }
-        if ((x & 0x00ff) == 0) { n +=  8; x >>>=  8; }
-        if ((x & 0x000f) == 0) { n +=  4; x >>>=  4; }
-        if ((x & 0x0003) == 0) { n +=  2; x >>>=  2; }
-        return n - (x&1);
-    }
-
     /** Return the index of the least bit position >= x that is set.
      *  If none are set, returns -1.  This provides a nice way to iterate
      *  over the members of a bit set:
@@ -176,10 +184,10 @@ public class Bits {
     public int nextBit(int x) {
         int windex = x >>> wordshift;
         if (windex >= bits.length) return -1;
-        int word = bits[windex] & ~((1 << (x & wordmask))-1);
+        long word = bits[windex] & (-1L << (x & wordmask));
         while (true) {
             if (word != 0)
-                return (windex << wordshift) + trailingZeroBits(word);
+                return (windex << wordshift) + Long.numberOfTrailingZeros(word);
             windex++;
             if (windex >= bits.length) return -1;
             word = bits[windex];
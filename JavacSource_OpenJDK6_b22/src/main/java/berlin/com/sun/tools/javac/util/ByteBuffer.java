@@ -150,7 +150,7 @@ public class ByteBuffer {
     /** Append a name.
      */
     public void appendName(Name name) {
-        appendBytes(name.table.names, name.index, name.len);
+        appendBytes(name.getByteArray(), name.getByteOffset(), name.len);
     }
 
     /** Reset to zero length.
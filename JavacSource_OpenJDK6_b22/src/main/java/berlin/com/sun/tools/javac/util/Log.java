@@ -30,6 +30,7 @@ import java.nio.CharBuffer;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 
 import berlin.com.sun.tools.javac.file.BaseFileObject;
@@ -166,6 +167,34 @@ public class Log {
         this(context, defaultWriter, defaultWriter, defaultWriter);
     }
 
+    /** Construct a log that reports in the same way as a given log,
+     *  but is not registered in any context.
+     */
+    protected Log(Log log) {
+        this.errWriter = log.errWriter;
+        this.warnWriter = log.warnWriter;
+        this.noticeWriter = log.noticeWriter;
+        this.diags = log.diags;
+        this.dumpOnError = log.dumpOnError;
+        this.promptOnError = log.promptOnError;
+        this.emitWarnings = log.emitWarnings;
+        this.MaxErrors = log.MaxErrors;
+        this.MaxWarnings = log.MaxWarnings;
+        this.showSourceLine = log.showSourceLine;
+        this.diagFormatter = log.diagFormatter;
+        this.diagListener = log.diagListener;
+    }
+
+    /** Create a log that defers all its diagnostics, so that they can be
+     *  reported through this log later on. Such a log may be used by
+     *  another thread, for instance to parse a file.
+     */
+    public Log deferredLog() {
+        Log l = new Log(this);
+        l.deferDiagnostics = true;
+        return l;
+    }
+
     /** Get the Log instance for this context. */
     public static Log instance(Context context) {
         Log instance = context.get(logKey);
@@ -192,6 +221,15 @@ public class Log {
      */
     public boolean unrecoverableError;
 
+    /** Switch: queue diagnostics in deferredDiagnostics rather than
+     *  reporting them.
+     */
+    public boolean deferDiagnostics;
+
+    /** The diagnostics queued while deferDiagnostics was set.
+     */
+    public Queue<JCDiagnostic> deferredDiagnostics = new ListBuffer<JCDiagnostic>();
+
     /** A set of all errors generated so far. This is used to avoid printing an
      *  error message more than once. For each error, a pair consisting of the
      *  source file name and source code position of the error is added to the set.
@@ -256,6 +294,16 @@ public class Log {
         return prev;
     }
 
+    /** Re-assign source, returning previous setting. Line and column
+     *  numbers are then found in the given content rather than by
+     *  reading the file again.
+     */
+    public JavaFileObject useSource(JavaFileObject name, char[] content) {
+        JavaFileObject prev = useSource(name);
+        setBuf(content);
+        return prev;
+    }
+
     /** Re-assign source buffer for existing source name.
      */
     protected void setBuf(char[] newBuf) {
@@ -553,8 +601,14 @@ public class Log {
      * Common diagnostic handling.
      * The diagnostic is counted, and depending on the options and how many diagnostics have been
      * reported so far, the diagnostic may be handed off to writeDiagnostic.
+     * If diagnostics are deferred, it is queued instead.
      */
     public void report(JCDiagnostic diagnostic) {
+        if (deferDiagnostics) {
+            deferredDiagnostics.add(diagnostic);
+            return;
+        }
+
         switch (diagnostic.getType()) {
         case FRAGMENT:
             throw new IllegalArgumentException();
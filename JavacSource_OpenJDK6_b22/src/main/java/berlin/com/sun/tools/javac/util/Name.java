@@ -26,10 +26,14 @@
 package berlin.com.sun.tools.javac.util;
 
 import java.lang.ref.SoftReference;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 
 /** An abstraction for internal compiler strings. For efficiency reasons,
- *  GJC uses hashed strings that are stored in a common large buffer.
+ *  GJC uses hashed strings that are stored in large shared buffers.
  *
  *  <p>Names represent unique hashable strings. Two names are equal
  *  if their indices are equal. Utf8 representation is used
@@ -46,8 +50,9 @@ public class Name implements berlin.javax.lang.model.element.Name {
      */
     public Table table;
 
-    /** The index where the bytes of this name are stored in the global name
-     *  buffer `names'.
+    /** The position of the bytes of this name, as if all segments of the
+     *  table were laid out one after the other.  It is unique within the
+     *  table, and names entered earlier have smaller indices.
      */
     public int index;
 
@@ -55,10 +60,23 @@ public class Name implements berlin.javax.lang.model.element.Name {
      */
     public int len;
 
+    /** The segment holding the bytes of this name, and their offset in it.
+     */
+    private final byte[] bytes;
+    private final int offset;
+
     /** The next name occupying the same hash bucket.
      */
     Name next;
 
+    private Name(Table table, byte[] bytes, int offset, int index, int len) {
+        this.table = table;
+        this.bytes = bytes;
+        this.offset = offset;
+        this.index = index;
+        this.len = len;
+    }
+
     /** The hashcode of a name.
      */
     private static int hashValue(byte cs[], int start, int len) {
@@ -83,34 +101,42 @@ public class Name implements berlin.javax.lang.model.element.Name {
 
     /** Create a name from the bytes in cs[start..start+len-1].
      *  Assume that bytes are in utf8 format.
+     *
+     *  <p>Names are entered without locking: a new name is linked into its
+     *  hash bucket with a compare-and-set, and a thread that loses the race
+     *  to another thread entering the same name returns that thread's name.
      */
     public static Name fromUtf(Table table, byte cs[], int start, int len) {
         int h = hashValue(cs, start, len) & table.hashMask;
-        Name n = table.hashes[h];
-        byte[] names = table.names;
-        while (n != null &&
-               (n.len != len || !equals(names, n.index, cs, start, len)))
-            n = n.next;
-        if (n == null) {
-            int nc = table.nc;
-            while (nc + len > names.length) {
-//              System.err.println("doubling name buffer of length + " + names.length + " to fit " + len + " bytes");//DEBUG
-                byte[] newnames = new byte[names.length * 2];
-                System.arraycopy(names, 0, newnames, 0, names.length);
-                names = table.names = newnames;
-            }
-            System.arraycopy(cs, start, names, nc, len);
-            n = new Name();
-            n.table = table;
-            n.index = nc;
-            n.len = len;
-            n.next = table.hashes[h];
-            table.hashes[h] = n;
-            table.nc = nc + len;
-            if (len == 0) table.nc++;
+        Name head = table.hashes.get(h);
+        Name n = lookup(head, null, cs, start, len);
+        if (n != null)
+            return n;
+
+        n = table.allocate(cs, start, len);
+        n.next = head;
+        while (!table.hashes.compareAndSet(h, head, n)) {
+            Name newHead = table.hashes.get(h);
+            Name other = lookup(newHead, head, cs, start, len);
+            if (other != null)
+                return other;
+            head = newHead;
+            n.next = head;
         }
+        table.nameCount.incrementAndGet();
+        table.nameBytes.addAndGet(len);
         return n;
     }
+    // where
+        /** Find the name equal to cs[start..start+len-1] in a hash bucket,
+         *  looking at names from n up to but excluding name `until'.
+         */
+        private static Name lookup(Name n, Name until, byte cs[], int start, int len) {
+            while (n != until &&
+                   (n.len != len || !equals(n.bytes, n.offset, cs, start, len)))
+                n = n.next;
+            return n == until ? null : n;
+        }
 
     /** Create a name from the bytes in array cs.
      *  Assume that bytes are in utf8 format.
@@ -122,33 +148,13 @@ public class Name implements berlin.javax.lang.model.element.Name {
     /** Create a name from the characters in cs[start..start+len-1].
      */
     public static Name fromChars(Table table, char[] cs, int start, int len) {
-        int nc = table.nc;
-        byte[] names = table.names;
-        while (nc + len * 3 >= names.length) {
-//          System.err.println("doubling name buffer of length " + names.length + " to fit " + len + " chars");//DEBUG
-            byte[] newnames = new byte[names.length * 2];
-            System.arraycopy(names, 0, newnames, 0, names.length);
-            names = table.names = newnames;
-        }
-        int nbytes =
-            Convert.chars2utf(cs, start, names, nc, len) - nc;
-        int h = hashValue(names, nc, nbytes) & table.hashMask;
-        Name n = table.hashes[h];
-        while (n != null &&
-               (n.len != nbytes ||
-                !equals(names, n.index, names, nc, nbytes)))
-            n = n.next;
-        if (n == null) {
-            n = new Name();
-            n.table = table;
-            n.index = nc;
-            n.len = nbytes;
-            n.next = table.hashes[h];
-            table.hashes[h] = n;
-            table.nc = nc + nbytes;
-            if (nbytes == 0) table.nc++;
+        byte[] buf = table.charBuffer.get();
+        if (buf.length < len * 3) {
+            buf = new byte[len * 3];
+            table.charBuffer.set(buf);
         }
-        return n;
+        int nbytes = Convert.chars2utf(cs, start, buf, 0, len);
+        return fromUtf(table, buf, 0, nbytes);
     }
 
     /** Create a name from the characters in string s.
@@ -168,20 +174,34 @@ public class Name implements berlin.javax.lang.model.element.Name {
      */
     public byte[] toUtf() {
         byte[] bs = new byte[len];
-        System.arraycopy(table.names, index, bs, 0, len);
+        System.arraycopy(bytes, offset, bs, 0, len);
         return bs;
     }
 
     /** Return the string representation of this name.
      */
     public String toString() {
-        return Convert.utf2string(table.names, index, len);
+        return Convert.utf2string(bytes, offset, len);
     }
 
     /** Copy all bytes of this name to buffer cs, starting at start.
      */
     public void getBytes(byte cs[], int start) {
-        System.arraycopy(table.names, index, cs, start, len);
+        System.arraycopy(bytes, offset, cs, start, len);
+    }
+
+    /** Return the array holding the bytes of this name.  The bytes are
+     *  found at getByteOffset() .. getByteOffset()+len-1; the rest of the
+     *  array must not be read or modified.
+     */
+    public byte[] getByteArray() {
+        return bytes;
+    }
+
+    /** Return the offset of the bytes of this name in getByteArray().
+     */
+    public int getByteOffset() {
+        return offset;
     }
 
     /** Return the hash value of this name.
@@ -205,8 +225,8 @@ public class Name implements berlin.javax.lang.model.element.Name {
     public boolean less(Name that) {
         int i = 0;
         while (i < this.len && i < that.len) {
-            byte thisb = this.table.names[this.index + i];
-            byte thatb = that.table.names[that.index + i];
+            byte thisb = this.bytes[this.offset + i];
+            byte thatb = that.bytes[that.offset + i];
             if (thisb < thatb) return true;
             else if (thisb > thatb) return false;
             else i++;
@@ -223,24 +243,22 @@ public class Name implements berlin.javax.lang.model.element.Name {
     /** Returns i'th byte of this name.
      */
     public byte byteAt(int i) {
-        return table.names[index + i];
+        return bytes[offset + i];
     }
 
     /** Returns first occurrence of byte b in this name, len if not found.
      */
     public int indexOf(byte b) {
-        byte[] names = table.names;
         int i = 0;
-        while (i < len && names[index + i] != b) i++;
+        while (i < len && bytes[offset + i] != b) i++;
         return i;
     }
 
     /** Returns last occurrence of byte b in this name, -1 if not found.
      */
     public int lastIndexOf(byte b) {
-        byte[] names = table.names;
         int i = len - 1;
-        while (i >= 0 && names[index + i] != b) i--;
+        while (i >= 0 && bytes[offset + i] != b) i--;
         return i;
     }
 
@@ -250,7 +268,7 @@ public class Name implements berlin.javax.lang.model.element.Name {
         int i = 0;
         while (i < prefix.len &&
                i < len &&
-               table.names[index + i] == prefix.table.names[prefix.index + i])
+               bytes[offset + i] == prefix.bytes[prefix.offset + i])
             i++;
         return i == prefix.len;
     }
@@ -261,7 +279,7 @@ public class Name implements berlin.javax.lang.model.element.Name {
         int i = len - 1;
         int j = suffix.len - 1;
         while (j >= 0 && i >= 0 &&
-               table.names[index + i] == suffix.table.names[suffix.index + j]) {
+               bytes[offset + i] == suffix.bytes[suffix.offset + j]) {
             i--; j--;
         }
         return j < 0;
@@ -272,22 +290,21 @@ public class Name implements berlin.javax.lang.model.element.Name {
      */
     public Name subName(int start, int end) {
         if (end < start) end = start;
-        return fromUtf(table, table.names, index + start, end - start);
+        return fromUtf(table, bytes, offset + start, end - start);
     }
 
     /** Replace all `from' bytes in this name with `to' bytes.
      */
     public Name replace(byte from, byte to) {
-        byte[] names = table.names;
         int i = 0;
         while (i < len) {
-            if (names[index + i] == from) {
+            if (bytes[offset + i] == from) {
                 byte[] bs = new byte[len];
-                System.arraycopy(names, index, bs, 0, i);
+                System.arraycopy(bytes, offset, bs, 0, i);
                 bs[i] = to;
                 i++;
                 while (i < len) {
-                    byte b = names[index + i];
+                    byte b = bytes[offset + i];
                     bs[i] = b == from ? to : b;
                     i++;
                 }
@@ -384,31 +401,69 @@ public class Name implements berlin.javax.lang.model.element.Name {
             return instance;
         }
 
-        /** The hash table for names.
+        /** The hash table for names.  Buckets are updated with
+         *  compare-and-set, so that several threads, such as parser
+         *  threads, may enter names at the same time without locking.
          */
-        private Name[] hashes;
+        private final AtomicReferenceArray<Name> hashes;
 
-        /** The array holding all encountered names.
+        /** The mask to be used for hashing
          */
-        public byte[] names;
+        private final int hashMask;
 
-        /** The mask to be used for hashing
+        /** The bytes of names are kept in segments, which are never
+         *  copied: when the current segment is full, a new one is started.
+         */
+        private static class Segment {
+            final byte[] bytes;
+            /** The index of the first byte of this segment. */
+            final int base;
+            /** The number of bytes claimed in this segment; this may
+             *  exceed its length once it is full. */
+            final AtomicInteger used = new AtomicInteger();
+
+            Segment(int size, int base) {
+                bytes = new byte[size];
+                this.base = base;
+            }
+        }
+
+        /** The segment that new names are entered into.
+         */
+        private final AtomicReference<Segment> segment;
+
+        /** The size of segments, except for those holding a single name
+         *  that is longer than this.
          */
-        private int hashMask;
+        private final int segmentSize;
 
-        /** The number of filled bytes in `names'.
+        /** Per-thread buffers for converting characters to utf8.
          */
-        private int nc = 0;
+        private final ThreadLocal<byte[]> charBuffer = new ThreadLocal<byte[]>() {
+            protected byte[] initialValue() {
+                return new byte[256];
+            }
+        };
+
+        private final AtomicInteger nameCount = new AtomicInteger();
+        private final AtomicLong nameBytes = new AtomicLong();
+        private final AtomicLong segmentBytes = new AtomicLong();
 
         /** Allocator
-         *  @param hashSize the (constant) size to be used for the hash table
-         *                  needs to be a power of two.
-         *  @param nameSize the initial size of the name table.
+         *  @param hashSize the number of buckets of the hash table, which
+         *                  needs to be a power of two.  The buckets are
+         *                  chains extended by compare-and-set and are never
+         *                  rehashed, so this bounds the length of the chains
+         *                  rather than the number of names.
+         *  @param nameSize the size of the segments holding the bytes of the
+         *                  names; more segments are added as they fill up.
          */
         public Table(int hashSize, int nameSize) {
             hashMask = hashSize - 1;
-            hashes = new Name[hashSize];
-            names = new byte[nameSize];
+            hashes = new AtomicReferenceArray<Name>(hashSize);
+            segmentSize = nameSize;
+            segment = new AtomicReference<Segment>(new Segment(nameSize, 0));
+            segmentBytes.set(nameSize);
 
             slash = fromString("/");
             hyphen = fromString("-");
@@ -517,6 +572,60 @@ public class Name implements berlin.javax.lang.model.element.Name {
             this(0x8000, 0x20000);
         }
 
+        /** Create a name, not yet entered in the hash table, holding a
+         *  copy of cs[start..start+len-1].
+         */
+        private Name allocate(byte cs[], int start, int len) {
+            // an empty name still takes a byte, so that it has an index
+            // of its own
+            int size = len == 0 ? 1 : len;
+            while (true) {
+                Segment seg = segment.get();
+                int off = seg.used.getAndAdd(size);
+                if (off >= 0 && off <= seg.bytes.length - size) {
+                    System.arraycopy(cs, start, seg.bytes, off, len);
+                    return new Name(this, seg.bytes, off, seg.base + off, len);
+                }
+                Segment next = new Segment(Math.max(segmentSize, size),
+                                           seg.base + seg.bytes.length);
+                if (segment.compareAndSet(seg, next))
+                    segmentBytes.addAndGet(next.bytes.length);
+            }
+        }
+
+        /** The number of names in this table.
+         */
+        public int getNameCount() {
+            return nameCount.get();
+        }
+
+        /** The number of utf8 bytes in the names of this table.
+         */
+        public long getNameBytes() {
+            return nameBytes.get();
+        }
+
+        /** Estimate the memory used by this table, in bytes: the segments,
+         *  the hash table and the names themselves, assuming compressed
+         *  references.  If asArray is set, the estimate is instead for the
+         *  former layout of this table, in which all names were kept in a
+         *  single array that was doubled whenever it was full.
+         */
+        public long estimateMemory(boolean asArray) {
+            long count = getNameCount();
+            long hashTable = 16 + 4L * (hashMask + 1);
+            if (asArray) {
+                long array = segmentSize;
+                while (array < getNameBytes())
+                    array *= 2;
+                // Name: header, table, index, len, next
+                return array + hashTable + count * 32;
+            } else {
+                // Name: header, table, index, len, next, bytes, offset
+                return segmentBytes.get() + hashTable + 16 + count * 40;
+            }
+        }
+
         /** Create a name from the bytes in cs[start..start+len-1].
          *  Assume that bytes are in utf8 format.
          */
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package berlin.com.sun.tools.javac.code;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import berlin.com.sun.tools.javac.code.Scope.CompactScope;
+import berlin.com.sun.tools.javac.code.Symbol.PackageSymbol;
+import berlin.com.sun.tools.javac.code.Symbol.VarSymbol;
+import berlin.com.sun.tools.javac.util.Context;
+import berlin.com.sun.tools.javac.util.Name;
+
+/**
+ * A CompactScope must answer lookups and walks as a Scope holding the same
+ * symbols does.
+ */
+public class CompactScopeTest extends TestCase {
+
+    private Name.Table names;
+
+    private Symbol owner;
+
+    protected void setUp() {
+        names = Name.Table.instance(new Context());
+        owner = new PackageSymbol(names.fromString("p"), null);
+    }
+
+    /**
+     * Symbols of few names, so that names have several symbols, entered in a
+     * scope made too small for them and removed at random.
+     */
+    public void testEnterAndRemove() {
+        Random random = new Random(6460352);
+        Scope scope = new Scope(owner);
+        Scope compact = new CompactScope(owner, 1);
+        ArrayList<Symbol> entered = new ArrayList<Symbol>();
+        for (int i = 0; i < 2000; i++) {
+            if (entered.isEmpty() || random.nextInt(4) != 0) {
+                Name name = names.fromString("n" + random.nextInt(300));
+                Symbol sym = new VarSymbol(0, name, null, owner);
+                scope.enter(sym);
+                compact.enter(sym);
+                entered.add(sym);
+            } else {
+                Symbol sym = entered.remove(random.nextInt(entered.size()));
+                scope.remove(sym);
+                compact.remove(sym);
+            }
+        }
+        assertEquals(scope.nelems, compact.nelems);
+        assertEquals(elements(scope), elements(compact));
+        for (int i = 0; i < 300; i++) {
+            Name name = names.fromString("n" + i);
+            assertEquals(lookup(scope, name), lookup(compact, name));
+            for (Scope.Entry e = compact.lookup(name); e.scope != null; e = e.next())
+                assertSame(compact, e.scope);
+        }
+    }
+
+    /**
+     * A copy of a CompactScope sees its symbols, and its own symbols first.
+     */
+    public void testDupUnshared() {
+        Scope compact = new CompactScope(owner, 4);
+        Name a = names.fromString("a");
+        Name b = names.fromString("b");
+        Symbol a1 = new VarSymbol(0, a, null, owner);
+        Symbol b1 = new VarSymbol(0, b, null, owner);
+        compact.enter(a1);
+        compact.enter(b1);
+        Scope copy = compact.dupUnshared();
+        Symbol a2 = new VarSymbol(0, a, null, owner);
+        copy.enter(a2);
+        assertEquals(list(a2, a1), lookup(copy, a));
+        assertEquals(list(b1), lookup(copy, b));
+        assertSame(compact, copy.lookup(b).scope);
+        assertEquals(list(a2), elements(copy));
+        assertEquals(list(a1), lookup(compact, a));
+        assertTrue(compact.includes(a1));
+        assertFalse(copy.includes(a1));
+    }
+
+    private static ArrayList<Symbol> elements(Scope s) {
+        ArrayList<Symbol> result = new ArrayList<Symbol>();
+        for (Symbol sym : s.getLocalElements())
+            result.add(sym);
+        return result;
+    }
+
+    private static ArrayList<Symbol> lookup(Scope s, Name name) {
+        ArrayList<Symbol> result = new ArrayList<Symbol>();
+        for (Scope.Entry e = s.lookup(name); e.scope != null; e = e.next())
+            result.add(e.sym);
+        return result;
+    }
+
+    private static ArrayList<Symbol> list(Symbol... syms) {
+        ArrayList<Symbol> result = new ArrayList<Symbol>();
+        for (Symbol sym : syms)
+            result.add(sym);
+        return result;
+    }
+}
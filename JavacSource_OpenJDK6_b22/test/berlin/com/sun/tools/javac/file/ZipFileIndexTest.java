@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package berlin.com.sun.tools.javac.file;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import berlin.com.sun.tools.javac.file.RelativePath.RelativeDirectory;
+import berlin.com.sun.tools.javac.file.RelativePath.RelativeFile;
+
+/**
+ * Reading the central directory of zip files with ZipFileIndex.
+ */
+public class ZipFileIndexTest extends TestCase {
+
+    /**
+     * Entries in a row whose names start with '/' have a directory name of
+     * length 0, which must not be compared byte by byte.
+     */
+    public void testLeadingSlash() throws IOException {
+        checkLeadingSlash(false);
+    }
+
+    public void testLeadingSlashMapped() throws IOException {
+        checkLeadingSlash(true);
+    }
+
+    private void checkLeadingSlash(boolean mapped) throws IOException {
+        File jar = File.createTempFile("slash", ".jar");
+        jar.deleteOnExit();
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            String[] names = { "/x.txt", "/y.txt", "p/Q.txt" };
+            for (String n : names) {
+                out.putNextEntry(new ZipEntry(n));
+                out.write(n.getBytes("UTF-8"));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+
+        ZipFileIndex index = ZipFileIndex.getZipFileIndex(jar, null, false, null, false, mapped);
+        try {
+            assertTrue(index.getFiles(new RelativeDirectory("")).contains("x.txt"));
+            assertTrue(index.getFiles(new RelativeDirectory("")).contains("y.txt"));
+            assertTrue(index.getFiles(new RelativeDirectory("p/")).contains("Q.txt"));
+            assertEquals("p/Q.txt", new String(index.read(new RelativeFile("p/Q.txt")), "UTF-8"));
+        } finally {
+            index.close();
+        }
+    }
+}